@@ -16,27 +16,42 @@
 package com.example.android.pets;
 
 import android.content.ContentUris;
-import android.content.ContentValues;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
+import android.support.v4.view.MenuItemCompat;
+import android.support.v7.app.ActionBar;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
 import android.widget.Toast;
 
-import com.example.android.pets.data.PetDbHelper;
+import com.example.android.pets.data.Pet;
+import com.example.android.pets.data.PetCatalogPrefetch;
+import com.example.android.pets.data.PetColumnSnapshot;
+import com.example.android.pets.data.PetCursor;
+import com.example.android.pets.data.PetPhotoStore;
+import com.example.android.pets.data.PetQuery;
+import com.example.android.pets.data.PetRepository;
 import com.example.android.pets.data.PetsContract;
 
 /**
@@ -44,15 +59,78 @@ import com.example.android.pets.data.PetsContract;
  */
 public class CatalogActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
 
-    public static PetDbHelper mDbHelper;
+    private static final String LOG_TAG = CatalogActivity.class.getSimpleName();
 
-    static final String[] PROJECTION = new String[] {
-            PetsContract.PetEntry._ID,
-            PetsContract.PetEntry.COLUMN_NAME,
-            PetsContract.PetEntry.COLUMN_BREED};
+    /** Identifier of the loader of the catalog pages */
+    private static final int PETS_LOADER = 0;
+
+    /** Number of pets loaded by each page of the catalog */
+    private static final int PAGE_SIZE = PetsContract.PetEntry.DEFAULT_PAGE_SIZE;
+
+    /** How many rows before the end of the list the next page starts loading */
+    private static final int PREFETCH_DISTANCE = 10;
+
+    /** Time to wait after the last change of the search text before querying the provider */
+    private static final long SEARCH_DELAY_MS = 300;
+
+    /** Maximum number of pets shown as search results */
+    private static final int SEARCH_LIMIT = 100;
+
+    /** Loader argument holding the text to search for */
+    private static final String ARG_SEARCH_QUERY = "search_query";
+
+    /** Saved state holding the filters of the catalog, as the parameters of a uri */
+    private static final String STATE_FILTER = "filter";
+
+    /** Weight in kilograms separating the light and the heavy filter chips */
+    private static final int FILTER_WEIGHT_LIMIT = 10;
+
+    /** Set once the time from launch to the first list shown has been reported */
+    private static boolean sLaunchReported;
 
     PetCursorAdapter petCursorAdapter;
 
+    /** View shown instead of the list when there are no pets */
+    private View mEmptyView;
+
+    /** Text currently searched for, empty when the whole catalog is shown */
+    private String mSearchQuery = "";
+
+    /** Filters of the chips, applied to the catalog and to the search results */
+    private PetQuery mFilter = PetQuery.ALL;
+
+    private CheckBox mMaleChip;
+    private CheckBox mFemaleChip;
+    private CheckBox mUnknownChip;
+    private CheckBox mLightChip;
+    private CheckBox mHeavyChip;
+
+    /** Updates the filters when a chip is checked or unchecked */
+    private final CompoundButton.OnCheckedChangeListener mChipListener =
+            new CompoundButton.OnCheckedChangeListener() {
+                @Override
+                public void onCheckedChanged(CompoundButton chip, boolean isChecked) {
+                    // The weight chips are ranges that don't overlap, so only one is checked
+                    if (isChecked && chip == mLightChip) {
+                        setChecked(mHeavyChip, false);
+                    } else if (isChecked && chip == mHeavyChip) {
+                        setChecked(mLightChip, false);
+                    }
+                    mFilter = buildFilter();
+                    restartCatalogLoader();
+                }
+            };
+
+    private final Handler mSearchHandler = new Handler();
+
+    /** Restarts the catalog loader with the current search text */
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            restartCatalogLoader();
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -68,24 +146,10 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
             }
         });
 
-        // To access our database, we instantiate our subclass of SQLiteOpenHelper
-        // and pass the context, which is the current activity.
-        mDbHelper = new PetDbHelper(this);
-
-        petCursorAdapter = new PetCursorAdapter(this,null);
-
-        ListView petsListView = (ListView)findViewById(R.id.list_view);
-
-        petsListView.setAdapter(petCursorAdapter);
-
-        petsListView.setEmptyView(findViewById(R.id.empty_view));
-
-        getSupportLoaderManager().initLoader(0, null, this);
-
-        petsListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        petCursorAdapter = new PetCursorAdapter(new PetCursorAdapter.OnPetClickListener() {
 
             @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+            public void onPetClick(long id) {
 
                 Intent intent = new Intent(CatalogActivity.this,EditorActivity.class);
 
@@ -97,23 +161,144 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
 
                 startActivity(intent);
             }
+        }, PetPhotoStore.getInstance(this));
+
+        final RecyclerView petsRecyclerView = (RecyclerView) findViewById(R.id.list_view);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+
+        petsRecyclerView.setLayoutManager(layoutManager);
+        petsRecyclerView.setHasFixedSize(true);
+        petsRecyclerView.setAdapter(petCursorAdapter);
+
+        mEmptyView = findViewById(R.id.empty_view);
+
+        // The chips don't save their own state, the filters are restored before the loader
+        // starts so it loads the filtered pets straight away
+        if (savedInstanceState != null) {
+            mFilter = PetQuery.fromUri(Uri.parse(savedInstanceState.getString(STATE_FILTER)));
+        }
+        setUpFilterChips();
+
+        getSupportLoaderManager().initLoader(PETS_LOADER, null, this);
+
+        // Load the next page of pets when the user scrolls near the end of the list
+        petsRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int totalItemCount = layoutManager.getItemCount();
+                if (totalItemCount > 0
+                        && layoutManager.findLastVisibleItemPosition() >= totalItemCount - PREFETCH_DISTANCE) {
+                    // Search results are not paged
+                    Loader<Cursor> loader = getSupportLoaderManager().getLoader(PETS_LOADER);
+                    if (loader instanceof PetPageLoader) {
+                        ((PetPageLoader) loader).loadNextPage();
+                    }
+                }
+            }
         });
 
 
     }
 
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_FILTER,
+                mFilter.appendTo(PetsContract.PetEntry.CONTENT_URI).toString());
+    }
+
+    /**
+     * Checks the chips of the current filters and starts listening to them.
+     */
+    private void setUpFilterChips() {
+        mMaleChip = (CheckBox) findViewById(R.id.filter_male);
+        mFemaleChip = (CheckBox) findViewById(R.id.filter_female);
+        mUnknownChip = (CheckBox) findViewById(R.id.filter_unknown);
+        mLightChip = (CheckBox) findViewById(R.id.filter_light);
+        mHeavyChip = (CheckBox) findViewById(R.id.filter_heavy);
+
+        for (int gender : mFilter.getGenders()) {
+            switch (gender) {
+                case PetsContract.PetEntry.GENDER_MALE:
+                    mMaleChip.setChecked(true);
+                    break;
+                case PetsContract.PetEntry.GENDER_FEMALE:
+                    mFemaleChip.setChecked(true);
+                    break;
+                default:
+                    mUnknownChip.setChecked(true);
+                    break;
+            }
+        }
+        mLightChip.setChecked(mFilter.getMaxWeight() != null);
+        mHeavyChip.setChecked(mFilter.getMinWeight() != null);
+
+        for (CheckBox chip : new CheckBox[]{mMaleChip, mFemaleChip, mUnknownChip, mLightChip,
+                mHeavyChip}) {
+            chip.setOnCheckedChangeListener(mChipListener);
+        }
+    }
+
+    /**
+     * Returns the filters of the checked chips.
+     */
+    private PetQuery buildFilter() {
+        PetQuery.Builder builder = new PetQuery.Builder();
+        if (mMaleChip.isChecked()) {
+            builder.addGender(PetsContract.PetEntry.GENDER_MALE);
+        }
+        if (mFemaleChip.isChecked()) {
+            builder.addGender(PetsContract.PetEntry.GENDER_FEMALE);
+        }
+        if (mUnknownChip.isChecked()) {
+            builder.addGender(PetsContract.PetEntry.GENDER_UNKNOWN);
+        }
+        if (mLightChip.isChecked()) {
+            builder.setWeightRange(null, FILTER_WEIGHT_LIMIT - 1);
+        } else if (mHeavyChip.isChecked()) {
+            builder.setWeightRange(FILTER_WEIGHT_LIMIT, null);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Checks or unchecks a chip without notifying the chip listener.
+     */
+    private void setChecked(CheckBox chip, boolean checked) {
+        chip.setOnCheckedChangeListener(null);
+        chip.setChecked(checked);
+        chip.setOnCheckedChangeListener(mChipListener);
+    }
+
+    /**
+     * Loads the catalog again with the current search text and filters.
+     */
+    private void restartCatalogLoader() {
+        Bundle args = null;
+        if (!TextUtils.isEmpty(mSearchQuery)) {
+            args = new Bundle();
+            args.putString(ARG_SEARCH_QUERY, mSearchQuery);
+        }
+        getSupportLoaderManager().restartLoader(PETS_LOADER, args, this);
+    }
+
     public void insertPet(){
-        // Create a new map of values, where column names are the keys
-        ContentValues values = new ContentValues();
-        values.put(PetsContract.PetEntry.COLUMN_NAME, "Thor");
-        values.put(PetsContract.PetEntry.COLUMN_BREED, "Terrier");
-        values.put(PetsContract.PetEntry.COLUMN_GENDER, 1);
-        values.put(PetsContract.PetEntry.COLUMN_WEIGHT, 7);
+        // Create the dummy pet
+        Pet pet = new Pet("Thor", "Terrier", PetsContract.PetEntry.GENDER_MALE, 7);
 
-        // Insert the new row, returning the primary Uri and the id of the new row
-        Uri newUri = getContentResolver().insert(PetsContract.PetEntry.CONTENT_URI, values);
+        // Insert the new row in the background, tapping the menu item repeatedly inserts the
+        // pets in one transaction
+        final Context context = getApplicationContext();
+        PetRepository.getInstance(this).insert(pet, new PetRepository.Callback() {
+            @Override
+            public void onSuccess(Uri uri, int rows) {
+            }
 
-        Log.v("CatalogActivity", R.string.editor_insert_pet_successful + String.valueOf(ContentUris.parseId(newUri)));
+            @Override
+            public void onFailure(Exception e) {
+                Toast.makeText(context, R.string.editor_error_insert_pet, Toast.LENGTH_LONG).show();
+            }
+        });
     }
 
     @Override
@@ -121,9 +306,48 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         // Inflate the menu options from the res/menu/menu_catalog.xml file.
         // This adds menu items to the app bar.
         getMenuInflater().inflate(R.menu.menu_catalog, menu);
+
+        // Search the catalog as the user types in the search box
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        final SearchView searchView = (SearchView) MenuItemCompat.getActionView(searchItem);
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                // The text is already being searched, just hide the keyboard
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                search(newText);
+                return true;
+            }
+        });
         return true;
     }
 
+    /**
+     * Shows the pets matching the given text, or the whole catalog if the text is empty. The
+     * query waits for the text to stop changing so typing doesn't flood the provider.
+     */
+    private void search(String text) {
+        String query = text.trim();
+        if (query.equals(mSearchQuery)) {
+            return;
+        }
+        mSearchQuery = query;
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        mSearchHandler.postDelayed(mSearchRunnable, SEARCH_DELAY_MS);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         // User clicked on a menu option in the app bar overflow menu
@@ -137,23 +361,97 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
                 //Opens an alert dialor and delete the pets if selected
                 showDeleteAlertDialog();
                 return true;
+            // Respond to a click on the "Sync now" menu option
+            case R.id.action_sync:
+                syncPets();
+                return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Asks the provider to sync the pets with the server of the shelter in the background.
+     * The list reloads by itself when remote changes arrive.
+     */
+    private void syncPets() {
+        String serverUrl = getString(R.string.sync_server_url);
+        if (TextUtils.isEmpty(serverUrl)) {
+            Toast.makeText(this, R.string.sync_not_configured, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        getContentResolver().call(PetsContract.PetEntry.CONTENT_URI, PetsContract.METHOD_SYNC,
+                serverUrl, null);
+        Toast.makeText(this, R.string.sync_started, Toast.LENGTH_SHORT).show();
+    }
+
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        return new CursorLoader(this,PetsContract.PetEntry.CONTENT_URI,
-                PROJECTION,
-                null,
-                null,
-                null);
+        String searchQuery = args == null ? null : args.getString(ARG_SEARCH_QUERY);
+        if (searchQuery != null) {
+            return new CursorLoader(this,
+                    mFilter.appendTo(
+                            PetsContract.PetEntry.buildSearchUri(searchQuery, SEARCH_LIMIT)),
+                    PetCursor.CATALOG_PROJECTION,
+                    null,
+                    null,
+                    null);
+        }
+        return new PetPageLoader(this, PetCursor.CATALOG_PROJECTION, mFilter, PAGE_SIZE);
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
 
         petCursorAdapter.swapCursor(data);
+        mEmptyView.setVisibility(data == null || data.getCount() == 0 ? View.VISIBLE : View.GONE);
+        showFilterCount();
+        reportLaunch();
+    }
+
+    /**
+     * Shows how many pets the filters keep under the title, as the catalog only loads the
+     * pages scrolled to. The count comes from the column snapshot, which doesn't query the
+     * database, and isn't shown until the snapshot is loaded or while searching. Without
+     * filters the snapshot isn't created, so a catalog never filtered never loads it.
+     */
+    private void showFilterCount() {
+        ActionBar actionBar = getSupportActionBar();
+        if (actionBar == null) {
+            return;
+        }
+        if (!mFilter.hasFilters() || !TextUtils.isEmpty(mSearchQuery)) {
+            actionBar.setSubtitle(null);
+            return;
+        }
+        PetColumnSnapshot snapshot = PetColumnSnapshot.getInstance(this);
+        if (snapshot.isLoaded()) {
+            int count = snapshot.count(mFilter);
+            actionBar.setSubtitle(getResources().getQuantityString(R.plurals.filter_count,
+                    count, count));
+        } else {
+            actionBar.setSubtitle(null);
+        }
+    }
+
+    /**
+     * Logs the time from the start of the process to the first list shown, once per process,
+     * and tells the system the activity is fully drawn so the launch time it reports for the
+     * app (the "Fully drawn" line of the log) counts the first page of pets too.
+     */
+    private void reportLaunch() {
+        if (sLaunchReported) {
+            return;
+        }
+        sLaunchReported = true;
+
+        long startTime = PetCatalogPrefetch.getInstance().getStartTime();
+        if (startTime > 0) {
+            Log.i(LOG_TAG, "Catalog shown " + (SystemClock.elapsedRealtime() - startTime)
+                    + " ms after launch");
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            reportFullyDrawn();
+        }
     }
 
     @Override
@@ -195,8 +493,21 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
 
     private void deleteAllPets(){
 
-        int rowsDeleted = getContentResolver().delete(PetsContract.PetEntry.CONTENT_URI,null,null);
-        Log.v("CatalogActivity", rowsDeleted + " rows deleted from pet database");
-        Toast.makeText(this,rowsDeleted + " rows deleted from pet database",Toast.LENGTH_LONG).show();
+        // The delete runs in the background, the toast is shown once it is done
+        final Context context = getApplicationContext();
+        PetRepository.getInstance(this).delete(PetsContract.PetEntry.CONTENT_URI,
+                new PetRepository.Callback() {
+                    @Override
+                    public void onSuccess(Uri uri, int rows) {
+                        Log.v("CatalogActivity", rows + " rows deleted from pet database");
+                        Toast.makeText(context, rows + " rows deleted from pet database",
+                                Toast.LENGTH_LONG).show();
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        Log.e("CatalogActivity", "Failed to delete the pets", e);
+                    }
+                });
     }
 }
@@ -16,16 +16,16 @@
 package com.example.android.pets;
 
 import android.content.ContentUris;
-import android.content.ContentValues;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.database.Cursor;
+import android.graphics.Bitmap;
 import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Build;
 import android.os.Bundle;
-import android.support.v4.app.LoaderManager;
 import android.support.v4.app.NavUtils;
-import android.support.v4.content.CursorLoader;
-import android.support.v4.content.Loader;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.text.TextUtils;
@@ -35,24 +35,29 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
+import android.widget.AutoCompleteTextView;
 import android.widget.EditText;
+import android.widget.ImageView;
 import android.widget.Spinner;
 import android.widget.Toast;
 
+import com.example.android.pets.data.Pet;
+import com.example.android.pets.data.PetCursor;
+import com.example.android.pets.data.PetObservableQueries;
+import com.example.android.pets.data.PetPhotoStore;
+import com.example.android.pets.data.PetRepository;
 import com.example.android.pets.data.PetsContract;
 
-import static android.widget.Toast.makeText;
-
 /**
  * Allows user to create a new pet or edit an existing one.
  */
-public class EditorActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+public class EditorActivity extends AppCompatActivity {
 
     /** EditText field to enter the pet's name */
-    private EditText mNameEditText;
+    private AutoCompleteTextView mNameEditText;
 
     /** EditText field to enter the pet's breed */
-    private EditText mBreedEditText;
+    private AutoCompleteTextView mBreedEditText;
 
     /** EditText field to enter the pet's weight */
     private EditText mWeightEditText;
@@ -60,6 +65,12 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     /** EditText field to enter the pet's gender */
     private Spinner mGenderSpinner;
 
+    /** ImageView showing the thumbnail of the pet's photo */
+    private ImageView mPhotoImageView;
+
+    /** Request code of the picker of a new photo */
+    private static final int REQUEST_PICK_PHOTO = 1;
+
     /**
      * Gender of the pet. The possible values are:
      * 0 for unknown gender, 1 for male, 2 for female.
@@ -70,12 +81,8 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     //this boolean detects shows if a change was made in the activity by the user
     private boolean mPetHasChanged = false;
 
-    static final String[] PROJECTION = new String[] {
-            PetsContract.PetEntry._ID,
-            PetsContract.PetEntry.COLUMN_NAME,
-            PetsContract.PetEntry.COLUMN_BREED,
-            PetsContract.PetEntry.COLUMN_GENDER,
-            PetsContract.PetEntry.COLUMN_WEIGHT};
+    /** Results of the query of the pet, shared with any other screen showing it */
+    private PetObservableQueries.Subscription mPetSubscription;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -95,9 +102,25 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         setViews();
         mNameEditText.setOnTouchListener(mTouchListener);
         mBreedEditText.setOnTouchListener(mTouchListener);
+        //suggest the names and breeds of the other pets as the user types
+        mNameEditText.setAdapter(new PetSuggestionAdapter(this, PetSuggestionAdapter.NAMES));
+        mBreedEditText.setAdapter(new PetSuggestionAdapter(this, PetSuggestionAdapter.BREEDS));
         mWeightEditText.setOnTouchListener(mTouchListener);
         mGenderSpinner.setOnTouchListener(mTouchListener);
 
+        findViewById(R.id.button_change_photo).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                //lets the user pick an image from any app that has one
+                Intent pickPhoto = new Intent(Intent.ACTION_GET_CONTENT);
+                pickPhoto.setType("image/*");
+                pickPhoto.addCategory(Intent.CATEGORY_OPENABLE);
+                if (pickPhoto.resolveActivity(getPackageManager()) != null) {
+                    startActivityForResult(pickPhoto, REQUEST_PICK_PHOTO);
+                }
+            }
+        });
+
 
         //Saves the intent that started the activity
         Intent intent = getIntent();
@@ -108,9 +131,25 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
             setTitle(getString(R.string.editor_activity_title_edit_pet));
             //setViews();
             setupSpinner();
-            getSupportLoaderManager().initLoader(0, null, this);
+            //the pet is shown again whenever it changes, until the activity is destroyed
+            mPetSubscription = PetObservableQueries.getInstance(this).subscribe(uri,
+                    PetCursor.PROJECTION, null, null, null, PetObservableQueries.MAIN_THREAD,
+                    new PetObservableQueries.Listener() {
+                        @Override
+                        public void onResult(Cursor cursor) {
+                            showPet(cursor);
+                        }
+
+                        @Override
+                        public void onError(RuntimeException e) {
+                            Toast.makeText(EditorActivity.this, R.string.editor_error_load_pet,
+                                    Toast.LENGTH_LONG).show();
+                        }
+                    });
         }else{
             setTitle(getString(R.string.editor_activity_title_new_pet));
+            //a new pet gets its photo once it has been saved and has a uri
+            findViewById(R.id.container_photo).setVisibility(View.GONE);
             invalidateOptionsMenu();
             setupSpinner();
         }
@@ -120,10 +159,57 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
     private void setViews(){
         // Find all relevant views that we will need to read user input from
-        mNameEditText = (EditText) findViewById(R.id.edit_pet_name);
-        mBreedEditText = (EditText) findViewById(R.id.edit_pet_breed);
+        mNameEditText = (AutoCompleteTextView) findViewById(R.id.edit_pet_name);
+        mBreedEditText = (AutoCompleteTextView) findViewById(R.id.edit_pet_breed);
         mWeightEditText = (EditText) findViewById(R.id.edit_pet_weight);
         mGenderSpinner = (Spinner) findViewById(R.id.spinner_gender);
+        mPhotoImageView = (ImageView) findViewById(R.id.image_pet_photo);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == REQUEST_PICK_PHOTO && resultCode == RESULT_OK && data != null
+                && data.getData() != null && uri != null) {
+            // The copy runs in the background, the pet is reloaded once its photo is in place
+            final Context context = getApplicationContext();
+            PetRepository.getInstance(this).savePhoto(uri, data.getData(),
+                    new PetRepository.Callback() {
+                        @Override
+                        public void onSuccess(Uri uri, int rows) {
+                        }
+
+                        @Override
+                        public void onFailure(Exception e) {
+                            Toast.makeText(context, R.string.editor_error_save_photo,
+                                    Toast.LENGTH_LONG).show();
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Shows the thumbnail of the pet's photo, loading it in the background if it isn't cached.
+     */
+    private void showPhoto(final long id, boolean hasPhoto) {
+        final PetPhotoStore photoStore = PetPhotoStore.getInstance(this);
+        Bitmap thumbnail = hasPhoto ? photoStore.peekThumbnail(id) : null;
+        mPhotoImageView.setImageBitmap(thumbnail);
+        if (hasPhoto && thumbnail == null) {
+            new AsyncTask<Void, Void, Bitmap>() {
+                @Override
+                protected Bitmap doInBackground(Void... params) {
+                    return photoStore.loadThumbnail(id);
+                }
+
+                @Override
+                protected void onPostExecute(Bitmap thumbnail) {
+                    if (!isFinishing()) {
+                        mPhotoImageView.setImageBitmap(thumbnail);
+                    }
+                }
+            }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
     }
 
     /**
@@ -193,13 +279,11 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
                 gender = 0;
         }
 
-        // Create a new map of values, where column names are the keys
-        ContentValues values = new ContentValues();
-        values.put(PetsContract.PetEntry.COLUMN_NAME, name);
-        values.put(PetsContract.PetEntry.COLUMN_BREED, breed);
-        values.put(PetsContract.PetEntry.COLUMN_GENDER, gender);
-        values.put(PetsContract.PetEntry.COLUMN_WEIGHT, weight);
+        // Create the pet with the values of the form
+        Pet pet = new Pet(name, breed, gender, weight);
 
+        // The write runs in the background, the result is shown in a toast once it is done
+        PetRepository repository = PetRepository.getInstance(this);
         if(uri==null) {
             //checks if fields contains values or are in blank for the new insert to be complete
             boolean isNameInserted = TextUtils.isEmpty(name);
@@ -210,23 +294,11 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
                 return isPetInserted=false;
             }else {
 
-                // Insert the new row, returning the primary key value of the new row
-                Uri newUri = getContentResolver().insert(PetsContract.PetEntry.CONTENT_URI, values);
-
-                if (newUri == null) {
-
-                    Toast toast = makeText(this, R.string.editor_error_insert_pet, Toast.LENGTH_LONG);
-                    toast.show();
-
-                } else {
-
-                    Toast toast2 = makeText(this, R.string.editor_insert_pet_successful + String.valueOf(ContentUris.parseId(newUri)), Toast.LENGTH_LONG);
-                    toast2.show();
-
-                }
+                // Insert the new row, the callback receives the uri of the new pet
+                repository.insert(pet, insertToastCallback(getApplicationContext()));
             }
         }else{
-            int petsUpdated = getContentResolver().update(uri,values,null,null);
+            repository.update(uri, pet, updateToastCallback(getApplicationContext()));
         }
 
         return isPetInserted;
@@ -295,42 +367,46 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-
-        CursorLoader cursorLoader = new CursorLoader(getBaseContext(),uri,PROJECTION,null,null,null);
-
-        return cursorLoader;
+    protected void onDestroy() {
+        super.onDestroy();
+        if (mPetSubscription != null) {
+            mPetSubscription.unsubscribe();
+        }
     }
 
-    @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-
-
-        data.moveToFirst();
-        //set the data from the cursor to the views
-        String name = data.getString(data.getColumnIndexOrThrow(PetsContract.PetEntry.COLUMN_NAME));
-
-        String breed = data.getString(data.getColumnIndexOrThrow(PetsContract.PetEntry.COLUMN_BREED));
-
-        int gender = data.getInt(data.getColumnIndexOrThrow(PetsContract.PetEntry.COLUMN_GENDER));
-
-        int weight = data.getInt(data.getColumnIndexOrThrow(PetsContract.PetEntry.COLUMN_WEIGHT));
-
-        mNameEditText.setText(name);
-        mBreedEditText.setText(breed);
-        mGenderSpinner.setSelection(gender);
-        mWeightEditText.setText(Integer.toString(weight));
-
+    //sets the text of a loaded pet, which shouldn't open the dropdown of suggestions
+    private static void setTextWithoutSuggestions(AutoCompleteTextView view, String text) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            view.setText(text, false);
+        } else {
+            view.setText(text);
+        }
     }
 
-    @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        //set the views in blank
-        mNameEditText.setText(null);
-        mBreedEditText.setText(null);
-        mGenderSpinner.setSelection(0);
-        mWeightEditText.setText(null);
+    //set the data of the pet in the cursor to the views
+    private void showPet(Cursor data) {
+        PetCursor petCursor = new PetCursor(data);
+        try {
+            //the pet may have been deleted meanwhile, leave the views as they are
+            if (!petCursor.moveToFirst()) {
+                return;
+            }
+            Pet pet = petCursor.getPet(null);
 
+            //the pet is delivered again when it changes, as when its photo is saved: keep the
+            //edits the user hasn't saved yet and only show the new photo
+            if (mPetHasChanged) {
+                showPhoto(pet.getId(), petCursor.hasPhoto());
+                return;
+            }
+            setTextWithoutSuggestions(mNameEditText, pet.getName());
+            setTextWithoutSuggestions(mBreedEditText, pet.getBreed());
+            mGenderSpinner.setSelection(pet.getGender());
+            mWeightEditText.setText(Integer.toString(pet.getWeight()));
+            showPhoto(pet.getId(), petCursor.hasPhoto());
+        } finally {
+            petCursor.close();
+        }
     }
 
     @Override
@@ -406,19 +482,59 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     //deletes the row in the table with the id in the uri
     private void deletePet(Uri uri){
         if(uri!=null) {
-            int deletedLines = getContentResolver().delete(uri, null, null);
-
-            //toast a different message depending on the number of rows deleted
-            if (deletedLines != 0) {
-                Toast toast = Toast.makeText(getApplicationContext(), "Pet deleted", Toast.LENGTH_LONG);
-                toast.show();
-            } else {
-                Toast toast = Toast.makeText(getApplicationContext(), "No pet was deleted", Toast.LENGTH_LONG);
-                toast.show();
-            }
+            // The delete runs in the background, the toast is shown once it is done
+            PetRepository.getInstance(this).delete(uri, deleteToastCallback(getApplicationContext()));
             finish();
         }
     }
 
+    // The write callbacks show their result in a toast. They are created in static methods and
+    // only hold the application context, as the editor has usually finished when a write is done.
+
+    private static PetRepository.Callback insertToastCallback(final Context context) {
+        return new PetRepository.Callback() {
+            @Override
+            public void onSuccess(Uri uri, int rows) {
+                Toast.makeText(context, context.getString(R.string.editor_insert_pet_successful) +
+                        ContentUris.parseId(uri), Toast.LENGTH_LONG).show();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Toast.makeText(context, R.string.editor_error_insert_pet, Toast.LENGTH_LONG).show();
+            }
+        };
+    }
 
-}
\ No newline at end of file
+    private static PetRepository.Callback updateToastCallback(final Context context) {
+        return new PetRepository.Callback() {
+            @Override
+            public void onSuccess(Uri uri, int rows) {
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Toast.makeText(context, R.string.editor_error_update_pet, Toast.LENGTH_LONG).show();
+            }
+        };
+    }
+
+    private static PetRepository.Callback deleteToastCallback(final Context context) {
+        return new PetRepository.Callback() {
+            @Override
+            public void onSuccess(Uri uri, int rows) {
+                //toast a different message depending on the number of rows deleted
+                if (rows != 0) {
+                    Toast.makeText(context, R.string.editor_delete_pet_successful, Toast.LENGTH_LONG).show();
+                } else {
+                    Toast.makeText(context, R.string.editor_delete_pet_none, Toast.LENGTH_LONG).show();
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Toast.makeText(context, R.string.editor_delete_pet_failed, Toast.LENGTH_LONG).show();
+            }
+        };
+    }
+}
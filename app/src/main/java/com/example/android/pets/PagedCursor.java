@@ -0,0 +1,240 @@
+package com.example.android.pets;
+
+import android.database.AbstractCursor;
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.support.v7.util.DiffUtil;
+
+import com.example.android.pets.data.PetsContract;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cursor over the pages loaded by {@link PetPageLoader}, presenting their rows one after the
+ * other. The pages belong to the loader, so closing this cursor leaves them open.
+ * <p>
+ * It also keeps the _ID and a hash of the values of every row, which the loader uses to work
+ * out in the background what changed since the previous cursor it delivered.
+ */
+class PagedCursor extends AbstractCursor {
+
+    /**
+     * A page of pets: the rows whose _ID is greater than {@code startId} and at most
+     * {@code endId}. The range stays the same when the page is queried again after a change.
+     */
+    static final class Page {
+        final long startId;
+        final long endId;
+        final Cursor cursor;
+
+        /** _ID and hash of the values of every row of the page */
+        final long[] ids;
+        final int[] hashes;
+
+        /**
+         * Creates the page and reads the _ID and values of its rows, so it must be called on
+         * a background thread.
+         */
+        Page(long startId, long endId, Cursor cursor) {
+            this.startId = startId;
+            this.endId = endId;
+            this.cursor = cursor;
+
+            int count = cursor.getCount();
+            int idIndex = cursor.getColumnIndexOrThrow(PetsContract.PetEntry._ID);
+            int columnCount = cursor.getColumnCount();
+            ids = new long[count];
+            hashes = new int[count];
+            for (int row = 0; row < count; row++) {
+                cursor.moveToPosition(row);
+                ids[row] = cursor.getLong(idIndex);
+                int hash = 1;
+                for (int column = 0; column < columnCount; column++) {
+                    String value = cursor.getString(column);
+                    hash = 31 * hash + (value == null ? 0 : value.hashCode());
+                }
+                hashes[row] = hash;
+            }
+        }
+    }
+
+    private final List<Page> mPages;
+    private final String[] mColumnNames;
+
+    /** Position in this cursor of the first row of every page, the same for an empty page */
+    private final int[] mPageStarts;
+    private final int mCount;
+
+    /** True when the last page was shorter than a full page */
+    private final boolean mEndReached;
+
+    /** _ID and hash of the values of every row, in cursor order */
+    private final long[] mIds;
+    private final int[] mHashes;
+
+    /** Increases with every cursor delivered by the same loader */
+    private final int mVersion;
+
+    /** Changes from the cursor with version {@link #mDiffBaseVersion}, null if unknown */
+    private DiffUtil.DiffResult mDiff;
+    private int mDiffBaseVersion;
+
+    /** Page holding the row at the current position */
+    private Cursor mCurrentPage;
+
+    PagedCursor(List<Page> pages, String[] projection, boolean endReached, int version) {
+        mPages = pages;
+        mColumnNames = pages.isEmpty() ? projection : pages.get(0).cursor.getColumnNames();
+        mEndReached = endReached;
+        mVersion = version;
+
+        mPageStarts = new int[pages.size()];
+        int count = 0;
+        for (int i = 0; i < pages.size(); i++) {
+            mPageStarts[i] = count;
+            count += pages.get(i).cursor.getCount();
+        }
+        mCount = count;
+
+        mIds = new long[count];
+        mHashes = new int[count];
+        for (int i = 0; i < pages.size(); i++) {
+            Page page = pages.get(i);
+            System.arraycopy(page.ids, 0, mIds, mPageStarts[i], page.ids.length);
+            System.arraycopy(page.hashes, 0, mHashes, mPageStarts[i], page.hashes.length);
+        }
+    }
+
+    int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Computes the changes from the given older cursor to this one. Rows are matched by _ID and
+     * never move, as both cursors are sorted by _ID.
+     */
+    void computeDiff(final PagedCursor oldCursor) {
+        mDiffBaseVersion = oldCursor.mVersion;
+        mDiff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldCursor.mCount;
+            }
+
+            @Override
+            public int getNewListSize() {
+                return mCount;
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return oldCursor.mIds[oldItemPosition] == mIds[newItemPosition];
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return oldCursor.mHashes[oldItemPosition] == mHashes[newItemPosition];
+            }
+        }, false);
+    }
+
+    /**
+     * Returns the changes from the cursor with the given version to this one, or null if they
+     * were computed from another cursor or not at all.
+     */
+    DiffUtil.DiffResult getDiffFrom(int version) {
+        return mDiff != null && mDiffBaseVersion == version ? mDiff : null;
+    }
+
+    List<Page> getPages() {
+        return mPages;
+    }
+
+    /**
+     * Returns the _ID the next page starts after, 0 when there are no pages.
+     */
+    long getLastId() {
+        return mPages.isEmpty() ? 0 : mPages.get(mPages.size() - 1).endId;
+    }
+
+    boolean isEndReached() {
+        return mEndReached;
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        // Find the last page starting at or before the new position
+        int page = Arrays.binarySearch(mPageStarts, newPosition);
+        if (page < 0) {
+            page = -page - 2;
+        }
+        // Empty pages start where the next page does, the row is in the first one with rows
+        while (mPages.get(page).cursor.getCount() == 0) {
+            page++;
+        }
+        mCurrentPage = mPages.get(page).cursor;
+        return mCurrentPage.moveToPosition(newPosition - mPageStarts[page]);
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public String getString(int column) {
+        return mCurrentPage.getString(column);
+    }
+
+    @Override
+    public void copyStringToBuffer(int column, CharArrayBuffer buffer) {
+        // The pages copy straight from their window, without creating a String
+        mCurrentPage.copyStringToBuffer(column, buffer);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return mCurrentPage.getShort(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return mCurrentPage.getInt(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return mCurrentPage.getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return mCurrentPage.getFloat(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return mCurrentPage.getDouble(column);
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        return mCurrentPage.getBlob(column);
+    }
+
+    @Override
+    public int getType(int column) {
+        return mCurrentPage.getType(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return mCurrentPage.isNull(column);
+    }
+}
@@ -1,54 +1,216 @@
 package com.example.android.pets;
 
-import android.content.Context;
+import android.database.CharArrayBuffer;
 import android.database.Cursor;
-import android.text.TextUtils;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.CursorAdapter;
+import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.example.android.pets.data.PetsContract;
+import com.example.android.pets.data.PetCursor;
+import com.example.android.pets.data.PetPhotoStore;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Created by robertomoreno on 3/1/18.
  */
 
-public class PetCursorAdapter extends CursorAdapter {
+public class PetCursorAdapter extends RecyclerView.Adapter<PetCursorAdapter.PetViewHolder> {
+
+    /**
+     * Receives the clicks on the pets of the list.
+     */
+    public interface OnPetClickListener {
+        void onPetClick(long id);
+    }
+
+    //loads the thumbnails that aren't cached yet, a few at a time so a fling can't flood the disk
+    private static final ExecutorService sThumbnailExecutor = Executors.newFixedThreadPool(2);
+
+    private final OnPetClickListener mListener;
+
+    private final PetPhotoStore mPhotoStore;
 
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
 
-    public PetCursorAdapter(Context context, Cursor c) {
-        super(context, c, 0);
+    private Cursor mCursor;
+
+    //wraps the cursor, its column indices are resolved once every time the cursor is swapped
+    private PetCursor mPetCursor;
+
+    public PetCursorAdapter(OnPetClickListener listener, PetPhotoStore photoStore) {
+        mListener = listener;
+        mPhotoStore = photoStore;
+        //the _ID of every pet identifies its row, so views are kept across cursor swaps
+        setHasStableIds(true);
+    }
+
+    /**
+     * Shows the pets of the given cursor. If the cursor comes with the changes from the cursor
+     * shown until now only those changes are applied, otherwise the whole list is refreshed.
+     * The cursor isn't closed by the adapter.
+     */
+    public void swapCursor(Cursor cursor) {
+        DiffUtil.DiffResult diff = null;
+        if (cursor instanceof PagedCursor && mCursor instanceof PagedCursor) {
+            diff = ((PagedCursor) cursor).getDiffFrom(((PagedCursor) mCursor).getVersion());
+        }
+
+        mCursor = cursor;
+        mPetCursor = cursor == null ? null : new PetCursor(cursor);
+
+        if (diff != null) {
+            diff.dispatchUpdatesTo(this);
+        } else {
+            notifyDataSetChanged();
+        }
     }
 
     @Override
-    public View newView(Context context, Cursor cursor, ViewGroup parent) {
+    public PetViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
 
         //inflates the item_view
-        return LayoutInflater.from(context).inflate(R.layout.list_item,parent,false);
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item, parent, false);
+        return new PetViewHolder(view);
     }
 
     @Override
-    public void bindView(View view, Context context, Cursor cursor) {
-
-        //saves the text views from the list_item into TextView variables
-        TextView nameView = (TextView) view.findViewById(R.id.pet_name);
-        TextView breedView = (TextView) view.findViewById(R.id.pet_breed);
+    public void onBindViewHolder(PetViewHolder holder, int position) {
+        mPetCursor.moveToPosition(position);
 
-        //gets the values of a certain column of the cursor and saves it into a variable
-        String name = cursor.getString(cursor.getColumnIndexOrThrow(PetsContract.PetEntry.COLUMN_NAME));
-        String breed = cursor.getString(cursor.getColumnIndexOrThrow(PetsContract.PetEntry.COLUMN_BREED));
+        //copies the values of the row into the buffers of the holder, without creating Strings
+        mPetCursor.copyNameTo(holder.nameBuffer);
+        mPetCursor.copyBreedTo(holder.breedBuffer);
 
-        //Sets the text in the TextValues from de values from the variables
-        nameView.setText(name);
-        if(TextUtils.isEmpty(breed)){
-            breedView.setText("Breed Unknown");
+        //Sets the text in the TextViews from the buffers, which they show without copying
+        holder.nameView.setText(holder.nameBuffer.data, 0, holder.nameBuffer.sizeCopied);
+        if(holder.breedBuffer.sizeCopied == 0){
+            holder.breedView.setText(R.string.breed_unknown);
         }else{
-            breedView.setText(breed);
+            holder.breedView.setText(holder.breedBuffer.data, 0, holder.breedBuffer.sizeCopied);
         }
 
+        bindPhoto(holder, mPetCursor.getId(), mPetCursor.hasPhoto());
     }
 
+    @Override
+    public void onViewRecycled(PetViewHolder holder) {
+        //the row may be shown for another pet next, its pending thumbnail isn't needed anymore
+        holder.cancelThumbnailLoad();
+        holder.photoView.setImageDrawable(null);
+    }
 
+    /**
+     * Shows the thumbnail of the pet in the holder. A cached thumbnail is shown right away,
+     * otherwise the thumbnail is loaded in the background and shown if the holder is still
+     * showing the same pet by then.
+     */
+    private void bindPhoto(PetViewHolder holder, long id, boolean hasPhoto) {
+        if (holder.thumbnailLoad != null && holder.thumbnailLoad.id == id) {
+            //the thumbnail of this pet is already on its way
+            return;
+        }
+        holder.cancelThumbnailLoad();
+
+        Bitmap thumbnail = hasPhoto ? mPhotoStore.peekThumbnail(id) : null;
+        holder.photoView.setImageBitmap(thumbnail);
+        if (hasPhoto && thumbnail == null) {
+            holder.thumbnailLoad = new ThumbnailLoad(holder, id);
+            sThumbnailExecutor.execute(holder.thumbnailLoad);
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return mCursor == null ? 0 : mCursor.getCount();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        mPetCursor.moveToPosition(position);
+        return mPetCursor.getId();
+    }
+
+    /**
+     * Holds the views of a row of the list, so they are only looked up when the row is created,
+     * and the buffers their text is copied into.
+     */
+    class PetViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        final TextView nameView;
+        final TextView breedView;
+        final ImageView photoView;
+
+        //the thumbnail being loaded for the view, null if it isn't waiting for any
+        ThumbnailLoad thumbnailLoad;
+
+        //the views show the characters of these buffers, so every holder needs its own
+        final CharArrayBuffer nameBuffer = new CharArrayBuffer(32);
+        final CharArrayBuffer breedBuffer = new CharArrayBuffer(32);
+
+        PetViewHolder(View itemView) {
+            super(itemView);
+            nameView = (TextView) itemView.findViewById(R.id.pet_name);
+            breedView = (TextView) itemView.findViewById(R.id.pet_breed);
+            photoView = (ImageView) itemView.findViewById(R.id.pet_photo);
+            itemView.setOnClickListener(this);
+        }
+
+        void cancelThumbnailLoad() {
+            if (thumbnailLoad != null) {
+                thumbnailLoad.cancelled = true;
+                thumbnailLoad = null;
+            }
+        }
+
+        @Override
+        public void onClick(View view) {
+            if (getAdapterPosition() != RecyclerView.NO_POSITION) {
+                mListener.onPetClick(getItemId());
+            }
+        }
+    }
+
+    /**
+     * Loads the thumbnail of a pet for a holder on a background thread. A load cancelled before
+     * it runs never touches the disk, and one cancelled while it runs isn't shown.
+     */
+    private class ThumbnailLoad implements Runnable {
+
+        final PetViewHolder holder;
+        final long id;
+        volatile boolean cancelled;
+
+        ThumbnailLoad(PetViewHolder holder, long id) {
+            this.holder = holder;
+            this.id = id;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            final Bitmap thumbnail = mPhotoStore.loadThumbnail(id);
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (holder.thumbnailLoad == ThumbnailLoad.this) {
+                        holder.thumbnailLoad = null;
+                        holder.photoView.setImageBitmap(thumbnail);
+                    }
+                }
+            });
+        }
+    }
 }
@@ -0,0 +1,450 @@
+package com.example.android.pets;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.pets.data.PetCatalogPrefetch;
+import com.example.android.pets.data.PetQuery;
+import com.example.android.pets.data.PetsContract;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Loads the pets of the catalog one page at a time, using keyset pagination on _ID. Only the
+ * first page is loaded when the loader starts and {@link #loadNextPage()} appends the page after
+ * the last loaded row, so the first load costs the same whatever the size of the table.
+ * <p>
+ * When a single pet changes only the page holding it is queried again. The other pages are
+ * kept, and every page is queried again only after a change to the whole table. Every cursor
+ * carries the changes from the previous one, computed in the background with DiffUtil.
+ * <p>
+ * The pages hold the pets kept by the filters of a {@link PetQuery}. A pet changed to no
+ * longer match them leaves its page when the page is queried again, and a page left without
+ * pets is kept, empty, so the pets of its range still have a page to come back to.
+ * <p>
+ * The first load of the whole catalog takes the first page prefetched by the provider when
+ * the process started, if it was queried with the same projection and page size and no pet
+ * changed since.
+ */
+public class PetPageLoader extends AsyncTaskLoader<Cursor> {
+
+    private final String[] mProjection;
+    private final PetQuery mQuery;
+    private final int mPageSize;
+
+    /** Observes the pets table and records what changed */
+    private final ContentObserver mObserver = new ContentObserver(new Handler()) {
+        @Override
+        public boolean deliverSelfNotifications() {
+            return true;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            // Before Jelly Bean the changed uri is not known
+            onPetsChanged(null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            onPetsChanged(uri);
+        }
+    };
+    private boolean mObserverRegistered;
+
+    /**
+     * Last delivered cursor and the pages it is made of, written on the main thread and read
+     * by the load in the background, both holding the lock of the loader
+     */
+    private PagedCursor mCursor;
+    private List<PagedCursor.Page> mPages = new ArrayList<>();
+
+    /** Version of the next cursor this loader builds */
+    private int mNextVersion = 1;
+
+    /** Number of pages asked for so far */
+    private int mRequestedPages = 1;
+
+    /** Set when the table changed and every loaded page has to be queried again */
+    private boolean mReloadPages;
+
+    /** _IDs of the pets changed since the last load */
+    private final Set<Long> mChangedIds = new HashSet<>();
+
+    /**
+     * Changes taken by the running load, given back if it is cancelled so the next load still
+     * queries their pages again
+     */
+    private boolean mLoadingReloadPages;
+    private final Set<Long> mLoadingChangedIds = new HashSet<>();
+
+    /** Number of times every page was queried again, and of single pages queried again */
+    private int mFullReloadCount;
+    private int mPageReloadCount;
+
+    /**
+     * Creates a loader of the pets kept by {@code query}, which must be sorted by ascending _ID
+     * as the pages are ranges of _IDs.
+     */
+    public PetPageLoader(Context context, String[] projection, PetQuery query, int pageSize) {
+        super(context);
+        if (!query.isSortedById() || query.isDescending()) {
+            throw new IllegalArgumentException("Pages must be sorted by ascending _ID");
+        }
+        mProjection = projection;
+        mQuery = query;
+        mPageSize = pageSize;
+    }
+
+    /**
+     * Asks for the page after the last loaded row. Does nothing if the last page has been
+     * loaded already or the previous page is still loading.
+     */
+    public void loadNextPage() {
+        synchronized (this) {
+            if (mCursor == null || mCursor.isEndReached() || mRequestedPages > mPages.size()) {
+                return;
+            }
+            mRequestedPages++;
+        }
+        forceLoad();
+    }
+
+    /**
+     * Returns how many times a change made the loader query every loaded page again.
+     */
+    public synchronized int getFullReloadCount() {
+        return mFullReloadCount;
+    }
+
+    /**
+     * Returns how many times a change to a single pet made the loader query its page again.
+     */
+    public synchronized int getPageReloadCount() {
+        return mPageReloadCount;
+    }
+
+    /**
+     * Records a change notified for the given uri and starts a load. A change to a single pet
+     * only marks that pet, any other change marks every page.
+     */
+    private void onPetsChanged(Uri uri) {
+        synchronized (this) {
+            long id = getPetId(uri);
+            if (id == -1) {
+                mReloadPages = true;
+            } else {
+                mChangedIds.add(id);
+            }
+        }
+        onContentChanged();
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        PagedCursor oldCursor;
+        List<PagedCursor.Page> oldPages;
+        int requestedPages;
+        boolean reloadPages;
+        Set<Long> changedIds;
+        synchronized (this) {
+            oldCursor = mCursor;
+            oldPages = mPages;
+            requestedPages = mRequestedPages;
+            reloadPages = mReloadPages || oldCursor == null;
+            changedIds = new HashSet<>(mChangedIds);
+            mLoadingReloadPages = mReloadPages;
+            mLoadingChangedIds.addAll(mChangedIds);
+            mReloadPages = false;
+            mChangedIds.clear();
+        }
+
+        List<PagedCursor.Page> pages = new ArrayList<>();
+        boolean endReached = false;
+        try {
+            if (reloadPages) {
+                // Query every page again from the start of the table
+                if (oldCursor != null) {
+                    synchronized (this) {
+                        mFullReloadCount++;
+                    }
+                }
+            } else {
+                endReached = oldCursor.isEndReached();
+                pages.addAll(oldPages);
+                endReached = reloadChangedPages(pages, changedIds, endReached);
+            }
+
+            if (oldCursor == null && !mQuery.hasFilters()) {
+                // Attach to the first page prefetched at launch, which may still be loading
+                Cursor firstPage = PetCatalogPrefetch.getInstance().take(mProjection, mPageSize);
+                if (firstPage != null) {
+                    PagedCursor.Page page = toPage(0, Long.MAX_VALUE, firstPage);
+                    endReached = page.cursor.getCount() < mPageSize;
+                    addOrClose(pages, page);
+                }
+            }
+
+            while (pages.size() < requestedPages && !endReached) {
+                long afterId = pages.isEmpty() ? 0 : pages.get(pages.size() - 1).endId;
+                PagedCursor.Page page = queryPage(afterId, Long.MAX_VALUE, mPageSize);
+                if (page == null) {
+                    break;
+                }
+                endReached = page.cursor.getCount() < mPageSize;
+                addOrClose(pages, page);
+            }
+        } catch (RuntimeException e) {
+            closePages(pages, oldPages);
+            throw e;
+        }
+
+        PagedCursor cursor = new PagedCursor(pages, mProjection, endReached, mNextVersion++);
+        if (oldCursor != null) {
+            // Work out what changed here, so the list only has to apply the changes
+            cursor.computeDiff(oldCursor);
+        }
+        return cursor;
+    }
+
+    /**
+     * Queries again the pages holding the changed pets, replacing them in the list. A pet
+     * after the last page is only loaded if the end of the table had been reached, by querying
+     * the last page again. Returns whether the end of the table has been reached.
+     */
+    private boolean reloadChangedPages(List<PagedCursor.Page> pages, Set<Long> changedIds,
+                                       boolean endReached) {
+        if (pages.isEmpty()) {
+            // Nothing was loaded yet, so any new pet starts the first page
+            return endReached && changedIds.isEmpty();
+        }
+
+        Set<Integer> changedPages = new HashSet<>();
+        boolean changedAfterLastPage = false;
+        for (long id : changedIds) {
+            int index = findPage(pages, id);
+            if (index != -1) {
+                changedPages.add(index);
+            } else if (id > pages.get(pages.size() - 1).endId) {
+                changedAfterLastPage = true;
+            }
+        }
+
+        int lastIndex = pages.size() - 1;
+        for (int index = lastIndex; index >= 0; index--) {
+            boolean lastPage = index == lastIndex;
+            if (!changedPages.contains(index) && !(lastPage && changedAfterLastPage && endReached)) {
+                continue;
+            }
+
+            PagedCursor.Page oldPage = pages.get(index);
+            PagedCursor.Page page;
+            if (lastPage && endReached) {
+                // The last page can grow with the pets inserted after it
+                page = queryPage(oldPage.startId, Long.MAX_VALUE, mPageSize);
+                endReached = page == null || page.cursor.getCount() < mPageSize;
+            } else {
+                page = queryPage(oldPage.startId, oldPage.endId, Integer.MAX_VALUE);
+            }
+            synchronized (this) {
+                mPageReloadCount++;
+            }
+
+            // A page left empty stays in the list, so a later change to a pet of its range
+            // still finds it. The old page is kept if the query failed
+            if (page != null) {
+                pages.set(index, page);
+            }
+        }
+        return endReached;
+    }
+
+    /**
+     * Queries the pets whose _ID is greater than {@code startId} and at most {@code endId}, up
+     * to {@code limit} pets. The page ends at the last row returned when {@code endId} is
+     * Long.MAX_VALUE, and at {@code endId} otherwise. Returns null if the query failed.
+     */
+    private PagedCursor.Page queryPage(long startId, long endId, int limit) {
+        String selection = null;
+        String[] selectionArgs = null;
+        if (endId != Long.MAX_VALUE) {
+            selection = PetsContract.PetEntry._ID + "<=?";
+            selectionArgs = new String[]{String.valueOf(endId)};
+        }
+
+        Cursor cursor = getContext().getContentResolver().query(
+                PetsContract.PetEntry.buildPageUri(mQuery, null, startId, limit), mProjection,
+                selection, selectionArgs, null);
+        if (cursor == null) {
+            return null;
+        }
+        return toPage(startId, endId, cursor);
+    }
+
+    /**
+     * Returns the page of the given cursor, which holds the pets after {@code startId}. The page
+     * ends at the last row of the cursor when {@code endId} is Long.MAX_VALUE.
+     */
+    private static PagedCursor.Page toPage(long startId, long endId, Cursor cursor) {
+        // getCount() fills the cursor window here, in the background thread
+        if (endId == Long.MAX_VALUE) {
+            endId = startId;
+            if (cursor.getCount() > 0) {
+                cursor.moveToLast();
+                endId = cursor.getLong(cursor.getColumnIndexOrThrow(PetsContract.PetEntry._ID));
+            }
+        } else {
+            cursor.getCount();
+        }
+        return new PagedCursor.Page(startId, endId, cursor);
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        PagedCursor pagedCursor = (PagedCursor) cursor;
+        if (isReset()) {
+            // The loader was reset while loading, nobody is going to use these pages
+            closePages(pagedCursor.getPages(), mPages);
+            return;
+        }
+
+        List<PagedCursor.Page> oldPages = mPages;
+        synchronized (this) {
+            if (pagedCursor != mCursor) {
+                // A new load is done, the changes it took are on screen now
+                mLoadingReloadPages = false;
+                mLoadingChangedIds.clear();
+            }
+            mCursor = pagedCursor;
+            mPages = pagedCursor.getPages();
+        }
+
+        if (isStarted()) {
+            super.deliverResult(cursor);
+        }
+
+        // Close the pages replaced by a reload once the new cursor is in use
+        closePages(oldPages, mPages);
+    }
+
+    @Override
+    public void onCanceled(Cursor cursor) {
+        boolean changed;
+        synchronized (this) {
+            // The changes taken by the cancelled load are still to be loaded
+            changed = mLoadingReloadPages || !mLoadingChangedIds.isEmpty();
+            mReloadPages |= mLoadingReloadPages;
+            mChangedIds.addAll(mLoadingChangedIds);
+            mLoadingReloadPages = false;
+            mLoadingChangedIds.clear();
+        }
+        if (changed && !isStarted() && !isReset()) {
+            // Cancelled by onStopLoading, load them when the loader starts again. A load
+            // cancelled by forceLoad is followed by one that takes them
+            onContentChanged();
+        }
+        // Close the pages queried by the cancelled load, the delivered ones are still in use
+        if (cursor != null) {
+            closePages(((PagedCursor) cursor).getPages(), mPages);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserverRegistered) {
+            getContext().getContentResolver().registerContentObserver(
+                    PetsContract.PetEntry.CONTENT_URI, true, mObserver);
+            mObserverRegistered = true;
+        }
+        if (mCursor != null) {
+            deliverResult(mCursor);
+        }
+        if (takeContentChanged() || mCursor == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserverRegistered = false;
+        }
+
+        closePages(mPages, new ArrayList<PagedCursor.Page>());
+        synchronized (this) {
+            mPages = new ArrayList<>();
+            mCursor = null;
+            mRequestedPages = 1;
+        }
+    }
+
+    /**
+     * Returns the _ID of the pet of a single pet uri, or -1 for any other uri.
+     */
+    private static long getPetId(Uri uri) {
+        if (uri == null) {
+            return -1;
+        }
+        List<String> segments = uri.getPathSegments();
+        if (segments.size() != 2 || !PetsContract.PATH_PETS.equals(segments.get(0))) {
+            return -1;
+        }
+        try {
+            return ContentUris.parseId(uri);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the index of the page whose range holds the given _ID, or -1 if there is none.
+     */
+    private static int findPage(List<PagedCursor.Page> pages, long id) {
+        for (int i = 0; i < pages.size(); i++) {
+            PagedCursor.Page page = pages.get(i);
+            if (id > page.startId && id <= page.endId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds the page to the list, or closes it if it has no rows.
+     */
+    private static void addOrClose(List<PagedCursor.Page> pages, PagedCursor.Page page) {
+        if (page.cursor.getCount() > 0) {
+            pages.add(page);
+        } else {
+            page.cursor.close();
+        }
+    }
+
+    /**
+     * Closes the cursors of the given pages, except the ones of the pages in {@code keep}.
+     */
+    private static void closePages(List<PagedCursor.Page> pages, List<PagedCursor.Page> keep) {
+        for (PagedCursor.Page page : pages) {
+            if (!keep.contains(page) && !page.cursor.isClosed()) {
+                page.cursor.close();
+            }
+        }
+    }
+}
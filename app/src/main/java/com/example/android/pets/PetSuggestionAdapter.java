@@ -0,0 +1,97 @@
+package com.example.android.pets;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import com.example.android.pets.data.PetColumnSnapshot;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Suggests the names or the breeds other pets already have as the user types in an
+ * AutoCompleteTextView, so the same breed is spelled the same way. The suggestions come from
+ * the prefix indexes of {@link PetColumnSnapshot}, which never query the database.
+ */
+public class PetSuggestionAdapter extends BaseAdapter implements Filterable {
+
+    //Columns the suggestions come from
+    public static final int NAMES = 0;
+    public static final int BREEDS = 1;
+
+    //Most suggestions shown in the dropdown
+    private static final int MAX_SUGGESTIONS = 8;
+
+    private final LayoutInflater mInflater;
+    private final PetColumnSnapshot mSnapshot;
+    private final int mColumn;
+
+    private List<String> mSuggestions = Collections.emptyList();
+
+    public PetSuggestionAdapter(Context context, int column) {
+        mInflater = LayoutInflater.from(context);
+        mSnapshot = PetColumnSnapshot.getInstance(context);
+        mColumn = column;
+    }
+
+    @Override
+    public int getCount() {
+        return mSuggestions.size();
+    }
+
+    @Override
+    public String getItem(int position) {
+        return mSuggestions.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView view = (TextView) (convertView != null ? convertView : mInflater.inflate(
+                android.R.layout.simple_dropdown_item_1line, parent, false));
+        view.setText(getItem(position));
+        return view;
+    }
+
+    @Override
+    public Filter getFilter() {
+        return mFilter;
+    }
+
+    private final Filter mFilter = new Filter() {
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            //runs on the filter thread, the snapshot answers without reading the database
+            String prefix = constraint == null ? "" : constraint.toString().trim();
+            List<String> suggestions = prefix.isEmpty() ? Collections.<String>emptyList()
+                    : mColumn == BREEDS ? mSnapshot.findBreeds(prefix, MAX_SUGGESTIONS)
+                    : mSnapshot.findNames(prefix, MAX_SUGGESTIONS);
+
+            FilterResults results = new FilterResults();
+            results.values = suggestions;
+            results.count = suggestions.size();
+            return results;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            mSuggestions = (List<String>) results.values;
+            if (results.count > 0) {
+                notifyDataSetChanged();
+            } else {
+                notifyDataSetInvalidated();
+            }
+        }
+    };
+}
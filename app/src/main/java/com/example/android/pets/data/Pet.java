@@ -0,0 +1,99 @@
+package com.example.android.pets.data;
+
+import android.content.ContentValues;
+
+/**
+ * The attributes of a pet. A Pet is either built to be written through {@link PetRepository},
+ * or read from a {@link PetCursor}, which can fill the same Pet again with every row so a list
+ * reads all its rows into one object.
+ */
+public final class Pet {
+
+    private long mId;
+    private String mName;
+    private String mBreed;
+    private int mGender;
+    private int mWeight;
+
+    /**
+     * Creates an empty pet, to be filled by {@link PetCursor#getPet(Pet)}.
+     */
+    public Pet() {
+    }
+
+    /**
+     * Creates a pet that isn't stored yet. {@code gender} is one of the GENDER constants of
+     * {@link PetsContract.PetEntry}.
+     */
+    public Pet(String name, String breed, int gender, int weight) {
+        mName = name;
+        mBreed = breed;
+        mGender = gender;
+        mWeight = weight;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public String getBreed() {
+        return mBreed;
+    }
+
+    /**
+     * Returns one of the GENDER constants of {@link PetsContract.PetEntry}.
+     */
+    public int getGender() {
+        return mGender;
+    }
+
+    public int getWeight() {
+        return mWeight;
+    }
+
+    void set(long id, String name, String breed, int gender, int weight) {
+        mId = id;
+        mName = name;
+        mBreed = breed;
+        mGender = gender;
+        mWeight = weight;
+    }
+
+    /**
+     * Returns the values to insert or update the pet with through the ContentResolver. The
+     * _ID is left out, the provider assigns it on insert and takes it from the uri on update.
+     */
+    public ContentValues toContentValues() {
+        ContentValues values = new ContentValues(4);
+        values.put(PetsContract.PetEntry.COLUMN_NAME, mName);
+        values.put(PetsContract.PetEntry.COLUMN_BREED, mBreed);
+        values.put(PetsContract.PetEntry.COLUMN_GENDER, mGender);
+        values.put(PetsContract.PetEntry.COLUMN_WEIGHT, mWeight);
+        return values;
+    }
+
+    /**
+     * Returns the pet of values received by the provider, or null unless they hold the name,
+     * breed, gender and weight and nothing else. The values arrive boxed, so this copies them
+     * into a new Pet rather than avoiding the allocations of ContentValues.
+     */
+    static Pet fromContentValues(ContentValues values) {
+        if (values.size() != 4) {
+            return null;
+        }
+        Object gender = values.get(PetsContract.PetEntry.COLUMN_GENDER);
+        Object weight = values.get(PetsContract.PetEntry.COLUMN_WEIGHT);
+        if (!(gender instanceof Number) || !(weight instanceof Number)
+                || !values.containsKey(PetsContract.PetEntry.COLUMN_NAME)
+                || !values.containsKey(PetsContract.PetEntry.COLUMN_BREED)) {
+            return null;
+        }
+        return new Pet(values.getAsString(PetsContract.PetEntry.COLUMN_NAME),
+                values.getAsString(PetsContract.PetEntry.COLUMN_BREED),
+                ((Number) gender).intValue(), ((Number) weight).intValue());
+    }
+}
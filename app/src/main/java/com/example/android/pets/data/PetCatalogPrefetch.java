@@ -0,0 +1,142 @@
+package com.example.android.pets.data;
+
+import android.database.Cursor;
+import android.os.AsyncTask;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+/**
+ * The first page of the catalog, queried in the background as soon as {@link PetProvider} is
+ * created. The provider is created while the process starts, before any activity, so by the
+ * time the catalog asks for its first page the database is open and the page is usually ready.
+ * <p>
+ * The page is handed out once, to the first loader asking for the same projection and page
+ * size. A loader asking while the query is still running waits for it instead of starting
+ * another one. Any write to the pets discards the page, so it is never older than the data.
+ * The provider isn't exported, so it always runs in the process of the app and shares this
+ * instance with the activities.
+ */
+public final class PetCatalogPrefetch {
+
+    private static final String LOG_TAG = PetCatalogPrefetch.class.getSimpleName();
+
+    private static final PetCatalogPrefetch sInstance = new PetCatalogPrefetch();
+
+    private final Object mLock = new Object();
+
+    private String[] mProjection;
+    private int mPageSize;
+
+    /** The primed page, until a loader takes it or a write discards it */
+    private Cursor mFirstPage;
+
+    /** Set while the query is running, and when a write means its page must be discarded */
+    private boolean mLoading;
+    private boolean mDiscard;
+
+    /** SystemClock.elapsedRealtime() when the prefetch started, 0 if it never did */
+    private long mStartTime;
+
+    private PetCatalogPrefetch() {
+    }
+
+    public static PetCatalogPrefetch getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Returns SystemClock.elapsedRealtime() at the time the process started to load the
+     * catalog, or 0 if the provider didn't prefetch it.
+     */
+    public long getStartTime() {
+        synchronized (mLock) {
+            return mStartTime;
+        }
+    }
+
+    /**
+     * Runs the query of the first page with the given projection and page size on a background
+     * thread, replacing any page primed before.
+     */
+    void start(String[] projection, int pageSize, final Callable<Cursor> query) {
+        synchronized (mLock) {
+            closeFirstPage();
+            mProjection = projection;
+            mPageSize = pageSize;
+            mLoading = true;
+            mDiscard = false;
+            mStartTime = SystemClock.elapsedRealtime();
+        }
+
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                Cursor cursor = null;
+                try {
+                    cursor = query.call();
+                } catch (Exception e) {
+                    // The catalog queries the page itself
+                    Log.e(LOG_TAG, "Failed to prefetch the catalog", e);
+                }
+                synchronized (mLock) {
+                    mLoading = false;
+                    if (mDiscard && cursor != null) {
+                        cursor.close();
+                    } else {
+                        mFirstPage = cursor;
+                    }
+                    mLock.notifyAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the primed first page if it was queried with the same projection and page size,
+     * waiting for its query if it is still running, or null if there is no such page. The
+     * caller owns the cursor, a later call returns null. Must not be called from the main
+     * thread.
+     */
+    public Cursor take(String[] projection, int pageSize) {
+        synchronized (mLock) {
+            if (pageSize != mPageSize || !Arrays.equals(projection, mProjection)) {
+                return null;
+            }
+            try {
+                while (mLoading) {
+                    mLock.wait();
+                }
+            } catch (InterruptedException e) {
+                // The load was cancelled, leave the page for the next one
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            Cursor firstPage = mFirstPage;
+            mFirstPage = null;
+            return firstPage;
+        }
+    }
+
+    /**
+     * Discards the primed page after a write to the pets, including the page of a query still
+     * running.
+     */
+    void invalidate() {
+        synchronized (mLock) {
+            if (mLoading) {
+                mDiscard = true;
+            }
+            closeFirstPage();
+        }
+    }
+
+    private void closeFirstPage() {
+        if (mFirstPage != null) {
+            mFirstPage.close();
+            mFirstPage = null;
+        }
+    }
+}
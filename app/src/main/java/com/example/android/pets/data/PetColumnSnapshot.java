@@ -0,0 +1,295 @@
+package com.example.android.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A read-only copy of the pets held in {@link PetColumns}, for reports and filter previews
+ * that would otherwise read every pet through a cursor. Counting the pets of a
+ * {@link PetQuery} takes microseconds, even with a million pets, and never touches SQLite.
+ * <p>
+ * The pets are loaded from {@link PetProvider} in the background when the snapshot is first
+ * used, and kept up to date from the notifications of the provider: a change to a single pet
+ * queries that pet again, any other change loads every pet again. Until the first load is
+ * done the snapshot is empty and {@link #isLoaded()} returns false.
+ * <p>
+ * It also holds the distinct names and breeds in a {@link PetPrefixIndex} each, for the
+ * suggestions of the editor as the user types.
+ */
+public class PetColumnSnapshot {
+
+    private static final String LOG_TAG = PetColumnSnapshot.class.getSimpleName();
+
+    /** Columns of the pets held by the snapshot */
+    private static final String[] PROJECTION = new String[]{
+            PetsContract.PetEntry._ID,
+            PetsContract.PetEntry.COLUMN_NAME,
+            PetsContract.PetEntry.COLUMN_BREED,
+            PetsContract.PetEntry.COLUMN_GENDER,
+            PetsContract.PetEntry.COLUMN_WEIGHT};
+
+    private static PetColumnSnapshot sInstance;
+
+    private final ContentResolver mContentResolver;
+
+    /** Observes the pets and loads the changes, one at a time */
+    private final Handler mHandler;
+
+    /** The pets, replaced by a full load and changed in place for a single pet */
+    private PetColumns mColumns = new PetColumns();
+    private PetPrefixIndex mNames = new PetPrefixIndex();
+    private PetPrefixIndex mBreeds = new PetPrefixIndex();
+    private boolean mLoaded;
+
+    /** Changes not loaded yet, guarded by mPendingIds */
+    private final Set<Long> mPendingIds = new HashSet<>();
+    private boolean mReloadPending;
+
+    private final Runnable mLoadChanges = new Runnable() {
+        @Override
+        public void run() {
+            loadChanges();
+        }
+    };
+
+    private PetColumnSnapshot(ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+        HandlerThread thread = new HandlerThread(LOG_TAG);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+
+        mContentResolver.registerContentObserver(PetsContract.PetEntry.CONTENT_URI, true,
+                new ContentObserver(mHandler) {
+                    @Override
+                    public boolean deliverSelfNotifications() {
+                        return true;
+                    }
+
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        // Before Jelly Bean the changed uri is not known
+                        onPetsChanged(null);
+                    }
+
+                    @Override
+                    public void onChange(boolean selfChange, Uri uri) {
+                        onPetsChanged(uri);
+                    }
+                });
+        mReloadPending = true;
+        mHandler.post(mLoadChanges);
+    }
+
+    public static synchronized PetColumnSnapshot getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PetColumnSnapshot(
+                    context.getApplicationContext().getContentResolver());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns whether the pets were loaded, the snapshot is empty until then.
+     */
+    public synchronized boolean isLoaded() {
+        return mLoaded;
+    }
+
+    /**
+     * Returns the number of pets held.
+     */
+    public synchronized int size() {
+        return mColumns.size();
+    }
+
+    /**
+     * Returns the number of pets kept by the filters of the query. Its sort order is ignored.
+     */
+    public synchronized int count(PetQuery query) {
+        return mColumns.count(getGenderMask(query), getBound(query.getMinWeight()),
+                getBound(query.getMaxWeight()), query.getBreed());
+    }
+
+    /**
+     * Returns the _IDs of the pets kept by the filters of the query, in ascending order. Its
+     * sort order is ignored.
+     */
+    public synchronized long[] findIds(PetQuery query) {
+        return mColumns.findIds(getGenderMask(query), getBound(query.getMinWeight()),
+                getBound(query.getMaxWeight()), query.getBreed());
+    }
+
+    /**
+     * Returns at most {@code limit} names of pets starting with the prefix, regardless of case.
+     */
+    public synchronized List<String> findNames(String prefix, int limit) {
+        return mNames.find(prefix, limit);
+    }
+
+    /**
+     * Returns at most {@code limit} breeds of pets starting with the prefix, regardless of case.
+     */
+    public synchronized List<String> findBreeds(String prefix, int limit) {
+        return mBreeds.find(prefix, limit);
+    }
+
+    private static int getGenderMask(PetQuery query) {
+        int mask = 0;
+        for (int gender : query.getGenders()) {
+            mask |= 1 << gender;
+        }
+        return mask;
+    }
+
+    private static int getBound(Integer weight) {
+        return weight == null ? PetColumns.NO_VALUE : weight;
+    }
+
+    /**
+     * Records the change on mHandler, a uri of a single pet loads only that pet.
+     */
+    private void onPetsChanged(Uri uri) {
+        Long id = getPetId(uri);
+        synchronized (mPendingIds) {
+            if (id == null) {
+                mReloadPending = true;
+                mPendingIds.clear();
+            } else if (!mReloadPending) {
+                mPendingIds.add(id);
+            }
+        }
+        mHandler.removeCallbacks(mLoadChanges);
+        mHandler.post(mLoadChanges);
+    }
+
+    /**
+     * Returns the _ID of the pet of a single pet uri, or null for a uri of several pets. The
+     * uri of a photo changes no column held here, it is the uri of its pet.
+     */
+    private static Long getPetId(Uri uri) {
+        if (uri == null) {
+            return null;
+        }
+        List<String> segments = uri.getPathSegments();
+        if (segments.size() < 2 || !PetsContract.PATH_PETS.equals(segments.get(0))) {
+            return null;
+        }
+        try {
+            return Long.parseLong(segments.get(1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void loadChanges() {
+        boolean reload;
+        Long[] ids;
+        synchronized (mPendingIds) {
+            reload = mReloadPending;
+            ids = mPendingIds.toArray(new Long[mPendingIds.size()]);
+            mReloadPending = false;
+            mPendingIds.clear();
+        }
+
+        try {
+            if (reload) {
+                loadAll();
+                return;
+            }
+            for (Long id : ids) {
+                if (!loadPet(id)) {
+                    loadAll();
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            // The snapshot stays as it was until the next change
+            Log.e(LOG_TAG, "Failed to load the pets", e);
+        }
+    }
+
+    /**
+     * Loads every pet into new columns, which replace the held ones.
+     */
+    private void loadAll() {
+        PetColumns columns = new PetColumns();
+        List<String> names = new ArrayList<>();
+        List<String> breeds = new ArrayList<>();
+        Cursor cursor = query(PetsContract.PetEntry.CONTENT_URI);
+        try {
+            while (cursor.moveToNext()) {
+                put(columns, cursor);
+                names.add(cursor.getString(1));
+                breeds.add(cursor.getString(2));
+            }
+        } finally {
+            cursor.close();
+        }
+        // Sorts the indexes before the columns are shared
+        columns.count(0, PetColumns.NO_VALUE, PetColumns.NO_VALUE, null);
+        PetPrefixIndex nameIndex = PetPrefixIndex.build(names);
+        PetPrefixIndex breedIndex = PetPrefixIndex.build(breeds);
+
+        synchronized (this) {
+            mColumns = columns;
+            mNames = nameIndex;
+            mBreeds = breedIndex;
+            mLoaded = true;
+        }
+    }
+
+    /**
+     * Loads the pet with the given _ID, removing it if it was deleted. Returns false if the
+     * held columns can't take it and every pet has to be loaded again.
+     */
+    private boolean loadPet(long id) {
+        Cursor cursor = query(ContentUris.withAppendedId(PetsContract.PetEntry.CONTENT_URI, id));
+        try {
+            synchronized (this) {
+                // The old name and breed of the pet no longer count for the suggestions
+                String oldName = mColumns.getName(id);
+                String oldBreed = mColumns.getBreed(id);
+                if (!cursor.moveToFirst()) {
+                    mColumns.remove(id);
+                } else if (!put(mColumns, cursor)) {
+                    return false;
+                }
+                mNames.remove(oldName);
+                mBreeds.remove(oldBreed);
+                if (cursor.getCount() > 0) {
+                    mNames.add(cursor.getString(1));
+                    mBreeds.add(cursor.getString(2));
+                }
+                return true;
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Cursor query(Uri uri) {
+        Cursor cursor = mContentResolver.query(uri, PROJECTION, null, null, null);
+        if (cursor == null) {
+            throw new IllegalStateException("Failed to query " + uri);
+        }
+        return cursor;
+    }
+
+    private static boolean put(PetColumns columns, Cursor cursor) {
+        return columns.put(cursor.getLong(0), cursor.getString(1), cursor.getString(2),
+                cursor.isNull(3) ? PetColumns.NO_VALUE : cursor.getInt(3),
+                cursor.isNull(4) ? PetColumns.NO_VALUE : cursor.getInt(4));
+    }
+}
@@ -0,0 +1,408 @@
+package com.example.android.pets.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The pets held column by column in primitive arrays, for filters that look at every pet
+ * without going through a cursor. Gender and weight are held as ints, name and breed as codes
+ * of a dictionary of their distinct values, so a row costs no object of its own.
+ * <p>
+ * Rows are kept in ascending _ID order. Two sorted indexes hold the rows in the order of the
+ * filters: by gender and weight, and by breed, gender and weight. The pets of a gender within
+ * a weight range, of a breed or not, are then a range of an index found by binary search, so
+ * counting them never reads a row. The indexes are sorted once, when the first filter runs
+ * after the pets were loaded, and then kept up to date as single pets change, which moves
+ * the index entries after the changed one. Removed rows are only marked, and the arrays are
+ * compacted once most of them are removed.
+ * <p>
+ * It has no Android dependencies, so the benchmark module compiles it as it is. It is not
+ * thread safe, see {@link PetColumnSnapshot}.
+ */
+public final class PetColumns {
+
+    /** Value of a gender or weight the pet doesn't have, and of an open end of a range */
+    public static final int NO_VALUE = Integer.MIN_VALUE;
+
+    /** Dictionary code of a missing name or breed */
+    private static final int NO_CODE = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Rows held, removed ones included, and rows not removed */
+    private int mSize;
+    private int mLiveCount;
+
+    private long[] mIds = new long[INITIAL_CAPACITY];
+    private int[] mGenders = new int[INITIAL_CAPACITY];
+    private int[] mWeights = new int[INITIAL_CAPACITY];
+    private int[] mNameCodes = new int[INITIAL_CAPACITY];
+    private int[] mBreedCodes = new int[INITIAL_CAPACITY];
+    private final BitSet mRemoved = new BitSet();
+
+    private final Dictionary mNames = new Dictionary();
+    private final Dictionary mBreeds = new Dictionary();
+
+    /** Rows not removed, sorted by gender, weight and row */
+    private int[] mGenderIndex = new int[0];
+
+    /** Rows not removed, sorted by breed code, gender, weight and row */
+    private int[] mBreedIndex = new int[0];
+
+    /** Entries used in both indexes */
+    private int mIndexSize;
+
+    /** Cleared while rows are appended without updating the indexes */
+    private boolean mIndexed;
+
+    /**
+     * Returns the number of pets held.
+     */
+    public int size() {
+        return mLiveCount;
+    }
+
+    /**
+     * Adds the pet with the given _ID, or replaces it if it is already held. Use
+     * {@link #NO_VALUE} for a missing gender or weight. A new pet must have a greater _ID than
+     * every pet held, as the provider gives them, otherwise it isn't added and false is
+     * returned so the caller can load every pet again.
+     */
+    public boolean put(long id, String name, String breed, int gender, int weight) {
+        int row = Arrays.binarySearch(mIds, 0, mSize, id);
+        if (row >= 0) {
+            ensureIndexed();
+            if (!mRemoved.get(row)) {
+                unindex(row);
+                mLiveCount--;
+            }
+            mRemoved.clear(row);
+        } else if (mSize > 0 && id < mIds[mSize - 1]) {
+            return false;
+        } else {
+            row = mSize++;
+            ensureCapacity(mSize);
+            mIds[row] = id;
+        }
+
+        mNameCodes[row] = mNames.encode(name);
+        mBreedCodes[row] = mBreeds.encode(breed);
+        mGenders[row] = gender;
+        mWeights[row] = weight;
+        // While the pets are being loaded the indexes are sorted once, by the first filter
+        if (mIndexed) {
+            index(row);
+        }
+        mLiveCount++;
+        return true;
+    }
+
+    /**
+     * Removes the pet with the given _ID, if it is held.
+     */
+    public void remove(long id) {
+        int row = Arrays.binarySearch(mIds, 0, mSize, id);
+        if (row < 0 || mRemoved.get(row)) {
+            return;
+        }
+        ensureIndexed();
+        unindex(row);
+        mRemoved.set(row);
+        mLiveCount--;
+
+        if (mSize > INITIAL_CAPACITY && mLiveCount < mSize / 2) {
+            compact();
+        }
+    }
+
+    /**
+     * Returns the number of pets matching the filters. {@code genderMask} has the bit
+     * {@code 1 << gender} set for each gender kept, or is 0 to keep every gender. A weight
+     * bound of {@link #NO_VALUE} leaves its end of the range open, and a null breed keeps
+     * every breed. Pets without a gender or weight only match when that filter is not set.
+     */
+    public int count(int genderMask, int minWeight, int maxWeight, String breed) {
+        return match(genderMask, minWeight, maxWeight, breed, null);
+    }
+
+    /**
+     * Returns the _IDs of the pets matching the filters of
+     * {@link #count(int, int, int, String)}, in ascending order.
+     */
+    public long[] findIds(int genderMask, int minWeight, int maxWeight, String breed) {
+        long[] ids = new long[count(genderMask, minWeight, maxWeight, breed)];
+        match(genderMask, minWeight, maxWeight, breed, ids);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Returns the name of the pet with the given _ID, or null if it isn't held.
+     */
+    public String getName(long id) {
+        int row = Arrays.binarySearch(mIds, 0, mSize, id);
+        return row < 0 || mRemoved.get(row) ? null : mNames.decode(mNameCodes[row]);
+    }
+
+    /**
+     * Returns the breed of the pet with the given _ID, or null if it has none or isn't held.
+     */
+    public String getBreed(long id) {
+        int row = Arrays.binarySearch(mIds, 0, mSize, id);
+        return row < 0 || mRemoved.get(row) ? null : mBreeds.decode(mBreedCodes[row]);
+    }
+
+    /**
+     * Counts the rows matching the filters, and writes their _IDs to {@code ids} unless it is
+     * null. Within the breed, or the whole gender index, the rows of each gender kept are
+     * followed by the range of the weights kept.
+     */
+    private int match(int genderMask, int minWeight, int maxWeight, String breed, long[] ids) {
+        ensureIndexed();
+
+        boolean byBreed = breed != null;
+        int breedCode = NO_CODE;
+        if (byBreed) {
+            breedCode = mBreeds.find(breed);
+            if (breedCode == NO_CODE) {
+                return 0;
+            }
+        }
+        int[] index = byBreed ? mBreedIndex : mGenderIndex;
+
+        // Pets without a weight sort first, and are only kept without a weight filter
+        int low = minWeight != NO_VALUE ? minWeight
+                : maxWeight != NO_VALUE ? NO_VALUE + 1 : NO_VALUE;
+        int high = maxWeight != NO_VALUE ? maxWeight : Integer.MAX_VALUE;
+        if (low > high) {
+            return 0;
+        }
+
+        int position = byBreed ? bound(index, true, breedCode, NO_VALUE, NO_VALUE, -1) : 0;
+        int end = byBreed ? bound(index, true, breedCode + 1, NO_VALUE, NO_VALUE, -1)
+                : mIndexSize;
+        int count = 0;
+        while (position < end) {
+            int gender = mGenders[index[position]];
+            int genderEnd = bound(index, byBreed, breedCode, gender, Integer.MAX_VALUE,
+                    Integer.MAX_VALUE);
+            if (matchesGender(gender, genderMask)) {
+                int from = bound(index, byBreed, breedCode, gender, low, -1);
+                int to = bound(index, byBreed, breedCode, gender, high, Integer.MAX_VALUE);
+                if (ids != null) {
+                    for (int i = from; i < to; i++) {
+                        ids[count + i - from] = mIds[index[i]];
+                    }
+                }
+                count += to - from;
+            }
+            position = genderEnd;
+        }
+        return count;
+    }
+
+    private static boolean matchesGender(int gender, int genderMask) {
+        return genderMask == 0 ||
+                (gender >= 0 && gender < Integer.SIZE && (genderMask & (1 << gender)) != 0);
+    }
+
+    /**
+     * Returns the position in the index of the first entry not less than the given breed code,
+     * gender, weight and row. The breed code is ignored in the gender index.
+     */
+    private int bound(int[] index, boolean byBreed, int breedCode, int gender, int weight,
+                      int row) {
+        int low = 0;
+        int high = mIndexSize;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(index[middle], byBreed, breedCode, gender, weight, row) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares the row with the given values, in the order of the index.
+     */
+    private int compare(int row, boolean byBreed, int breedCode, int gender, int weight,
+                        int otherRow) {
+        if (byBreed && mBreedCodes[row] != breedCode) {
+            return mBreedCodes[row] < breedCode ? -1 : 1;
+        }
+        if (mGenders[row] != gender) {
+            return mGenders[row] < gender ? -1 : 1;
+        }
+        if (mWeights[row] != weight) {
+            return mWeights[row] < weight ? -1 : 1;
+        }
+        return row < otherRow ? -1 : (row == otherRow ? 0 : 1);
+    }
+
+    private void index(int row) {
+        if (mIndexSize == mGenderIndex.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, mIndexSize * 2);
+            mGenderIndex = Arrays.copyOf(mGenderIndex, capacity);
+            mBreedIndex = Arrays.copyOf(mBreedIndex, capacity);
+        }
+        insert(mGenderIndex, bound(mGenderIndex, false, NO_CODE, mGenders[row], mWeights[row],
+                row), row);
+        insert(mBreedIndex, bound(mBreedIndex, true, mBreedCodes[row], mGenders[row],
+                mWeights[row], row), row);
+        mIndexSize++;
+    }
+
+    private void unindex(int row) {
+        delete(mGenderIndex, bound(mGenderIndex, false, NO_CODE, mGenders[row], mWeights[row],
+                row));
+        delete(mBreedIndex, bound(mBreedIndex, true, mBreedCodes[row], mGenders[row],
+                mWeights[row], row));
+        mIndexSize--;
+    }
+
+    private void insert(int[] index, int position, int row) {
+        System.arraycopy(index, position, index, position + 1, mIndexSize - position);
+        index[position] = row;
+    }
+
+    private void delete(int[] index, int position) {
+        System.arraycopy(index, position + 1, index, position, mIndexSize - position - 1);
+    }
+
+    /**
+     * Sorts the indexes of every row if rows were appended without updating them. The rows are
+     * sorted by weight, then by gender and then by breed, each sort keeping the order of the
+     * previous one.
+     */
+    private void ensureIndexed() {
+        if (mIndexed) {
+            return;
+        }
+
+        // Sorting weight and row packed in a long sorts by weight and then by row
+        long[] weightRows = new long[mLiveCount];
+        int count = 0;
+        for (int row = 0; row < mSize; row++) {
+            if (!mRemoved.get(row)) {
+                weightRows[count++] = ((long) mWeights[row] << 32) | row;
+            }
+        }
+        Arrays.sort(weightRows);
+        int[] byWeight = new int[Math.max(INITIAL_CAPACITY, count)];
+        for (int i = 0; i < count; i++) {
+            byWeight[i] = (int) weightRows[i];
+        }
+
+        mGenderIndex = sortByKey(byWeight, count, mGenders);
+        mBreedIndex = sortByKey(mGenderIndex, count, mBreedCodes);
+        mIndexSize = count;
+        mIndexed = true;
+    }
+
+    /**
+     * Returns the first {@code count} rows sorted by their key, rows of the same key keeping
+     * their order. There are few distinct keys, so the rows are counted into their places.
+     */
+    private static int[] sortByKey(int[] rows, int count, int[] keys) {
+        int[] distinctKeys = new int[count];
+        for (int i = 0; i < count; i++) {
+            distinctKeys[i] = keys[rows[i]];
+        }
+        Arrays.sort(distinctKeys);
+        int distinctCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinctCount == 0 || distinctKeys[i] != distinctKeys[distinctCount - 1]) {
+                distinctKeys[distinctCount++] = distinctKeys[i];
+            }
+        }
+
+        int[] starts = new int[distinctCount + 1];
+        for (int i = 0; i < count; i++) {
+            starts[Arrays.binarySearch(distinctKeys, 0, distinctCount, keys[rows[i]]) + 1]++;
+        }
+        for (int i = 1; i <= distinctCount; i++) {
+            starts[i] += starts[i - 1];
+        }
+
+        int[] sorted = new int[rows.length];
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            sorted[starts[Arrays.binarySearch(distinctKeys, 0, distinctCount, keys[row])]++] =
+                    row;
+        }
+        return sorted;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mIds.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, mIds.length * 2);
+        mIds = Arrays.copyOf(mIds, newCapacity);
+        mGenders = Arrays.copyOf(mGenders, newCapacity);
+        mWeights = Arrays.copyOf(mWeights, newCapacity);
+        mNameCodes = Arrays.copyOf(mNameCodes, newCapacity);
+        mBreedCodes = Arrays.copyOf(mBreedCodes, newCapacity);
+    }
+
+    /**
+     * Drops the removed rows, which moves the rows after them, so the indexes are sorted again
+     * by the next filter.
+     */
+    private void compact() {
+        int size = 0;
+        for (int row = 0; row < mSize; row++) {
+            if (mRemoved.get(row)) {
+                continue;
+            }
+            mIds[size] = mIds[row];
+            mGenders[size] = mGenders[row];
+            mWeights[size] = mWeights[row];
+            mNameCodes[size] = mNameCodes[row];
+            mBreedCodes[size] = mBreedCodes[row];
+            size++;
+        }
+        mSize = size;
+        mRemoved.clear();
+        mIndexed = false;
+    }
+
+    /**
+     * The distinct values of a text column, each with the code the rows hold instead of it.
+     * Codes are never reused, a value no pet has anymore keeps its code.
+     */
+    private static final class Dictionary {
+
+        private final Map<String, Integer> mCodes = new HashMap<>();
+        private final List<String> mValues = new ArrayList<>();
+
+        int encode(String value) {
+            if (value == null) {
+                return NO_CODE;
+            }
+            Integer code = mCodes.get(value);
+            if (code == null) {
+                code = mValues.size();
+                mCodes.put(value, code);
+                mValues.add(value);
+            }
+            return code;
+        }
+
+        String decode(int code) {
+            return code == NO_CODE ? null : mValues.get(code);
+        }
+
+        int find(String value) {
+            Integer code = mCodes.get(value);
+            return code == null ? NO_CODE : code;
+        }
+    }
+}
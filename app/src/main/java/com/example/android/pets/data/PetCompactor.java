@@ -0,0 +1,169 @@
+package com.example.android.pets.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Removes the rows of the deleted pets in the background. The rows are found a chunk at a time
+ * by _ID on a read connection, and every chunk is removed in a short transaction of its own, so
+ * writers never wait long for the database. The photos of the removed pets are removed after
+ * their chunk has been committed. Once every deleted row is gone the free pages are
+ * given back to the file system with incremental vacuum, a few at a time: each compaction
+ * runs a bounded number of rounds and schedules another one for the pages left.
+ */
+class PetCompactor implements Runnable {
+
+    private static final String LOG_TAG = PetCompactor.class.getSimpleName();
+
+    /** Number of deleted rows removed by each transaction */
+    private static final int CHUNK_SIZE = 500;
+
+    /** Number of free pages given back by each incremental vacuum */
+    private static final int VACUUM_PAGES = 128;
+
+    /** Number of incremental vacuums run by each compaction, each in a transaction of its own */
+    private static final int VACUUM_ROUNDS = 8;
+
+    /** Value of PRAGMA auto_vacuum when the database can be vacuumed incrementally */
+    private static final long AUTO_VACUUM_INCREMENTAL = 2;
+
+    private static final String SQL_FIND_DELETED = "SELECT " + PetsContract.PetEntry._ID +
+            " FROM " + PetsContract.PetEntry.TABLE_NAME + " WHERE " + PetsContract.PetEntry._ID +
+            " > ? AND NOT (" + PetDbHelper.SELECTION_NOT_DELETED + ") ORDER BY " +
+            PetsContract.PetEntry._ID + " LIMIT " + CHUNK_SIZE;
+
+    private static final String SQL_REMOVE_BY_ID = "DELETE FROM " +
+            PetsContract.PetEntry.TABLE_NAME + " WHERE " + PetsContract.PetEntry._ID + " = ?";
+
+    private final SQLiteOpenHelper mDbHelper;
+    private final PetPhotoStore mPhotoStore;
+    private final PetProviderStats mStats;
+
+    /** Set while a compaction is waiting to run, so deletes in a row schedule only one */
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+
+    PetCompactor(SQLiteOpenHelper dbHelper, PetPhotoStore photoStore, PetProviderStats stats) {
+        mDbHelper = dbHelper;
+        mPhotoStore = photoStore;
+        mStats = stats;
+    }
+
+    /**
+     * Schedules a compaction on a background thread, unless one is already waiting to run.
+     */
+    void schedule() {
+        if (mScheduled.compareAndSet(false, true)) {
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        // Pets deleted from now on need another compaction
+        mScheduled.set(false);
+        try {
+            compact();
+        } catch (SQLiteException e) {
+            // The rows left are removed by the next compaction
+            Log.e(LOG_TAG, "Failed to compact the pets table", e);
+        }
+    }
+
+    /**
+     * Removes the rows of every deleted pet and vacuums the free pages. Only one compaction
+     * runs at a time.
+     */
+    synchronized void compact() {
+        long start = System.nanoTime();
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        int rows = 0;
+        long afterId = 0;
+        SQLiteStatement removeById = database.compileStatement(SQL_REMOVE_BY_ID);
+        try {
+            long[] ids;
+            while ((ids = findDeleted(database, afterId)).length > 0) {
+                database.beginTransactionNonExclusive();
+                try {
+                    for (long id : ids) {
+                        removeById.bindLong(1, id);
+                        rows += removeById.executeUpdateDelete();
+                    }
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+                removePhotos(ids);
+                afterId = ids[ids.length - 1];
+            }
+        } finally {
+            removeById.close();
+        }
+
+        if (!vacuum(database)) {
+            // Free pages are left, they are given back by the next compaction
+            schedule();
+        }
+        mStats.record(PetProviderStats.OPERATION_COMPACT, PetsContract.PATH_PETS,
+                System.nanoTime() - start, rows, -1);
+    }
+
+    /**
+     * Returns the _IDs of the next chunk of deleted pets after the given _ID. Deleted pets stay
+     * deleted, so they can be looked up before the transaction that removes them.
+     */
+    private static long[] findDeleted(SQLiteDatabase database, long afterId) {
+        Cursor cursor = database.rawQuery(SQL_FIND_DELETED, new String[]{String.valueOf(afterId)});
+        try {
+            long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Removes the photos of the given pets, the ones without a photo are skipped.
+     */
+    private void removePhotos(long[] ids) {
+        for (long id : ids) {
+            try {
+                mPhotoStore.deletePhoto(id);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Failed to delete the photo of pet " + id, e);
+            }
+        }
+    }
+
+    /**
+     * Gives at most {@link #VACUUM_ROUNDS} rounds of free pages back to the file system. Returns
+     * false if free pages are left. A database created before {@link PetDbHelper} turned on
+     * incremental auto vacuum keeps its free pages for new rows: turning it on would take a
+     * full VACUUM, which rewrites the whole file while every writer waits.
+     */
+    private static boolean vacuum(SQLiteDatabase database) {
+        if (DatabaseUtils.longForQuery(database, "PRAGMA auto_vacuum", null)
+                != AUTO_VACUUM_INCREMENTAL) {
+            return true;
+        }
+        for (int round = 0; round < VACUUM_ROUNDS; round++) {
+            if (DatabaseUtils.longForQuery(database, "PRAGMA freelist_count", null) == 0) {
+                return true;
+            }
+            database.execSQL("PRAGMA incremental_vacuum(" + VACUUM_PAGES + ")");
+        }
+        return DatabaseUtils.longForQuery(database, "PRAGMA freelist_count", null) == 0;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.android.pets.data;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CSV as described by RFC 4180, the format of the CSV export and import of
+ * {@link PetTransfer}. Records end with CRLF, and fields holding a comma, a quote or a line
+ * break are quoted, with their quotes written twice.
+ * <p>
+ * It has no Android dependencies, so the benchmark module compiles it as it is.
+ */
+public final class PetCsv {
+
+    public static final String LINE_END = "\r\n";
+
+    private PetCsv() {
+    }
+
+    /**
+     * Writes a field, quoted only if it has to be.
+     */
+    public static void writeField(Writer out, String value) throws IOException {
+        boolean quoted = false;
+        for (int i = 0; i < value.length() && !quoted; i++) {
+            char c = value.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quoted) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    /**
+     * Reads the records of a CSV input one at a time, so only the current record is held.
+     */
+    public static final class RecordReader {
+
+        private final Reader mIn;
+        /** Number of records read */
+        private int mRecord;
+        /** Next character of the input, -2 until the first one is read */
+        private int mNext = -2;
+
+        public RecordReader(Reader in) {
+            mIn = in;
+        }
+
+        /**
+         * Returns the number of records read so far, the header included.
+         */
+        public int getRecordNumber() {
+            return mRecord;
+        }
+
+        /**
+         * Reads the fields of the next record, or returns null at the end of the input. Quoted
+         * fields may hold commas, quotes written twice and line breaks.
+         */
+        public List<String> readRecord() throws IOException {
+            if (mNext == -2) {
+                mNext = mIn.read();
+            }
+            // Skip empty lines, the last record usually ends with a line break too
+            while (mNext == '\r' || mNext == '\n') {
+                mNext = mIn.read();
+            }
+            if (mNext == -1) {
+                return null;
+            }
+            mRecord++;
+
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean inQuotes = false;
+            while (true) {
+                int c = mNext;
+                mNext = mIn.read();
+                if (inQuotes) {
+                    if (c == -1) {
+                        throw new IllegalArgumentException(
+                                "Unterminated quoted field in record " + mRecord);
+                    } else if (c == '"' && mNext == '"') {
+                        field.append('"');
+                        mNext = mIn.read();
+                    } else if (c == '"') {
+                        inQuotes = false;
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"') {
+                    inQuotes = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\r' || c == '\n' || c == -1) {
+                    fields.add(field.toString());
+                    return fields;
+                } else {
+                    field.append((char) c);
+                }
+            }
+        }
+    }
+}
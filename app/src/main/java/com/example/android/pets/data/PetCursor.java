@@ -0,0 +1,131 @@
+package com.example.android.pets.data;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+/**
+ * Cursor over pets with typed getters for the columns of the pets table. The index of every
+ * column is looked up once when the cursor is wrapped, so reading a row never looks up a column
+ * by name. Closing the PetCursor closes the wrapped cursor.
+ * <p>
+ * Query with {@link #PROJECTION}, or with {@link #CATALOG_PROJECTION} when only the columns
+ * shown by the catalog are needed. Their columns are always at the positions given by the
+ * INDEX constants.
+ */
+public class PetCursor extends CursorWrapper {
+
+    /** Every column of the pets table */
+    public static final String[] PROJECTION = new String[]{
+            PetsContract.PetEntry._ID,
+            PetsContract.PetEntry.COLUMN_NAME,
+            PetsContract.PetEntry.COLUMN_BREED,
+            PetsContract.PetEntry.COLUMN_HAS_PHOTO,
+            PetsContract.PetEntry.COLUMN_GENDER,
+            PetsContract.PetEntry.COLUMN_WEIGHT};
+
+    /** Columns shown by the catalog, the first columns of {@link #PROJECTION} */
+    public static final String[] CATALOG_PROJECTION = new String[]{
+            PetsContract.PetEntry._ID,
+            PetsContract.PetEntry.COLUMN_NAME,
+            PetsContract.PetEntry.COLUMN_BREED,
+            PetsContract.PetEntry.COLUMN_HAS_PHOTO};
+
+    //Positions of the columns in both projections
+    public static final int INDEX_ID = 0;
+    public static final int INDEX_NAME = 1;
+    public static final int INDEX_BREED = 2;
+    public static final int INDEX_HAS_PHOTO = 3;
+    public static final int INDEX_GENDER = 4;
+    public static final int INDEX_WEIGHT = 5;
+
+    //Indices of the columns in the wrapped cursor, -1 for the columns it doesn't have
+    private final int mIdIndex;
+    private final int mNameIndex;
+    private final int mBreedIndex;
+    private final int mGenderIndex;
+    private final int mWeightIndex;
+    private final int mHasPhotoIndex;
+
+    public PetCursor(Cursor cursor) {
+        super(cursor);
+        mIdIndex = cursor.getColumnIndex(PetsContract.PetEntry._ID);
+        mNameIndex = cursor.getColumnIndex(PetsContract.PetEntry.COLUMN_NAME);
+        mBreedIndex = cursor.getColumnIndex(PetsContract.PetEntry.COLUMN_BREED);
+        mGenderIndex = cursor.getColumnIndex(PetsContract.PetEntry.COLUMN_GENDER);
+        mWeightIndex = cursor.getColumnIndex(PetsContract.PetEntry.COLUMN_WEIGHT);
+        mHasPhotoIndex = cursor.getColumnIndex(PetsContract.PetEntry.COLUMN_HAS_PHOTO);
+    }
+
+    public long getId() {
+        return getLong(checkColumn(mIdIndex, PetsContract.PetEntry._ID));
+    }
+
+    public String getName() {
+        return getString(checkColumn(mNameIndex, PetsContract.PetEntry.COLUMN_NAME));
+    }
+
+    public String getBreed() {
+        return getString(checkColumn(mBreedIndex, PetsContract.PetEntry.COLUMN_BREED));
+    }
+
+    /**
+     * Returns one of the GENDER constants of {@link PetsContract.PetEntry}, GENDER_UNKNOWN if
+     * the pet has no gender.
+     */
+    public int getGender() {
+        return getInt(checkColumn(mGenderIndex, PetsContract.PetEntry.COLUMN_GENDER));
+    }
+
+    /**
+     * Returns the weight of the pet, 0 if the pet has no weight.
+     */
+    public int getWeight() {
+        return getInt(checkColumn(mWeightIndex, PetsContract.PetEntry.COLUMN_WEIGHT));
+    }
+
+    /**
+     * Returns true if the pet has a photo, read through {@link PetPhotoStore}.
+     */
+    public boolean hasPhoto() {
+        return getInt(checkColumn(mHasPhotoIndex, PetsContract.PetEntry.COLUMN_HAS_PHOTO)) != 0;
+    }
+
+    /**
+     * Copies the name of the pet into the buffer, which only allocates if the buffer is too
+     * small for it.
+     */
+    public void copyNameTo(CharArrayBuffer buffer) {
+        copyStringToBuffer(checkColumn(mNameIndex, PetsContract.PetEntry.COLUMN_NAME), buffer);
+    }
+
+    /**
+     * Copies the breed of the pet into the buffer, leaving it empty if the pet has no breed.
+     */
+    public void copyBreedTo(CharArrayBuffer buffer) {
+        copyStringToBuffer(checkColumn(mBreedIndex, PetsContract.PetEntry.COLUMN_BREED), buffer);
+    }
+
+    /**
+     * Reads the current row into {@code pet}, or into a new Pet if it is null, and returns it.
+     * Columns the cursor doesn't have are left at null or 0.
+     */
+    public Pet getPet(Pet pet) {
+        if (pet == null) {
+            pet = new Pet();
+        }
+        pet.set(mIdIndex == -1 ? 0 : getLong(mIdIndex),
+                mNameIndex == -1 ? null : getString(mNameIndex),
+                mBreedIndex == -1 ? null : getString(mBreedIndex),
+                mGenderIndex == -1 ? PetsContract.PetEntry.GENDER_UNKNOWN : getInt(mGenderIndex),
+                mWeightIndex == -1 ? 0 : getInt(mWeightIndex));
+        return pet;
+    }
+
+    private static int checkColumn(int index, String column) {
+        if (index == -1) {
+            throw new IllegalStateException("Column " + column + " is not in the projection");
+        }
+        return index;
+    }
+}
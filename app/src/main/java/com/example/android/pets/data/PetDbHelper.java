@@ -3,6 +3,7 @@ package com.example.android.pets.data;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 /**
  * Created by robertomoreno on 24/12/17.
@@ -10,38 +11,107 @@ import android.database.sqlite.SQLiteOpenHelper;
 
 public class PetDbHelper extends SQLiteOpenHelper {
 
-    private static final String TEXT_TYPE = " TEXT";
-    private static final String NOT_NULL = " NOT NULL";
-    private static final String COMMA_SEP = ",";
-    private static final String SQL_CREATE_ENTRIES =
-            "CREATE TABLE " + PetsContract.PetEntry.TABLE_NAME + " (" +
-                    PetsContract.PetEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    PetsContract.PetEntry.COLUMN_NAME + TEXT_TYPE + NOT_NULL + COMMA_SEP +
-                    PetsContract.PetEntry.COLUMN_BREED + TEXT_TYPE + COMMA_SEP +
-                    PetsContract.PetEntry.COLUMN_GENDER + " INTEGER" + COMMA_SEP +
-                    PetsContract.PetEntry.COLUMN_WEIGHT + " INTEGER" + " )";
+    //Full-text index over the name and breed of the pets, its docid is the _ID of the pet
+    public static final String FTS_TABLE_NAME = PetSchema.FTS_TABLE_NAME;
 
-    private static final String SQL_DELETE_ENTRIES = "DROP TABLE IF EXISTS " +
-            PetsContract.PetEntry.TABLE_NAME;
+    //Set to 1 when a pet is deleted, the row stays in the table until it is compacted
+    public static final String COLUMN_DELETED = PetSchema.COLUMN_DELETED;
 
+    //Single row table holding the _ID up to which every pet has been deleted at once
+    public static final String PURGE_TABLE_NAME = PetSchema.PURGE_TABLE_NAME;
+    public static final String COLUMN_DELETED_THROUGH_ID = PetSchema.COLUMN_DELETED_THROUGH_ID;
 
-    public static final int DATABASE_VERSION = 1;
+    //Selection of the pets that haven't been deleted
+    public static final String SELECTION_NOT_DELETED = PetSchema.SELECTION_NOT_DELETED;
+
+    //View of the pets that haven't been deleted, every query of the provider reads from it
+    public static final String VISIBLE_PETS_VIEW = PetSchema.VISIBLE_PETS_VIEW;
+
+    //Random id of a pet shared by every device it is synced to, as each one has its own _IDs
+    public static final String COLUMN_SYNC_ID = PetSyncProtocol.COLUMN_SYNC_ID;
+
+    //Changes of the pets waiting to be pushed by PetSyncEngine, written by triggers
+    public static final String OUTBOX_TABLE_NAME = PetSyncProtocol.OUTBOX_TABLE_NAME;
+    public static final String COLUMN_PET_ID = PetSyncProtocol.COLUMN_PET_ID;
+    public static final String COLUMN_OPERATION = PetSyncProtocol.COLUMN_OPERATION;
+
+    //Single row table with the sync id of this device, the version of the last changes pulled
+    //from the sync server, whether pulled changes are being applied, which turns the outbox
+    //triggers off, and whether a sync was ever asked for, before which they are off too
+    public static final String SYNC_TABLE_NAME = PetSyncProtocol.SYNC_TABLE_NAME;
+    public static final String COLUMN_DEVICE_ID = PetSyncProtocol.COLUMN_DEVICE_ID;
+    public static final String COLUMN_REMOTE_VERSION = PetSyncProtocol.COLUMN_REMOTE_VERSION;
+    public static final String COLUMN_APPLYING = PetSyncProtocol.COLUMN_APPLYING;
+    public static final String COLUMN_OUTBOX_ENABLED = PetSyncProtocol.COLUMN_OUTBOX_ENABLED;
+
+    //The schema and its migrations are in PetSchema, shared with the benchmarks
+    public static final int DATABASE_VERSION = PetSchema.DATABASE_VERSION;
     public static final String DATABASE_NAME ="selther.db";
 
+    /**
+     * Creates a helper for the pets database, opened in write-ahead logging mode. Readers keep
+     * reading the last committed data while a write transaction is running instead of waiting
+     * for it, and the framework keeps a pool of read connections for them.
+     */
     public PetDbHelper(Context context){
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // A new database gives the free pages of removed rows back in small steps, see
+        // PetCompactor. Auto vacuum can only be turned on before any table is created, and
+        // the framework has already created android_metadata, so the almost empty database
+        // is rebuilt once. Before Jelly Bean onConfigure isn't called and it stays off.
+        if (db.getVersion() == 0 && !db.isReadOnly()) {
+            db.execSQL(PetSchema.SQL_AUTO_VACUUM_INCREMENTAL);
+            db.execSQL(PetSchema.SQL_VACUUM);
+        }
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (db.isReadOnly()) {
+            return;
+        }
+        // Before Jelly Bean the helper can't open the database in WAL mode itself
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            db.enableWriteAheadLogging();
+        }
+        // With WAL, NORMAL only syncs at checkpoints and still can't corrupt the database,
+        // so a commit no longer waits for an fsync
+        db.execSQL(PetSchema.SQL_SYNCHRONOUS_NORMAL);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        db.execSQL(SQL_CREATE_ENTRIES);
+        // A new database starts at version 1 and goes through every migration, so new and
+        // upgraded databases always end up with the same schema
+        db.execSQL(PetSchema.SQL_CREATE_ENTRIES);
+        migrate(db, 1, DATABASE_VERSION);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
-        db.execSQL(SQL_DELETE_ENTRIES);
-        onCreate(db);
+        // Apply the migrations between both versions, keeping the stored pets
+        migrate(db, oldVersion, newVersion);
+    }
+
+    /**
+     * Runs the migrations that take the database from {@code fromVersion} to {@code toVersion}.
+     * SQLiteOpenHelper calls onCreate and onUpgrade inside a transaction, so a failing
+     * migration leaves the database at its previous version.
+     */
+    private static void migrate(SQLiteDatabase db, int fromVersion, int toVersion) {
+        for (int version = fromVersion; version < toVersion; version++) {
+            for (String statement : PetSchema.getMigration(version)) {
+                db.execSQL(statement);
+            }
+        }
     }
 }
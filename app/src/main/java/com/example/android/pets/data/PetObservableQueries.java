@@ -0,0 +1,475 @@
+package com.example.android.pets.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.AbstractCursor;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Queries of {@link PetProvider} that are run again whenever their uri is notified, and whose
+ * results are delivered to every subscriber on the executor it chose. Subscriptions to the same
+ * uri, projection, selection and sort order share one query: the screens watching the same
+ * pets cost a single query, whatever their number.
+ * <p>
+ * A burst of notifications, such as the writes of an import, is debounced into one query that
+ * runs {@link #DEBOUNCE_MILLIS} after the last of them, or {@link #MAX_DEBOUNCE_MILLIS} after
+ * the first one at the latest. Queries run one at a time on a background thread.
+ * <p>
+ * The rows of a result are read once into memory and every subscriber gets its own cursor over
+ * them, with a position of its own. These cursors hold no database resources, so the shared
+ * queries suit the small results of screens such as the editor. The paged catalog keeps its
+ * own loader, which queries again only the page of a changed pet.
+ */
+public class PetObservableQueries {
+
+    private static final String LOG_TAG = PetObservableQueries.class.getSimpleName();
+
+    /** Quiet time after a notification before the query runs again */
+    public static final long DEBOUNCE_MILLIS = 100;
+
+    /** Longest time a query waits for a burst of notifications to end */
+    public static final long MAX_DEBOUNCE_MILLIS = 500;
+
+    /**
+     * Receives the results of a subscription on the executor given to
+     * {@link #subscribe(Uri, String[], String, String[], String, Executor, Listener)}.
+     */
+    public interface Listener {
+
+        /**
+         * Called with the first result and after every change to the uri. The cursor holds no
+         * database resources and is not shared with other subscribers.
+         */
+        void onResult(Cursor cursor);
+
+        /**
+         * Called when the provider failed the query. The subscription stays active and
+         * queries again after the next change.
+         */
+        void onError(RuntimeException e);
+    }
+
+    /** Runs the listeners on the main thread */
+    public static final Executor MAIN_THREAD = new Executor() {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            mHandler.post(command);
+        }
+    };
+
+    private static PetObservableQueries sInstance;
+
+    private final ContentResolver mContentResolver;
+
+    /** Observes the uris and runs the queries, one at a time */
+    private final Handler mHandler;
+
+    /** The shared queries with at least one subscriber, by what they query */
+    private final Map<Key, SharedQuery> mQueries = new HashMap<>();
+
+    private PetObservableQueries(ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+        HandlerThread thread = new HandlerThread(LOG_TAG);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    public static synchronized PetObservableQueries getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PetObservableQueries(
+                    context.getApplicationContext().getContentResolver());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Subscribes the listener to the results of the query, run like
+     * ContentResolver.query(). The listener is called on the executor, first with the current
+     * result and then after every change to the uri or any uri below it, until
+     * {@link Subscription#unsubscribe()} is called.
+     */
+    public Subscription subscribe(Uri uri, String[] projection, String selection,
+                                  String[] selectionArgs, String sortOrder, Executor executor,
+                                  Listener listener) {
+        Key key = new Key(uri, projection, selection, selectionArgs, sortOrder);
+        Subscription subscription;
+        synchronized (mQueries) {
+            SharedQuery query = mQueries.get(key);
+            if (query == null) {
+                query = new SharedQuery(key);
+                mQueries.put(key, query);
+                query.start();
+            }
+            subscription = new Subscription(query, executor, listener);
+            query.add(subscription);
+        }
+        return subscription;
+    }
+
+    /**
+     * Returns the number of queries shared by the current subscriptions.
+     */
+    public int getSharedQueryCount() {
+        synchronized (mQueries) {
+            return mQueries.size();
+        }
+    }
+
+    /**
+     * A listener subscribed to a query. Unsubscribe it when its screen stops.
+     */
+    public final class Subscription {
+
+        private final SharedQuery mQuery;
+        private final Executor mExecutor;
+        private final Listener mListener;
+
+        /** Cleared by unsubscribe(), no result is delivered afterwards */
+        private volatile boolean mSubscribed = true;
+
+        private Subscription(SharedQuery query, Executor executor, Listener listener) {
+            mQuery = query;
+            mExecutor = executor;
+            mListener = listener;
+        }
+
+        /**
+         * Stops the results. Once called from the thread of the executor, the listener is no
+         * longer called. The shared query stops with its last subscription.
+         */
+        public void unsubscribe() {
+            if (!mSubscribed) {
+                return;
+            }
+            mSubscribed = false;
+            synchronized (mQueries) {
+                if (mQuery.remove(this)) {
+                    mQueries.remove(mQuery.mKey);
+                    mQuery.stop();
+                }
+            }
+        }
+
+        private void deliver(final Rows rows, final RuntimeException error) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mSubscribed) {
+                        return;
+                    }
+                    if (rows != null) {
+                        mListener.onResult(new RowsCursor(rows));
+                    } else {
+                        mListener.onError(error);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * A query and its subscribers. Its result is kept so a new subscriber gets it at once.
+     * Guarded by mQueries, except for the observer and the query that run on mHandler.
+     */
+    private class SharedQuery implements Runnable {
+
+        private final Key mKey;
+        private final List<Subscription> mSubscriptions = new ArrayList<>();
+
+        /** The last result, null until the first query is done */
+        private Rows mRows;
+        private boolean mStopped;
+
+        /** SystemClock.uptimeMillis() of the first notification not queried yet, or 0 */
+        private long mFirstChangeTime;
+
+        private final ContentObserver mObserver = new ContentObserver(mHandler) {
+            @Override
+            public boolean deliverSelfNotifications() {
+                return true;
+            }
+
+            @Override
+            public void onChange(boolean selfChange) {
+                onUriChanged();
+            }
+        };
+
+        SharedQuery(Key key) {
+            mKey = key;
+        }
+
+        void start() {
+            mContentResolver.registerContentObserver(mKey.mUri, true, mObserver);
+            mHandler.post(this);
+        }
+
+        void stop() {
+            mStopped = true;
+            mHandler.removeCallbacks(this);
+            mContentResolver.unregisterContentObserver(mObserver);
+        }
+
+        void add(Subscription subscription) {
+            mSubscriptions.add(subscription);
+            if (mRows != null) {
+                subscription.deliver(mRows, null);
+            }
+        }
+
+        /**
+         * Removes the subscription and returns whether it was the last one.
+         */
+        boolean remove(Subscription subscription) {
+            mSubscriptions.remove(subscription);
+            return mSubscriptions.isEmpty();
+        }
+
+        /**
+         * Runs the query after the debounce time, on mHandler.
+         */
+        private void onUriChanged() {
+            long now = SystemClock.uptimeMillis();
+            if (mFirstChangeTime == 0) {
+                mFirstChangeTime = now;
+            }
+            mHandler.removeCallbacks(this);
+            long delay = Math.min(DEBOUNCE_MILLIS, mFirstChangeTime + MAX_DEBOUNCE_MILLIS - now);
+            mHandler.postDelayed(this, Math.max(0, delay));
+        }
+
+        @Override
+        public void run() {
+            mFirstChangeTime = 0;
+            Rows rows = null;
+            RuntimeException error = null;
+            try {
+                Cursor cursor = mContentResolver.query(mKey.mUri, mKey.mProjection,
+                        mKey.mSelection, mKey.mSelectionArgs, mKey.mSortOrder);
+                if (cursor == null) {
+                    throw new IllegalStateException("Failed to query " + mKey.mUri);
+                }
+                try {
+                    rows = Rows.read(cursor);
+                } finally {
+                    cursor.close();
+                }
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Failed to query " + mKey.mUri, e);
+                error = e;
+            }
+
+            synchronized (mQueries) {
+                if (mStopped) {
+                    return;
+                }
+                if (rows != null) {
+                    mRows = rows;
+                }
+                for (Subscription subscription : mSubscriptions) {
+                    subscription.deliver(rows, error);
+                }
+            }
+        }
+    }
+
+    /**
+     * What a shared query queries. Two subscriptions share a query when their keys are equal.
+     */
+    private static final class Key {
+
+        private final Uri mUri;
+        private final String[] mProjection;
+        private final String mSelection;
+        private final String[] mSelectionArgs;
+        private final String mSortOrder;
+
+        Key(Uri uri, String[] projection, String selection, String[] selectionArgs,
+            String sortOrder) {
+            mUri = uri;
+            mProjection = projection == null ? null : projection.clone();
+            mSelection = selection;
+            mSelectionArgs = selectionArgs == null ? null : selectionArgs.clone();
+            mSortOrder = sortOrder;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mUri.equals(other.mUri) && Arrays.equals(mProjection, other.mProjection) &&
+                    equals(mSelection, other.mSelection) &&
+                    Arrays.equals(mSelectionArgs, other.mSelectionArgs) &&
+                    equals(mSortOrder, other.mSortOrder);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mUri.hashCode();
+            result = 31 * result + Arrays.hashCode(mProjection);
+            result = 31 * result + (mSelection == null ? 0 : mSelection.hashCode());
+            result = 31 * result + Arrays.hashCode(mSelectionArgs);
+            result = 31 * result + (mSortOrder == null ? 0 : mSortOrder.hashCode());
+            return result;
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * The rows of a result, read once and shared by the cursors of every subscriber. Each value
+     * is a Long, a Double, a String, a byte[] or null, as SQLite stored it.
+     */
+    private static final class Rows {
+
+        final String[] mColumnNames;
+        final Object[][] mValues;
+
+        private Rows(String[] columnNames, Object[][] values) {
+            mColumnNames = columnNames;
+            mValues = values;
+        }
+
+        static Rows read(Cursor cursor) {
+            String[] columnNames = cursor.getColumnNames();
+            Object[][] values = new Object[cursor.getCount()][];
+            int row = 0;
+            while (row < values.length && cursor.moveToNext()) {
+                Object[] rowValues = new Object[columnNames.length];
+                for (int i = 0; i < columnNames.length; i++) {
+                    switch (cursor.getType(i)) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            rowValues[i] = cursor.getLong(i);
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            rowValues[i] = cursor.getDouble(i);
+                            break;
+                        case Cursor.FIELD_TYPE_STRING:
+                            rowValues[i] = cursor.getString(i);
+                            break;
+                        case Cursor.FIELD_TYPE_BLOB:
+                            rowValues[i] = cursor.getBlob(i);
+                            break;
+                        default:
+                            rowValues[i] = null;
+                            break;
+                    }
+                }
+                values[row++] = rowValues;
+            }
+            return new Rows(columnNames, values);
+        }
+    }
+
+    /**
+     * A subscriber's cursor over shared {@link Rows}.
+     */
+    private static final class RowsCursor extends AbstractCursor {
+
+        private final Rows mRows;
+
+        RowsCursor(Rows rows) {
+            mRows = rows;
+        }
+
+        @Override
+        public int getCount() {
+            return mRows.mValues.length;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mRows.mColumnNames;
+        }
+
+        @Override
+        public int getType(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return FIELD_TYPE_NULL;
+            } else if (value instanceof Long) {
+                return FIELD_TYPE_INTEGER;
+            } else if (value instanceof Double) {
+                return FIELD_TYPE_FLOAT;
+            } else if (value instanceof byte[]) {
+                return FIELD_TYPE_BLOB;
+            }
+            return FIELD_TYPE_STRING;
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = get(column);
+            return value == null || value instanceof byte[] ? null : value.toString();
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object value = get(column);
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            return value instanceof String ? Long.parseLong((String) value) : 0;
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object value = get(column);
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            return value instanceof String ? Double.parseDouble((String) value) : 0;
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            Object value = get(column);
+            return value instanceof byte[] ? (byte[]) value : null;
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return get(column) == null;
+        }
+
+        private Object get(int column) {
+            checkPosition();
+            return mRows.mValues[getPosition()][column];
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.android.pets.data;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The photos of the pets. The original of every photo is kept as a file of its own and served
+ * by {@link PetProvider}, while a thumbnail scaled down once when the photo is saved goes into
+ * a {@link PetThumbnailPack}. Decoded thumbnails are kept in a cache sized from the memory
+ * class of the device, so scrolling back over the list doesn't decode them again.
+ * <p>
+ * Thumbnails are loaded with {@link #loadThumbnail(long)} on a background thread, the main
+ * thread only takes them from the cache with {@link #peekThumbnail(long)}.
+ */
+public final class PetPhotoStore {
+
+    private static final String LOG_TAG = PetPhotoStore.class.getSimpleName();
+
+    /** Size in pixels of the longest side of a thumbnail */
+    private static final int THUMBNAIL_SIZE = 192;
+
+    private static final int THUMBNAIL_QUALITY = 85;
+
+    /** Part of the memory class of the device given to the decoded thumbnails */
+    private static final int CACHE_MEMORY_DIVISOR = 8;
+
+    private static final String PHOTOS_DIRECTORY = "photos";
+    private static final String THUMBNAIL_PACK_NAME = "thumbnails.pack";
+
+    private static PetPhotoStore sInstance;
+
+    private final File mDirectory;
+    private PetThumbnailPack mThumbnails;
+
+    /** Decoded thumbnails by the _ID of their pet */
+    private final LruCache<Long, Bitmap> mBitmapCache;
+
+    private PetPhotoStore(Context context) {
+        mDirectory = new File(context.getFilesDir(), PHOTOS_DIRECTORY);
+
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int cacheBytes = activityManager.getMemoryClass() * 1024 * 1024 / CACHE_MEMORY_DIVISOR;
+        mBitmapCache = new LruCache<Long, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(Long id, Bitmap bitmap) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        };
+    }
+
+    public static synchronized PetPhotoStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PetPhotoStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the thumbnail of the pet if it is in the cache, or null. Never reads the disk,
+     * so it can be called from the main thread.
+     */
+    public Bitmap peekThumbnail(long id) {
+        return mBitmapCache.get(id);
+    }
+
+    /**
+     * Returns the thumbnail of the pet, decoding it from the thumbnail pack if it isn't in the
+     * cache, or null if the pet has no photo. Reads the disk, so it must not be called from the
+     * main thread.
+     */
+    public Bitmap loadThumbnail(long id) {
+        Bitmap bitmap = mBitmapCache.get(id);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        try {
+            byte[] thumbnail = getThumbnails().read(id);
+            if (thumbnail == null) {
+                return null;
+            }
+            bitmap = BitmapFactory.decodeByteArray(thumbnail, 0, thumbnail.length);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to read the thumbnail of pet " + id, e);
+            return null;
+        }
+        if (bitmap != null) {
+            mBitmapCache.put(id, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns the file holding the original photo of the pet, which may not exist.
+     */
+    File getPhotoFile(long id) {
+        return new File(mDirectory, id + ".jpg");
+    }
+
+    /**
+     * Saves the photo read from {@code in} as the photo of the pet and stores its thumbnail,
+     * replacing the photo the pet had. The photo replaces the old one once it has been read
+     * whole, so a failed save leaves the old photo. Returns false if the input isn't an image.
+     */
+    boolean savePhoto(long id, InputStream in) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Failed to create " + mDirectory);
+        }
+        File photo = getPhotoFile(id);
+        File partial = new File(mDirectory, id + ".jpg.tmp");
+
+        OutputStream out = new FileOutputStream(partial);
+        try {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            out.close();
+        }
+
+        byte[] thumbnail = createThumbnail(partial);
+        if (thumbnail == null) {
+            partial.delete();
+            return false;
+        }
+        if (!partial.renameTo(photo)) {
+            partial.delete();
+            throw new IOException("Failed to save the photo of pet " + id);
+        }
+        getThumbnails().write(id, thumbnail);
+        mBitmapCache.remove(id);
+        return true;
+    }
+
+    /**
+     * Removes the photo of the pet and its thumbnail, if it has one.
+     */
+    void deletePhoto(long id) throws IOException {
+        File photo = getPhotoFile(id);
+        if (photo.exists() && !photo.delete()) {
+            throw new IOException("Failed to delete " + photo);
+        }
+        getThumbnails().remove(id);
+        mBitmapCache.remove(id);
+    }
+
+    /**
+     * Returns the thumbnail pack, opening it the first time it is needed.
+     */
+    private synchronized PetThumbnailPack getThumbnails() throws IOException {
+        if (mThumbnails == null) {
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                throw new IOException("Failed to create " + mDirectory);
+            }
+            mThumbnails = new PetThumbnailPack(new File(mDirectory, THUMBNAIL_PACK_NAME));
+        }
+        return mThumbnails;
+    }
+
+    /**
+     * Scales the photo in the file down to a thumbnail and returns it compressed, or null if
+     * the file isn't an image. The photo is decoded subsampled, so a large photo is never held
+     * in memory at full size.
+     */
+    private static byte[] createThumbnail(File photo) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(photo.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        // The largest power of two that keeps the longest side at least a thumbnail long
+        int longestSide = Math.max(options.outWidth, options.outHeight);
+        options.inSampleSize = 1;
+        while (longestSide / (options.inSampleSize * 2) >= THUMBNAIL_SIZE) {
+            options.inSampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        Bitmap sampled = BitmapFactory.decodeFile(photo.getPath(), options);
+        if (sampled == null) {
+            return null;
+        }
+
+        float scale = Math.min(1f,
+                (float) THUMBNAIL_SIZE / Math.max(sampled.getWidth(), sampled.getHeight()));
+        Bitmap thumbnail = Bitmap.createScaledBitmap(sampled,
+                Math.max(1, Math.round(sampled.getWidth() * scale)),
+                Math.max(1, Math.round(sampled.getHeight() * scale)), true);
+        if (thumbnail != sampled) {
+            sampled.recycle();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        thumbnail.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, out);
+        thumbnail.recycle();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.android.pets.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The distinct values of a text column sorted without regard to case, each with the number
+ * of pets that have it, for suggestions as the user types. The values starting with a prefix
+ * are next to each other in that order, so finding them is a binary search followed by a
+ * read of the values returned, in microseconds whatever the number of values.
+ * <p>
+ * A sorted array holds each value once, with no node per character as a trie would need. A
+ * new value moves the values after it, which takes well under a millisecond for 100,000
+ * values. A value is dropped once no pet has it.
+ * <p>
+ * It has no Android dependencies, so the benchmark module compiles it as it is. It is not
+ * thread safe, see {@link PetColumnSnapshot}.
+ */
+public final class PetPrefixIndex {
+
+    /** Sorts without regard to case, and values that differ only by case by their chars */
+    private static final Comparator<String> ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+            int result = String.CASE_INSENSITIVE_ORDER.compare(a, b);
+            return result != 0 ? result : a.compareTo(b);
+        }
+    };
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] mValues = new String[INITIAL_CAPACITY];
+    private int[] mCounts = new int[INITIAL_CAPACITY];
+    private int mSize;
+
+    /**
+     * Returns the number of distinct values.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Adds a pet with the given value, ignoring null and empty values.
+     */
+    public void add(String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        int position = Arrays.binarySearch(mValues, 0, mSize, value, ORDER);
+        if (position >= 0) {
+            mCounts[position]++;
+            return;
+        }
+
+        position = -position - 1;
+        if (mSize == mValues.length) {
+            mValues = Arrays.copyOf(mValues, mSize * 2);
+            mCounts = Arrays.copyOf(mCounts, mSize * 2);
+        }
+        System.arraycopy(mValues, position, mValues, position + 1, mSize - position);
+        System.arraycopy(mCounts, position, mCounts, position + 1, mSize - position);
+        mValues[position] = value;
+        mCounts[position] = 1;
+        mSize++;
+    }
+
+    /**
+     * Removes a pet with the given value, dropping the value if no other pet has it.
+     */
+    public void remove(String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        int position = Arrays.binarySearch(mValues, 0, mSize, value, ORDER);
+        if (position < 0 || --mCounts[position] > 0) {
+            return;
+        }
+        System.arraycopy(mValues, position + 1, mValues, position, mSize - position - 1);
+        System.arraycopy(mCounts, position + 1, mCounts, position, mSize - position - 1);
+        mValues[--mSize] = null;
+    }
+
+    /**
+     * Returns an index of the given values, one per pet, sorting them once instead of adding
+     * them one by one.
+     */
+    public static PetPrefixIndex build(List<String> values) {
+        String[] sorted = new String[values.size()];
+        int count = 0;
+        for (String value : values) {
+            if (value != null && !value.isEmpty()) {
+                sorted[count++] = value;
+            }
+        }
+        Arrays.sort(sorted, 0, count, ORDER);
+
+        PetPrefixIndex index = new PetPrefixIndex();
+        index.mValues = new String[Math.max(INITIAL_CAPACITY, count)];
+        index.mCounts = new int[index.mValues.length];
+        for (int i = 0; i < count; i++) {
+            if (index.mSize > 0 && index.mValues[index.mSize - 1].equals(sorted[i])) {
+                index.mCounts[index.mSize - 1]++;
+            } else {
+                index.mValues[index.mSize] = sorted[i];
+                index.mCounts[index.mSize++] = 1;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns at most {@code limit} values starting with the prefix regardless of case, in
+     * order. An empty prefix returns the first values.
+     */
+    public List<String> find(String prefix, int limit) {
+        List<String> values = new ArrayList<>(Math.min(limit, INITIAL_CAPACITY));
+        int position = lowerBound(prefix);
+        while (position < mSize && values.size() < limit &&
+                mValues[position].regionMatches(true, 0, prefix, 0, prefix.length())) {
+            values.add(mValues[position++]);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the position of the first value not before the prefix, regardless of case.
+     */
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (String.CASE_INSENSITIVE_ORDER.compare(mValues[middle], prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
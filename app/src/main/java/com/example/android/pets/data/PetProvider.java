@@ -1,16 +1,59 @@
 package com.example.android.pets.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
+import android.database.AbstractWindowedCursor;
 import android.database.Cursor;
+import android.database.CursorWindow;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.text.TextUtils;
 import android.util.Log;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
 import static com.example.android.pets.data.PetsContract.CONTENT_AUTHORITY;
+import static com.example.android.pets.data.PetsContract.PATH_BREED;
+import static com.example.android.pets.data.PetsContract.PATH_EXPORT;
+import static com.example.android.pets.data.PetsContract.PATH_GENDER;
+import static com.example.android.pets.data.PetsContract.PATH_IMPORT;
+import static com.example.android.pets.data.PetsContract.PATH_PAGE;
 import static com.example.android.pets.data.PetsContract.PATH_PETS;
+import static com.example.android.pets.data.PetsContract.PATH_PHOTO;
+import static com.example.android.pets.data.PetsContract.PATH_PROVIDER_STATS;
+import static com.example.android.pets.data.PetsContract.PATH_SEARCH;
+import static com.example.android.pets.data.PetsContract.PATH_STATS;
 
 /**
  * Created by robertomoreno on 26/12/17.
@@ -24,18 +67,114 @@ public class PetProvider extends ContentProvider {
     public static final String LOG_TAG = PetProvider.class.getSimpleName();
     private PetDbHelper mDbHelper;
 
+    /** Compiled statements of the most frequent operations on the pets table */
+    private PetStatements mStatements;
+
+    /** Removes the rows of the deleted pets in the background */
+    private PetCompactor mCompactor;
+
+    /** Original photos and thumbnails of the pets */
+    private PetPhotoStore mPhotoStore;
+
+    /** Pushes the local changes of the pets to the sync server and pulls the remote ones */
+    private PetSyncEngine mSyncEngine;
+
     private final static int PETS = 101;
     private final static int PET_ID = 102;
+    private final static int PETS_PAGE = 103;
+    private final static int PETS_SEARCH = 104;
+    private final static int PROVIDER_STATS = 105;
+    private final static int PETS_STATS_BREED = 106;
+    private final static int PETS_STATS_GENDER = 107;
+    private final static int PETS_EXPORT = 108;
+    private final static int PETS_IMPORT = 109;
+    private final static int PET_PHOTO = 110;
 
     private final static UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
 
+    /** Maximum number of pets kept in the row cache */
+    private final static int ROW_CACHE_SIZE = 100;
+
+    /** Charset of the exported and imported files */
+    private final static Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Recently queried pets, answering PET_ID queries without going to the database */
+    private final PetRowCache mRowCache = new PetRowCache(ROW_CACHE_SIZE);
+
+    /** Operations taking longer than this are written to the slow query log, unless changed */
+    private final static long DEFAULT_SLOW_QUERY_THRESHOLD_MS = 100;
+
+    /** Latency and row counters of every operation, read through the provider stats uri */
+    private final PetProviderStats mStats = new PetProviderStats(DEFAULT_SLOW_QUERY_THRESHOLD_MS);
+
+    /**
+     * Uris changed by the batch running on the current thread. While a batch is running the
+     * notifications are collected here and sent once the transaction has been committed.
+     */
+    private final ThreadLocal<Set<Uri>> mPendingNotifications = new ThreadLocal<>();
+
     static {
 
         sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_PETS, PETS);
         sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_PETS + "/#", PET_ID);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_PETS + "/" + PATH_PAGE, PETS_PAGE);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_PETS + "/" + PATH_SEARCH + "/*", PETS_SEARCH);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_PETS + "/" + PATH_PROVIDER_STATS, PROVIDER_STATS);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_PETS + "/" + PATH_STATS + "/" + PATH_BREED,
+                PETS_STATS_BREED);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_PETS + "/" + PATH_STATS + "/" + PATH_GENDER,
+                PETS_STATS_GENDER);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_PETS + "/" + PATH_EXPORT, PETS_EXPORT);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_PETS + "/" + PATH_IMPORT, PETS_IMPORT);
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_PETS + "/#/" + PATH_PHOTO, PET_PHOTO);
 
     }
 
+    /**
+     * Projection map of the search query. The full-text table has a name and a breed column
+     * too, so every column is taken from the view of the pets explicitly.
+     */
+    private final static Map<String, String> sSearchProjectionMap = new HashMap<>();
+
+    static {
+
+        for (String column : new String[]{
+                PetsContract.PetEntry._ID,
+                PetsContract.PetEntry.COLUMN_NAME,
+                PetsContract.PetEntry.COLUMN_BREED,
+                PetsContract.PetEntry.COLUMN_GENDER,
+                PetsContract.PetEntry.COLUMN_WEIGHT,
+                PetsContract.PetEntry.COLUMN_HAS_PHOTO}) {
+            sSearchProjectionMap.put(column,
+                    PetDbHelper.VISIBLE_PETS_VIEW + "." + column + " AS " + column);
+        }
+
+    }
+
+    /**
+     * Projection maps of the statistics queries, from the columns of the contract to the
+     * aggregates computed for every group. Without a projection every column is returned.
+     */
+    private final static Map<String, String> sBreedStatsProjectionMap =
+            buildStatsProjectionMap(PetsContract.PetEntry.COLUMN_BREED);
+    private final static Map<String, String> sGenderStatsProjectionMap =
+            buildStatsProjectionMap(PetsContract.PetEntry.COLUMN_GENDER);
+
+    private static Map<String, String> buildStatsProjectionMap(String groupColumn) {
+        String weight = PetsContract.PetEntry.COLUMN_WEIGHT;
+        Map<String, String> projectionMap = new LinkedHashMap<>();
+        projectionMap.put(groupColumn, groupColumn);
+        projectionMap.put(PetsContract.PetStatsEntry.COLUMN_COUNT,
+                "COUNT(*) AS " + PetsContract.PetStatsEntry.COLUMN_COUNT);
+        projectionMap.put(PetsContract.PetStatsEntry.COLUMN_AVG_WEIGHT,
+                "AVG(" + weight + ") AS " + PetsContract.PetStatsEntry.COLUMN_AVG_WEIGHT);
+        projectionMap.put(PetsContract.PetStatsEntry.COLUMN_MIN_WEIGHT,
+                "MIN(" + weight + ") AS " + PetsContract.PetStatsEntry.COLUMN_MIN_WEIGHT);
+        projectionMap.put(PetsContract.PetStatsEntry.COLUMN_MAX_WEIGHT,
+                "MAX(" + weight + ") AS " + PetsContract.PetStatsEntry.COLUMN_MAX_WEIGHT);
+        return projectionMap;
+    }
+
     /**
      * Initialize the provider and the database helper object.
      */
@@ -43,33 +182,94 @@ public class PetProvider extends ContentProvider {
     public boolean onCreate() {
 
         mDbHelper = new PetDbHelper(getContext());
+        mStatements = new PetStatements(mDbHelper);
+        mPhotoStore = PetPhotoStore.getInstance(getContext());
+        mCompactor = new PetCompactor(mDbHelper, mPhotoStore, mStats);
+        mSyncEngine = new PetSyncEngine(mDbHelper, mStats, new Runnable() {
+            @Override
+            public void run() {
+                // Pulled changes were written behind the back of the caches
+                mRowCache.clear();
+                mCompactor.schedule();
+                PetCatalogPrefetch.getInstance().invalidate();
+                getContext().getContentResolver().notifyChange(
+                        PetsContract.PetEntry.CONTENT_URI, null);
+            }
+        });
+
+        // The provider is created while the process starts, so open the database and query the
+        // first page of the catalog in the background while the activity is being created
+        PetCatalogPrefetch.getInstance().start(PetCursor.CATALOG_PROJECTION,
+                PetsContract.PetEntry.DEFAULT_PAGE_SIZE, new Callable<Cursor>() {
+                    @Override
+                    public Cursor call() {
+                        return query(PetsContract.PetEntry.buildPageUri(0,
+                                PetsContract.PetEntry.DEFAULT_PAGE_SIZE),
+                                PetCursor.CATALOG_PROJECTION, null, null, null);
+                    }
+                });
 
         return true;
     }
 
     /**
-     * Perform the query for the given URI. Use the given projection, selection, selection arguments, and sort order.
+     * Perform the query for the given URI. Use the given projection, selection, selection
+     * arguments, and sort order. Queries read the view of the pets, which leaves the deleted
+     * pets out. The time to build every cursor is recorded in the provider stats, and a query
+     * that takes longer than the threshold is written with its query plan to the slow query log.
      */
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        long start = System.nanoTime();
+
+        // Figure out if the URI matcher can match the URI to a specific code
+        int match = sUriMatcher.match(uri);
+        if (match == PROVIDER_STATS) {
+            // The counters themselves aren't counted
+            return mStats.toCursor();
+        }
+
         // Get readable database
         SQLiteDatabase database = mDbHelper.getReadableDatabase();
 
         // This cursor will hold the result of the query
         Cursor cursor;
 
-        // Figure out if the URI matcher can match the URI to a specific code
-        int match = sUriMatcher.match(uri);
+        // Uri the cursor watches for changes, the queried uri unless the match says otherwise
+        Uri notificationUri = uri;
+
+        // SQL run by the query, kept to explain its plan if it turns out to be slow
+        String sql = null;
+
+        // Filters and sort order given as parameters of the uri
+        PetQuery petQuery;
+
         switch (match) {
             case PETS:
-                // For the PETS code, query the pets table directly with the given
+                // For the PETS code, query the pets directly with the given
                 // projection, selection, selection arguments, and sort order. The cursor
-                // could contain multiple rows of the pets table.
-                cursor = database.query(PetsContract.PetEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                // could contain multiple rows of the pets table. The filters of the uri are
+                // added to the selection, and its sort order is used when none is given.
+                petQuery = PetQuery.fromUri(uri);
+                selection = DatabaseUtils.concatenateWhere(selection, petQuery.getSelection());
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                        petQuery.getSelectionArgs());
+                if (sortOrder == null) {
+                    sortOrder = petQuery.getOrderBy();
+                }
+
+                sql = SQLiteQueryBuilder.buildQueryString(false, PetDbHelper.VISIBLE_PETS_VIEW,
+                        projection, selection, null, null, sortOrder, null);
+                cursor = database.rawQuery(sql, selectionArgs);
                 break;
             case PET_ID:
+                // Pets that were queried recently are answered from the row cache
+                if (PetRowCache.supports(projection)) {
+                    cursor = queryCachedPet(database, ContentUris.parseId(uri), projection);
+                    break;
+                }
+
                 // For the PET_ID code, extract out the ID from the URI.
                 // For an example URI such as "content://com.example.android.pets/pets/3",
                 // the selection will be "_id=?" and the selection argument will be a
@@ -82,27 +282,214 @@ public class PetProvider extends ContentProvider {
 
                 // This will perform a query on the pets table where the _id equals 3 to return a
                 // Cursor containing that row of the table.
-                cursor = database.query(PetsContract.PetEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                sql = SQLiteQueryBuilder.buildQueryString(false, PetDbHelper.VISIBLE_PETS_VIEW,
+                        projection, selection, null, null, sortOrder, null);
+                cursor = database.rawQuery(sql, selectionArgs);
+                break;
+            case PETS_PAGE:
+                // For the PETS_PAGE code, return the rows after the row given by the after_id
+                // and after_value parameters, in the sort order of the uri and limited to the
+                // limit parameter. Seeking past the last row instead of skipping rows keeps
+                // every page a short range scan of an index, however deep the page is.
+                long afterId = getLongParameter(uri, PetsContract.QUERY_PARAM_AFTER_ID, 0);
+                long limit = getLongParameter(uri, PetsContract.QUERY_PARAM_LIMIT,
+                        PetsContract.PetEntry.DEFAULT_PAGE_SIZE);
+
+                petQuery = PetQuery.fromUri(uri);
+                selection = DatabaseUtils.concatenateWhere(selection, petQuery.getSelection());
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                        petQuery.getSelectionArgs());
+
+                // _IDs start at 1, so the first page is the one after _ID 0
+                if (afterId > 0) {
+                    String afterValue = uri.getQueryParameter(PetsContract.QUERY_PARAM_AFTER_VALUE);
+                    selection = DatabaseUtils.concatenateWhere(selection,
+                            petQuery.getKeysetSelection(afterValue));
+                    selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                            petQuery.getKeysetSelectionArgs(afterValue, afterId));
+                }
+
+                sql = SQLiteQueryBuilder.buildQueryString(false, PetDbHelper.VISIBLE_PETS_VIEW,
+                        projection, selection, null, null, petQuery.getOrderBy(),
+                        String.valueOf(limit));
+                cursor = database.rawQuery(sql, selectionArgs);
+
+                // A page changes whenever any pet changes, so watch the whole table
+                notificationUri = PetsContract.PetEntry.CONTENT_URI;
+                break;
+            case PETS_SEARCH:
+                // For the PETS_SEARCH code, look up the words of the last path segment in the
+                // full-text index instead of scanning the pets table with LIKE. The filters of
+                // the uri narrow the results, which keep their rank order.
+                petQuery = PetQuery.fromUri(uri);
+                selection = DatabaseUtils.concatenateWhere(selection, petQuery.getSelection());
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                        petQuery.getSelectionArgs());
+                sql = buildSearchQuery(uri, projection, selection);
+                cursor = database.rawQuery(sql, selectionArgs);
+
+                // Search results change whenever any pet changes, so watch the whole table
+                notificationUri = PetsContract.PetEntry.CONTENT_URI;
+                break;
+            case PETS_STATS_BREED:
+                // For the stats codes, group the pets inside SQLite and return one row per
+                // group. Grouping by breed walks the breed index instead of sorting the table.
+                sql = buildStatsQuery(PetsContract.PetEntry.COLUMN_BREED, sBreedStatsProjectionMap,
+                        projection, selection, sortOrder);
+                cursor = database.rawQuery(sql, selectionArgs);
+                notificationUri = PetsContract.PetEntry.CONTENT_URI;
+                break;
+            case PETS_STATS_GENDER:
+                // The gender and weight index holds every column this query reads
+                sql = buildStatsQuery(PetsContract.PetEntry.COLUMN_GENDER, sGenderStatsProjectionMap,
+                        projection, selection, sortOrder);
+                cursor = database.rawQuery(sql, selectionArgs);
+                notificationUri = PetsContract.PetEntry.CONTENT_URI;
                 break;
             default:
                 throw new IllegalArgumentException("Cannot query unknown URI " + uri);
         }
         //Set the notification to the content resolver to update the CursorLoader with new changes in the database
-        cursor.setNotificationUri(getContext().getContentResolver(),uri);
+        cursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
+
+        // SQLite runs the query when the cursor is first read, so only slow queries have their
+        // rows counted, which fills the first cursor window before the cursor is returned
+        long elapsedNanos = System.nanoTime() - start;
+        if (!mStats.isSlow(elapsedNanos)) {
+            mStats.record(PetProviderStats.OPERATION_QUERY, getUriPattern(match), elapsedNanos,
+                    -1, -1);
+        } else {
+            mStats.record(PetProviderStats.OPERATION_QUERY, getUriPattern(match), elapsedNanos,
+                    cursor.getCount(), getWindowRows(cursor));
+            if (sql != null) {
+                logSlowQuery(database, uri, sql, selectionArgs, elapsedNanos);
+            }
+        }
 
         return cursor;
     }
 
+    /**
+     * Return the pet with the given _ID from the row cache. On a miss the pet is read from the
+     * database with all the cached columns and added to the cache.
+     */
+    private Cursor queryCachedPet(SQLiteDatabase database, long id, String[] projection) {
+        Cursor cursor = mRowCache.get(id, projection);
+        if (cursor != null) {
+            return cursor;
+        }
+
+        // Read the generation first, a write during the query means the row may be stale
+        long generation = mRowCache.getGeneration();
+        Cursor row = database.query(PetDbHelper.VISIBLE_PETS_VIEW, PetRowCache.COLUMNS,
+                PetsContract.PetEntry._ID + "=?", new String[]{String.valueOf(id)},
+                null, null, null);
+        Object[] values = null;
+        try {
+            if (row.moveToFirst()) {
+                values = mRowCache.put(id, row, generation);
+            }
+        } finally {
+            row.close();
+        }
+        return PetRowCache.toCursor(values, projection);
+    }
+
+    /**
+     * Return the SQL of the query for the pets whose name or breed contain words starting with
+     * the words in the last path segment of the uri. Pets matching by name are ranked before pets
+     * matching only by breed, and pets with the same rank are sorted by name.
+     */
+    private static String buildSearchQuery(Uri uri, String[] projection, String selection) {
+        String[] words = uri.getLastPathSegment().split("[^\\p{L}\\p{N}]+");
+
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(PetDbHelper.VISIBLE_PETS_VIEW + " JOIN " + PetDbHelper.FTS_TABLE_NAME +
+                " ON " + PetDbHelper.VISIBLE_PETS_VIEW + "." + PetsContract.PetEntry._ID +
+                " = " + PetDbHelper.FTS_TABLE_NAME + ".docid");
+        builder.setProjectionMap(sSearchProjectionMap);
+
+        String matchQuery = buildMatchQuery(words, null);
+        String rankOrder = null;
+        if (matchQuery.isEmpty()) {
+            // Nothing to search for, so nothing matches
+            builder.appendWhere("0");
+        } else {
+            builder.appendWhere(PetDbHelper.FTS_TABLE_NAME + " MATCH ");
+            builder.appendWhereEscapeString(matchQuery);
+
+            rankOrder = "(" + PetDbHelper.VISIBLE_PETS_VIEW + "." + PetsContract.PetEntry._ID +
+                    " IN (SELECT docid FROM " + PetDbHelper.FTS_TABLE_NAME +
+                    " WHERE " + PetDbHelper.FTS_TABLE_NAME + " MATCH " +
+                    DatabaseUtils.sqlEscapeString(
+                            buildMatchQuery(words, PetsContract.PetEntry.COLUMN_NAME)) +
+                    ")) DESC, " + PetDbHelper.VISIBLE_PETS_VIEW + "." +
+                    PetsContract.PetEntry.COLUMN_NAME;
+        }
+
+        String limit = null;
+        if (uri.getQueryParameter(PetsContract.QUERY_PARAM_LIMIT) != null) {
+            limit = String.valueOf(getLongParameter(uri, PetsContract.QUERY_PARAM_LIMIT, 0));
+        }
+
+        return builder.buildQuery(projection, selection, null, null, rankOrder, limit);
+    }
+
+    /**
+     * Return the SQL of the query grouping the pets matching the selection by the given column,
+     * with the aggregates of the projection map. Groups are sorted by the grouping column unless
+     * a sort order is given.
+     */
+    private static String buildStatsQuery(String groupColumn, Map<String, String> projectionMap,
+                                          String[] projection, String selection, String sortOrder) {
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(PetDbHelper.VISIBLE_PETS_VIEW);
+        builder.setProjectionMap(projectionMap);
+
+        if (sortOrder == null) {
+            sortOrder = groupColumn;
+        }
+        return builder.buildQuery(projection, selection, groupColumn, null, sortOrder, null);
+    }
+
+    /**
+     * Builds a full-text MATCH expression requiring every word as a prefix, limited to the given
+     * column when it isn't null. Returns an empty string when there are no words.
+     */
+    private static String buildMatchQuery(String[] words, String column) {
+        StringBuilder matchQuery = new StringBuilder();
+        for (String word : words) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            // Upper case operators would be read as part of the query syntax
+            if (word.equals("OR") || word.equals("AND") || word.equals("NOT") || word.equals("NEAR")) {
+                word = word.toLowerCase(Locale.US);
+            }
+            if (matchQuery.length() > 0) {
+                matchQuery.append(' ');
+            }
+            if (column != null) {
+                matchQuery.append(column).append(':');
+            }
+            matchQuery.append(word).append('*');
+        }
+        return matchQuery.toString();
+    }
+
     /**
      * Insert new data into the provider with the given ContentValues.
      */
     @Override
     public Uri insert(Uri uri, ContentValues contentValues) {
+        long start = System.nanoTime();
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case PETS:
-                return insertPet(uri, contentValues);
+                Uri newUri = insertPet(uri, contentValues);
+                recordWrite(PetProviderStats.OPERATION_INSERT, match, uri, null,
+                        newUri == null ? 0 : 1, start);
+                return newUri;
             default:
                 throw new IllegalArgumentException("Insertion is not supported for " + uri);
         }
@@ -113,44 +500,128 @@ public class PetProvider extends ContentProvider {
      * for that specific row in the database.
      */
     private Uri insertPet(Uri uri, ContentValues values) {
-        //Checks if name value is not null
-        String name = values.getAsString(PetsContract.PetEntry.COLUMN_NAME);
-        if (name == null) {
-            throw new IllegalArgumentException("Pet requires a name");
+        PetValidator.validate(values, true);
+
+        long newRowId = insertValues(values);
+
+        // If the ID is -1, then the insertion failed. Log an error and return null.
+        if (newRowId == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
         }
-        //Checks breed value is not null
-        String breed = values.getAsString(PetsContract.PetEntry.COLUMN_BREED);
-        if (breed == null) {
-            throw new IllegalArgumentException("Pet requires a breed");
+
+        // Once we know the ID of the new row in the table,
+        // get the new URI with the ID appended to the end of it
+        Uri newUri = ContentUris.withAppendedId(PetsContract.PetEntry.CONTENT_URI, newRowId);
+
+        //notify the ContentResolver about the new row only, so loaders can update just that pet
+        notifyChange(newUri);
+
+        return newUri;
+    }
+
+    /**
+     * Inserts a row with the given values, already validated, with the compiled insert
+     * statement when the values hold a whole pet. Returns the _ID of the new row, or -1 on
+     * failure.
+     */
+    private long insertValues(ContentValues values) {
+        Pet pet = Pet.fromContentValues(values);
+        if (pet != null) {
+            return mStatements.insert(pet);
+        }
+        return mDbHelper.getWritableDatabase().insert(PetsContract.PetEntry.TABLE_NAME, null, values);
+    }
+
+    /**
+     * Insert all the given pets in a single transaction. Every row is validated with the same
+     * rules as {@link #insertPet(Uri, ContentValues)} before anything is written, and the
+     * ContentResolver is notified once after the transaction has been committed.
+     * Return the number of rows inserted.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        long start = System.nanoTime();
+        final int match = sUriMatcher.match(uri);
+        switch (match) {
+            case PETS:
+                break;
+            default:
+                throw new IllegalArgumentException("Insertion is not supported for " + uri);
         }
-        //Checks if introduced gender is one of the three validated
-        /*String gender = values.getAsString(PetsContract.PetEntry.COLUMN_GENDER);
-        if (gender != "Female" || gender != "Male" || gender != "Unknown" || gender == null) {
 
-            throw new IllegalArgumentException("Must enter a valid gender option");
-        }*/
-        //Checks if introduced weight is positive integer number
-        Integer weight = values.getAsInteger(PetsContract.PetEntry.COLUMN_WEIGHT);
-        if (weight < 0 && weight != null) {
-            throw new IllegalArgumentException("Pet requires a positive weight");
+        //Checks every row first so an invalid pet doesn't leave half of the batch written
+        for (ContentValues value : values) {
+            PetValidator.validate(value, true);
         }
 
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        long newRowId = database.insert(PetsContract.PetEntry.TABLE_NAME, null, values);
+        int rowsInserted = 0;
+        database.beginTransactionNonExclusive();
+        try {
+            for (ContentValues value : values) {
+                long newRowId = insertValues(value);
+                if (newRowId == -1) {
+                    Log.e(LOG_TAG, "Failed to insert row for " + uri);
+                } else {
+                    rowsInserted++;
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
 
-        // If the ID is -1, then the insertion failed. Log an error and return null.
-        if (newRowId == -1) {
-            Log.e(LOG_TAG, "Failed to insert row for " + uri);
-            return null;
+        //notify the ContentResolver once for the whole batch
+        if (rowsInserted > 0) {
+            notifyChange(uri);
         }
 
-        //notify the ContentResolver to update the the loader with the new info in the database
-        getContext().getContentResolver().notifyChange(uri,null);
+        recordWrite(PetProviderStats.OPERATION_BULK_INSERT, match, uri, null, rowsInserted, start);
+        return rowsInserted;
+    }
 
-        // Once we know the ID of the new row in the table,
-        // return the new URI with the ID appended to the end of it
-        return ContentUris.withAppendedId(uri, newRowId);
+    /**
+     * Apply the given operations in a single transaction. If any operation fails the whole batch
+     * is rolled back. The change notifications of the operations are sent once the transaction
+     * has been committed.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        Set<Uri> changedUris = new HashSet<>();
+        ContentProviderResult[] results;
+
+        mPendingNotifications.set(changedUris);
+        database.beginTransactionNonExclusive();
+        try {
+            results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            mPendingNotifications.remove();
+        }
+
+        // Pets read while the batch was running may have been cached before it was committed,
+        // and pets it deleted can only be compacted now that the batch has been committed
+        if (!changedUris.isEmpty()) {
+            mRowCache.clear();
+            mCompactor.schedule();
+            mSyncEngine.schedulePush();
+            PetCatalogPrefetch.getInstance().invalidate();
+        }
+
+        //a single changed uri is notified as it is, otherwise notify the whole table once
+        if (changedUris.size() == 1) {
+            getContext().getContentResolver().notifyChange(changedUris.iterator().next(), null);
+        } else if (changedUris.size() > 1) {
+            getContext().getContentResolver().notifyChange(PetsContract.PetEntry.CONTENT_URI, null);
+        }
+
+        return results;
     }
 
     /**
@@ -159,105 +630,487 @@ public class PetProvider extends ContentProvider {
     @Override
     public int update(Uri uri, ContentValues contentValues, String selection,
                       String[] selectionArgs) {
+        long start = System.nanoTime();
         final int match = sUriMatcher.match(uri);
+        int rowsUpdated;
         switch (match) {
             case PETS:
-                return updatePet(uri, contentValues, selection, selectionArgs);
+                rowsUpdated = updatePet(uri, contentValues, selection, selectionArgs);
+                break;
             case PET_ID:
-                // For the PET_ID code, extract out the ID from the URI,
-                // so we know which row to update. Selection will be "_id=?" and selection
-                // arguments will be a String array containing the actual ID.
-                selection = PetsContract.PetEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                return updatePet(uri, contentValues, selection, selectionArgs);
+                // For the PET_ID code, the row to update is the ID in the URI. updatePet
+                // takes it from there, so the selection given is not used.
+                rowsUpdated = updatePet(uri, contentValues, null, null);
+                break;
             default:
                 throw new IllegalArgumentException("Update is not supported for " + uri);
         }
+
+        recordWrite(PetProviderStats.OPERATION_UPDATE, match, uri, selection, rowsUpdated, start);
+        return rowsUpdated;
     }
 
     /**
      * Update pets in the database with the given content values. Apply the changes to the rows
-     * specified in the selection and selection arguments (which could be 0 or 1 or more pets).
+     * specified in the selection and selection arguments (which could be 0 or 1 or more pets),
+     * or to the pet of the uri for a single pet uri. Deleted pets are never updated.
      * Return the number of rows that were successfully updated.
      */
     private int updatePet(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
 
-        if (values.containsKey(PetsContract.PetEntry.COLUMN_NAME)) {
-            //Checks if name value is not null
-            String name = values.getAsString(PetsContract.PetEntry.COLUMN_NAME);
-            if (name == null) {
-                throw new IllegalArgumentException("Pet requires a name");
-            }
-        }
-
-        if (values.containsKey(PetsContract.PetEntry.COLUMN_BREED)) {
-            //Checks breed value is not null
-            String breed = values.getAsString(PetsContract.PetEntry.COLUMN_BREED);
-            if (breed == null) {
-                throw new IllegalArgumentException("Pet requires a breed");
-            }
-        }
-
-        if (values.containsKey(PetsContract.PetEntry.COLUMN_WEIGHT)) {
-            //Checks if introduced weight is positive integer number
-            Integer weight = values.getAsInteger(PetsContract.PetEntry.COLUMN_WEIGHT);
-            if (weight < 0 && weight != null) {
-                throw new IllegalArgumentException("Pet requires a positive weight");
-            }
-        }
+        PetValidator.validate(values, false);
 
         // If there are no values to update, then don't try to update the database
         if (values.size() == 0) {
             return 0;
         }
 
-        SQLiteDatabase database = mDbHelper.getWritableDatabase();
-
-        int newUpdateId = database.update(PetsContract.PetEntry.TABLE_NAME, values, selection, selectionArgs);
-        // If the ID is -1, then the insertion failed. Log an error and return null.
-        if (newUpdateId == -1) {
-            Log.e(LOG_TAG, "Failed to insert row for " + uri);
-            return 0;
+        int rowsUpdated;
+        Pet pet = sUriMatcher.match(uri) == PET_ID ? Pet.fromContentValues(values) : null;
+        if (pet != null) {
+            // Saving the editor sets every column of a single pet, which the compiled
+            // statement does without building new SQL
+            rowsUpdated = mStatements.updateById(ContentUris.parseId(uri), pet);
+        } else {
+            if (sUriMatcher.match(uri) == PET_ID) {
+                // Selection will be "_id=?" and selection arguments will be a String array
+                // containing the actual ID.
+                selection = PetsContract.PetEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+            }
+            selection = DatabaseUtils.concatenateWhere(selection, PetDbHelper.SELECTION_NOT_DELETED);
+            SQLiteDatabase database = mDbHelper.getWritableDatabase();
+            rowsUpdated = database.update(PetsContract.PetEntry.TABLE_NAME, values, selection, selectionArgs);
         }
 
+        invalidateCachedPets(uri);
 
-        //notify the ContentResolver to update the the loader with the new info in the database
-        getContext().getContentResolver().notifyChange(uri,null);
+        //notify the ContentResolver about the updated uri, a single pet for PET_ID
+        if (rowsUpdated > 0) {
+            notifyChange(uri);
+        }
 
-        return newUpdateId;
+        return rowsUpdated;
     }
 
 
     /**
-     * Delete the data at the given selection and selection arguments.
+     * Delete the data at the given selection and selection arguments. Pets are only marked as
+     * deleted, which keeps the write short however many pets go, and their rows are removed
+     * later by the compactor in the background.
      */
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
-        // Get writeable database
-        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        long start = System.nanoTime();
 
+        int rowsDeleted;
         int match = sUriMatcher.match(uri);
         switch (match) {
             case PETS:
+                if (TextUtils.isEmpty(selection)) {
+                    // Deleting every pet only moves the purge watermark
+                    rowsDeleted = mStatements.deleteAll();
+                } else {
+                    // Mark the pets that match the selection and selection args
+                    SQLiteDatabase database = mDbHelper.getWritableDatabase();
+                    ContentValues deleted = new ContentValues();
+                    deleted.put(PetDbHelper.COLUMN_DELETED, 1);
+                    rowsDeleted = database.update(PetsContract.PetEntry.TABLE_NAME, deleted,
+                            DatabaseUtils.concatenateWhere(selection, PetDbHelper.SELECTION_NOT_DELETED),
+                            selectionArgs);
+                }
+                invalidateCachedPets(uri);
 
-                //notify the ContentResolver to update the the loader with the new info in the database
-                getContext().getContentResolver().notifyChange(uri,null);
-                // Delete all rows that match the selection and selection args
-                return database.delete(PetsContract.PetEntry.TABLE_NAME, selection, selectionArgs);
+                //notify the ContentResolver once the rows are gone
+                if (rowsDeleted > 0) {
+                    notifyChange(uri);
+                }
+                break;
             case PET_ID:
+                // Delete a single pet given by the ID in the URI, with the compiled statement
+                rowsDeleted = mStatements.deleteById(ContentUris.parseId(uri));
+                invalidateCachedPets(uri);
 
-                //notify the ContentResolver to update the the loader with the new info in the database
+                //notify the ContentResolver about that pet only, once it is gone
+                if (rowsDeleted > 0) {
+                    notifyChange(uri);
+                }
+                break;
+            case PET_PHOTO:
+                // Remove the photo of the pet, the pet itself stays
+                long id = getPhotoPetId(uri);
+                try {
+                    mPhotoStore.deletePhoto(id);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to delete the photo of pet " + id, e);
+                }
+                rowsDeleted = setHasPhoto(id, false);
+                break;
+            default:
+                throw new IllegalArgumentException("Deletion is not supported for " + uri);
+        }
 
-                /*getContext().getContentResolver().notifyChange(uri,null);*/
+        // A running batch schedules the compaction once it has been committed
+        if (match != PET_PHOTO && rowsDeleted > 0 && mPendingNotifications.get() == null) {
+            mCompactor.schedule();
+        }
 
-                // Delete a single row given by the ID in the URI
-                selection = PetsContract.PetEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                return database.delete(PetsContract.PetEntry.TABLE_NAME, selection, selectionArgs);
+        recordWrite(PetProviderStats.OPERATION_DELETE, match, uri, selection, rowsDeleted, start);
+        return rowsDeleted;
+    }
+
+    /**
+     * Opens the export, import and photo uris. An export is opened for reading and streams every
+     * pet from the database as it is read, an import is opened for writing and inserts the pets
+     * as they are written, until the caller closes its end. Either way the data goes through a
+     * pipe served by a background thread, so nothing is buffered whole in memory. A photo is
+     * opened for reading as its file, or for writing through a pipe like an import.
+     */
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        final int match = sUriMatcher.match(uri);
+        switch (match) {
+            case PETS_EXPORT:
+                if (!"r".equals(mode)) {
+                    throw new FileNotFoundException("Export can only be opened for reading " + uri);
+                }
+                return openPipeHelper(uri, getType(uri), null, getFormat(uri), mExportWriter);
+            case PETS_IMPORT:
+                if (!mode.startsWith("w")) {
+                    throw new FileNotFoundException("Import can only be opened for writing " + uri);
+                }
+                ParcelFileDescriptor[] pipe;
+                try {
+                    pipe = ParcelFileDescriptor.createPipe();
+                } catch (IOException e) {
+                    throw new FileNotFoundException("Failed to create pipe for " + uri);
+                }
+                importPets(uri, getFormat(uri), pipe[0]);
+                return pipe[1];
+            case PET_PHOTO:
+                long id = getPhotoPetId(uri);
+                if (DatabaseUtils.queryNumEntries(mDbHelper.getReadableDatabase(),
+                        PetDbHelper.VISIBLE_PETS_VIEW, PetsContract.PetEntry._ID + "=?",
+                        new String[]{String.valueOf(id)}) == 0) {
+                    throw new FileNotFoundException("No pet for " + uri);
+                }
+                if ("r".equals(mode)) {
+                    File photo = mPhotoStore.getPhotoFile(id);
+                    if (!photo.exists()) {
+                        throw new FileNotFoundException("No photo for " + uri);
+                    }
+                    return ParcelFileDescriptor.open(photo, ParcelFileDescriptor.MODE_READ_ONLY);
+                }
+                if (!mode.startsWith("w")) {
+                    throw new FileNotFoundException("Photo can only be read or written " + uri);
+                }
+                ParcelFileDescriptor[] photoPipe;
+                try {
+                    photoPipe = ParcelFileDescriptor.createPipe();
+                } catch (IOException e) {
+                    throw new FileNotFoundException("Failed to create pipe for " + uri);
+                }
+                savePhoto(uri, id, photoPipe[0]);
+                return photoPipe[1];
             default:
-                throw new IllegalArgumentException("Deletion is not supported for " + uri);
+                throw new FileNotFoundException("Cannot open unknown URI " + uri);
+        }
+    }
+
+    /** Writes the export of the pets to the pipe opened by {@link #openFile(Uri, String)} */
+    private final PipeDataWriter<String> mExportWriter = new PipeDataWriter<String>() {
+        @Override
+        public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType,
+                                    Bundle opts, String format) {
+            long start = System.nanoTime();
+            // openPipeHelper closes the pipe once this returns, the writer only has to be flushed
+            Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(output.getFileDescriptor()), UTF_8));
+            try {
+                int rows = PetTransfer.exportPets(mDbHelper.getReadableDatabase(), format, writer);
+                // A transfer takes as long as its file, so it is never written to the slow query log
+                mStats.record(PetProviderStats.OPERATION_EXPORT, getUriPattern(PETS_EXPORT),
+                        System.nanoTime() - start, rows, -1);
+            } catch (IOException | RuntimeException e) {
+                // Usually the reader closed its end before the end of the export
+                Log.e(LOG_TAG, "Failed to export pets to " + uri, e);
+            }
+        }
+    };
+
+    /**
+     * Inserts the pets read from the given pipe on a background thread, closing the pipe when
+     * the import ends. The table is notified once at the end, even if the import failed,
+     * since the pets read before the failure stay imported.
+     */
+    private void importPets(final Uri uri, final String format, final ParcelFileDescriptor input) {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                Reader reader = new BufferedReader(new InputStreamReader(
+                        new ParcelFileDescriptor.AutoCloseInputStream(input), UTF_8));
+                try {
+                    int rows = PetTransfer.importPets(mDbHelper.getWritableDatabase(), format, reader);
+                    mStats.record(PetProviderStats.OPERATION_IMPORT, getUriPattern(PETS_IMPORT),
+                            System.nanoTime() - start, rows, -1);
+                } catch (IOException | RuntimeException e) {
+                    Log.e(LOG_TAG, "Failed to import pets from " + uri, e);
+                } finally {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        Log.e(LOG_TAG, "Failed to close " + uri, e);
+                    }
+                    mSyncEngine.schedulePush();
+                    PetCatalogPrefetch.getInstance().invalidate();
+                    getContext().getContentResolver().notifyChange(
+                            PetsContract.PetEntry.CONTENT_URI, null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Saves the photo read from the given pipe as the photo of the pet on a background thread,
+     * closing the pipe when it ends. The pet only gets the photo once it has been read whole.
+     */
+    private void savePhoto(final Uri uri, final long id, final ParcelFileDescriptor input) {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                InputStream in = new ParcelFileDescriptor.AutoCloseInputStream(input);
+                try {
+                    if (mPhotoStore.savePhoto(id, in)) {
+                        setHasPhoto(id, true);
+                    } else {
+                        Log.e(LOG_TAG, "Not an image written to " + uri);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    Log.e(LOG_TAG, "Failed to save the photo written to " + uri, e);
+                } finally {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        Log.e(LOG_TAG, "Failed to close " + uri, e);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets whether the pet with the given _ID has a photo and notifies the change of the pet.
+     * Returns the number of pets updated.
+     */
+    private int setHasPhoto(long id, boolean hasPhoto) {
+        ContentValues values = new ContentValues();
+        values.put(PetsContract.PetEntry.COLUMN_HAS_PHOTO, hasPhoto ? 1 : 0);
+        int rows = mDbHelper.getWritableDatabase().update(PetsContract.PetEntry.TABLE_NAME, values,
+                PetsContract.PetEntry._ID + "=? AND " + PetDbHelper.SELECTION_NOT_DELETED,
+                new String[]{String.valueOf(id)});
+
+        Uri petUri = ContentUris.withAppendedId(PetsContract.PetEntry.CONTENT_URI, id);
+        mRowCache.remove(id);
+        if (rows > 0) {
+            notifyChange(petUri);
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the _ID of the pet a photo uri belongs to.
+     */
+    private static long getPhotoPetId(Uri photoUri) {
+        return Long.parseLong(photoUri.getPathSegments().get(1));
+    }
+
+    /**
+     * Returns the format asked for by the export or import uri, which must be a format of the
+     * contract.
+     */
+    private static String getFormat(Uri uri) {
+        String format = uri.getQueryParameter(PetsContract.QUERY_PARAM_FORMAT);
+        if (!PetTransfer.isSupportedFormat(format)) {
+            throw new IllegalArgumentException("Invalid format " + format + " in " + uri);
         }
+        return format;
+    }
+
+    /**
+     * Drop the cached pets a write to the given uri may have changed: the pet itself for a
+     * single pet uri, every cached pet otherwise.
+     */
+    private void invalidateCachedPets(Uri uri) {
+        if (sUriMatcher.match(uri) == PET_ID) {
+            mRowCache.remove(ContentUris.parseId(uri));
+        } else {
+            mRowCache.clear();
+        }
+    }
+
+    /**
+     * Records a write that started at {@code start}, as given by System.nanoTime(), in the
+     * provider stats, and writes it to the slow query log if it went over the threshold.
+     */
+    private void recordWrite(String operation, int match, Uri uri, String selection, int rows,
+                             long start) {
+        long elapsedNanos = System.nanoTime() - start;
+        mStats.record(operation, getUriPattern(match), elapsedNanos, rows, -1);
+        if (mStats.isSlow(elapsedNanos)) {
+            Log.w(LOG_TAG, "Slow " + operation + " of " + uri + " took " +
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms for " + rows +
+                    " rows, selection: " + selection);
+        }
+    }
 
+    /**
+     * Writes a slow query to the log with its SQL and the plan SQLite chose for it.
+     */
+    private static void logSlowQuery(SQLiteDatabase database, Uri uri, String sql,
+                                     String[] selectionArgs, long elapsedNanos) {
+        StringBuilder message = new StringBuilder()
+                .append("Slow query of ").append(uri).append(" took ")
+                .append(TimeUnit.NANOSECONDS.toMillis(elapsedNanos)).append(" ms: ").append(sql);
+        try {
+            Cursor plan = database.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+            try {
+                // The last column of every row describes one step of the plan
+                while (plan.moveToNext()) {
+                    message.append("\n  ").append(plan.getString(plan.getColumnCount() - 1));
+                }
+            } finally {
+                plan.close();
+            }
+        } catch (SQLiteException e) {
+            message.append("\n  query plan not available: ").append(e.getMessage());
+        }
+        Log.w(LOG_TAG, message.toString());
+    }
+
+    /**
+     * Returns the number of rows held by the window of the cursor, or -1 if it has no window.
+     */
+    private static int getWindowRows(Cursor cursor) {
+        if (cursor instanceof AbstractWindowedCursor) {
+            CursorWindow window = ((AbstractWindowedCursor) cursor).getWindow();
+            if (window != null) {
+                return window.getNumRows();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the pattern of the uris of the given match, as shown in the provider stats.
+     */
+    private static String getUriPattern(int match) {
+        switch (match) {
+            case PETS:
+                return PATH_PETS;
+            case PET_ID:
+                return PATH_PETS + "/#";
+            case PETS_PAGE:
+                return PATH_PETS + "/" + PATH_PAGE;
+            case PETS_SEARCH:
+                return PATH_PETS + "/" + PATH_SEARCH + "/*";
+            case PETS_STATS_BREED:
+                return PATH_PETS + "/" + PATH_STATS + "/" + PATH_BREED;
+            case PETS_STATS_GENDER:
+                return PATH_PETS + "/" + PATH_STATS + "/" + PATH_GENDER;
+            case PETS_EXPORT:
+                return PATH_PETS + "/" + PATH_EXPORT;
+            case PETS_IMPORT:
+                return PATH_PETS + "/" + PATH_IMPORT;
+            case PET_PHOTO:
+                return PATH_PETS + "/#/" + PATH_PHOTO;
+            default:
+                return "unknown";
+        }
+    }
+
+    /**
+     * Returns the value of the given query parameter of the uri as a long, or the default value
+     * if the uri doesn't have that parameter.
+     */
+    private static long getLongParameter(Uri uri, String key, long defaultValue) {
+        String value = uri.getQueryParameter(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + key + " parameter in " + uri);
+        }
+    }
+
+    /**
+     * Notify the ContentResolver that the data at the given uri has changed. If a batch is
+     * running on this thread the notification is held back until the batch has been committed.
+     * The prefetched first page of the catalog is discarded along with the notification, and
+     * the change is pushed to the sync server.
+     */
+    private void notifyChange(Uri uri) {
+        Set<Uri> pendingNotifications = mPendingNotifications.get();
+        if (pendingNotifications != null) {
+            pendingNotifications.add(uri);
+        } else {
+            mSyncEngine.schedulePush();
+            PetCatalogPrefetch.getInstance().invalidate();
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    /**
+     * Handles the provider specific methods of the contract. {@link PetsContract#METHOD_GET_CACHE_STATS}
+     * returns the hit and miss counters of the row cache, {@link PetsContract#METHOD_COUNT_PETS}
+     * returns the number of pets,
+     * {@link PetsContract#METHOD_SET_SLOW_QUERY_THRESHOLD} sets the threshold of the slow query
+     * log to the milliseconds given as the arg, and {@link PetsContract#METHOD_SYNC} starts a
+     * sync with the server whose url is given as the arg.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (PetsContract.METHOD_GET_CACHE_STATS.equals(method)) {
+            Bundle stats = new Bundle();
+            stats.putInt(PetsContract.KEY_CACHE_HITS, mRowCache.hitCount());
+            stats.putInt(PetsContract.KEY_CACHE_MISSES, mRowCache.missCount());
+            stats.putInt(PetsContract.KEY_CACHE_SIZE, mRowCache.size());
+            return stats;
+        }
+        if (PetsContract.METHOD_COUNT_PETS.equals(method)) {
+            Bundle count = new Bundle();
+            count.putLong(PetsContract.KEY_COUNT, mStatements.count());
+            return count;
+        }
+        if (PetsContract.METHOD_SET_SLOW_QUERY_THRESHOLD.equals(method)) {
+            try {
+                mStats.setSlowThresholdMillis(Long.parseLong(arg));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid slow query threshold " + arg);
+            }
+            return null;
+        }
+        if (PetsContract.METHOD_SYNC.equals(method)) {
+            if (arg == null || !arg.startsWith("http")) {
+                throw new IllegalArgumentException("Invalid sync server " + arg);
+            }
+            mSyncEngine.requestSync(arg);
+            return null;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Releases the compiled statements and closes the database. Only called by tests, the
+     * system never shuts a provider down.
+     */
+    @Override
+    public void shutdown() {
+        mStatements.close();
+        mDbHelper.close();
+        super.shutdown();
     }
 
     /**
@@ -268,9 +1121,22 @@ public class PetProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case PETS:
+            case PETS_PAGE:
+            case PETS_SEARCH:
                 return PetsContract.PetEntry.CONTENT_LIST_TYPE;
             case PET_ID:
                 return PetsContract.PetEntry.CONTENT_ITEM_TYPE;
+            case PROVIDER_STATS:
+                return PetsContract.ProviderStatsEntry.CONTENT_LIST_TYPE;
+            case PETS_STATS_BREED:
+            case PETS_STATS_GENDER:
+                return PetsContract.PetStatsEntry.CONTENT_LIST_TYPE;
+            case PETS_EXPORT:
+            case PETS_IMPORT:
+                return PetsContract.FORMAT_CSV.equals(getFormat(uri))
+                        ? PetsContract.CSV_TYPE : PetsContract.JSON_LINES_TYPE;
+            case PET_PHOTO:
+                return PetsContract.PetEntry.PHOTO_TYPE;
             default:
                 throw new IllegalStateException("Unknown URI " + uri + " with match " + match);
         }
@@ -0,0 +1,147 @@
+package com.example.android.pets.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import com.example.android.pets.data.PetsContract.ProviderStatsEntry;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counters of the operations made on {@link PetProvider}, kept per operation and uri pattern:
+ * how many there were, the rows they returned or affected, how long they took as a latency
+ * histogram, and how many went over the slow query threshold. Safe to use from any thread.
+ */
+class PetProviderStats {
+
+    static final String OPERATION_QUERY = "query";
+    static final String OPERATION_INSERT = "insert";
+    static final String OPERATION_BULK_INSERT = "bulk_insert";
+    static final String OPERATION_UPDATE = "update";
+    static final String OPERATION_DELETE = "delete";
+    static final String OPERATION_EXPORT = "export";
+    static final String OPERATION_IMPORT = "import";
+    static final String OPERATION_COMPACT = "compact";
+    static final String OPERATION_SYNC = "sync";
+
+    /** Upper bounds of the histogram buckets in milliseconds, the last bucket has none */
+    private static final long[] BUCKET_LIMITS_MS = {1, 4, 16, 64, 256, 1024};
+
+    private static final String[] COLUMNS = {
+            ProviderStatsEntry.COLUMN_OPERATION,
+            ProviderStatsEntry.COLUMN_URI_PATTERN,
+            ProviderStatsEntry.COLUMN_COUNT,
+            ProviderStatsEntry.COLUMN_ROWS,
+            ProviderStatsEntry.COLUMN_MAX_WINDOW_ROWS,
+            ProviderStatsEntry.COLUMN_TOTAL_MILLIS,
+            ProviderStatsEntry.COLUMN_MAX_MILLIS,
+            ProviderStatsEntry.COLUMN_SLOW_COUNT,
+            ProviderStatsEntry.COLUMN_UNDER_1_MS,
+            ProviderStatsEntry.COLUMN_UNDER_4_MS,
+            ProviderStatsEntry.COLUMN_UNDER_16_MS,
+            ProviderStatsEntry.COLUMN_UNDER_64_MS,
+            ProviderStatsEntry.COLUMN_UNDER_256_MS,
+            ProviderStatsEntry.COLUMN_UNDER_1024_MS,
+            ProviderStatsEntry.COLUMN_OVER_1024_MS};
+
+    /** Counters by operation and uri pattern, in the order they were first recorded */
+    private final Map<String, Counters> mCounters = new LinkedHashMap<>();
+
+    private volatile long mSlowThresholdNanos;
+
+    PetProviderStats(long slowThresholdMillis) {
+        setSlowThresholdMillis(slowThresholdMillis);
+    }
+
+    void setSlowThresholdMillis(long slowThresholdMillis) {
+        if (slowThresholdMillis < 0) {
+            throw new IllegalArgumentException("Invalid slow query threshold " + slowThresholdMillis);
+        }
+        mSlowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+    }
+
+    /**
+     * Returns true if an operation that took {@code elapsedNanos} belongs in the slow query log.
+     */
+    boolean isSlow(long elapsedNanos) {
+        return elapsedNanos >= mSlowThresholdNanos;
+    }
+
+    /**
+     * Records an operation. {@code rows} is -1 when they weren't counted, and
+     * {@code windowRows} is the number of rows in the first window of the returned cursor, or
+     * -1 when there is no window to measure.
+     */
+    synchronized void record(String operation, String uriPattern, long elapsedNanos, int rows,
+                             int windowRows) {
+        String key = operation + " " + uriPattern;
+        Counters counters = mCounters.get(key);
+        if (counters == null) {
+            counters = new Counters(operation, uriPattern);
+            mCounters.put(key, counters);
+        }
+
+        counters.count++;
+        if (rows > 0) {
+            counters.rows += rows;
+        }
+        counters.maxWindowRows = Math.max(counters.maxWindowRows, windowRows);
+        counters.totalNanos += elapsedNanos;
+        counters.maxNanos = Math.max(counters.maxNanos, elapsedNanos);
+        if (isSlow(elapsedNanos)) {
+            counters.slowCount++;
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS_MS.length && elapsedMillis >= BUCKET_LIMITS_MS[bucket]) {
+            bucket++;
+        }
+        counters.histogram[bucket]++;
+    }
+
+    /**
+     * Returns a cursor with one row of {@link ProviderStatsEntry} columns per operation and
+     * uri pattern recorded so far.
+     */
+    synchronized Cursor toCursor() {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS, mCounters.size());
+        for (Counters counters : mCounters.values()) {
+            List<Object> row = new ArrayList<>(COLUMNS.length);
+            row.add(counters.operation);
+            row.add(counters.uriPattern);
+            row.add(counters.count);
+            row.add(counters.rows);
+            row.add(counters.maxWindowRows);
+            row.add(TimeUnit.NANOSECONDS.toMillis(counters.totalNanos));
+            row.add(TimeUnit.NANOSECONDS.toMillis(counters.maxNanos));
+            row.add(counters.slowCount);
+            for (long bucketCount : counters.histogram) {
+                row.add(bucketCount);
+            }
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    private static class Counters {
+        final String operation;
+        final String uriPattern;
+        long count;
+        long rows;
+        int maxWindowRows = -1;
+        long totalNanos;
+        long maxNanos;
+        long slowCount;
+        final long[] histogram = new long[BUCKET_LIMITS_MS.length + 1];
+
+        Counters(String operation, String uriPattern) {
+            this.operation = operation;
+            this.uriPattern = uriPattern;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.example.android.pets.data;
+
+import android.net.Uri;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Filters and sort order of a query of the pets, built with typed values instead of SQL. A
+ * query travels to {@link PetProvider} as parameters of the pets or page content URI, see
+ * {@link #appendTo(Uri)}, and the provider turns it back into a parameterized selection, so
+ * the clients never write SQL and every column is checked against {@link PetsContract}.
+ * <p>
+ * Rows are always sorted by _ID after the sort column, so every row has a position of its own
+ * and pages can seek to the row after the last one of the previous page. A single gender or a
+ * breed is a range of its index already in _ID order, so a filtered page reads only the rows
+ * it returns. A weight range reads the gender and weight index and sorts what it finds.
+ */
+public final class PetQuery {
+
+    /** Columns a query can be sorted by */
+    private static final List<String> SORT_COLUMNS = Arrays.asList(
+            PetsContract.PetEntry._ID,
+            PetsContract.PetEntry.COLUMN_NAME,
+            PetsContract.PetEntry.COLUMN_BREED,
+            PetsContract.PetEntry.COLUMN_WEIGHT);
+
+    /** Prefix of the sort parameter of a descending sort */
+    private static final String DESCENDING_PREFIX = "-";
+
+    /** Columns are qualified, so the selection also works when the search joins the view */
+    private static final String ID = qualify(PetsContract.PetEntry._ID);
+
+    /** Every pet, sorted by _ID */
+    public static final PetQuery ALL = new Builder().build();
+
+    private final int[] mGenders;
+    private final Integer mMinWeight;
+    private final Integer mMaxWeight;
+    private final String mBreed;
+    private final String mSortColumn;
+    private final boolean mDescending;
+
+    private PetQuery(Builder builder) {
+        mGenders = new int[builder.mGenders.size()];
+        int i = 0;
+        for (int gender : builder.mGenders) {
+            mGenders[i++] = gender;
+        }
+        mMinWeight = builder.mMinWeight;
+        mMaxWeight = builder.mMaxWeight;
+        mBreed = builder.mBreed;
+        mSortColumn = builder.mSortColumn;
+        mDescending = builder.mDescending;
+    }
+
+    /**
+     * Builds a {@link PetQuery}. Every value is checked when it is set, and an
+     * IllegalArgumentException describes the first one that is not valid.
+     */
+    public static final class Builder {
+
+        private final Set<Integer> mGenders = new TreeSet<>();
+        private Integer mMinWeight;
+        private Integer mMaxWeight;
+        private String mBreed;
+        private String mSortColumn = PetsContract.PetEntry._ID;
+        private boolean mDescending;
+
+        public Builder() {
+        }
+
+        /**
+         * Creates a builder starting from the filters and sort order of the given query.
+         */
+        public Builder(PetQuery query) {
+            for (int gender : query.mGenders) {
+                mGenders.add(gender);
+            }
+            mMinWeight = query.mMinWeight;
+            mMaxWeight = query.mMaxWeight;
+            mBreed = query.mBreed;
+            mSortColumn = query.mSortColumn;
+            mDescending = query.mDescending;
+        }
+
+        /**
+         * Keeps the pets of the given gender, one of the GENDER constants of
+         * {@link PetsContract.PetEntry}. Pets of any of the added genders are kept.
+         */
+        public Builder addGender(int gender) {
+            PetValidator.checkGender(gender);
+            mGenders.add(gender);
+            return this;
+        }
+
+        /**
+         * Removes the gender filter, so pets of every gender are kept.
+         */
+        public Builder clearGenders() {
+            mGenders.clear();
+            return this;
+        }
+
+        /**
+         * Keeps the pets whose weight is between both values, inclusive. A null value leaves
+         * that end of the range open, and two nulls remove the weight filter.
+         */
+        public Builder setWeightRange(Integer minWeight, Integer maxWeight) {
+            if (minWeight != null) {
+                PetValidator.checkWeight(minWeight);
+            }
+            if (maxWeight != null) {
+                PetValidator.checkWeight(maxWeight);
+            }
+            if (minWeight != null && maxWeight != null && minWeight > maxWeight) {
+                throw new IllegalArgumentException("Minimum weight greater than maximum weight");
+            }
+            mMinWeight = minWeight;
+            mMaxWeight = maxWeight;
+            return this;
+        }
+
+        /**
+         * Keeps the pets of the given breed, or removes the breed filter if it is null.
+         */
+        public Builder setBreed(String breed) {
+            mBreed = breed;
+            return this;
+        }
+
+        /**
+         * Sorts the pets by the given column of {@link PetsContract.PetEntry}: the _ID, name,
+         * breed or weight. Pets without a value come first in ascending order.
+         */
+        public Builder sortBy(String column, boolean descending) {
+            if (!SORT_COLUMNS.contains(column)) {
+                throw new IllegalArgumentException("Cannot sort by " + column);
+            }
+            mSortColumn = column;
+            mDescending = descending;
+            return this;
+        }
+
+        public PetQuery build() {
+            return new PetQuery(this);
+        }
+    }
+
+    /**
+     * Returns the query held by the parameters of the given uri.
+     *
+     * @throws IllegalArgumentException if a parameter is not valid
+     */
+    public static PetQuery fromUri(Uri uri) {
+        Builder builder = new Builder();
+        for (String gender : uri.getQueryParameters(PetsContract.QUERY_PARAM_GENDER)) {
+            builder.addGender(parseInt(uri, PetsContract.QUERY_PARAM_GENDER, gender));
+        }
+
+        builder.setWeightRange(getIntParameter(uri, PetsContract.QUERY_PARAM_MIN_WEIGHT),
+                getIntParameter(uri, PetsContract.QUERY_PARAM_MAX_WEIGHT));
+
+        builder.setBreed(uri.getQueryParameter(PetsContract.QUERY_PARAM_BREED));
+
+        String sort = uri.getQueryParameter(PetsContract.QUERY_PARAM_SORT);
+        if (sort != null) {
+            boolean descending = sort.startsWith(DESCENDING_PREFIX);
+            builder.sortBy(descending ? sort.substring(DESCENDING_PREFIX.length()) : sort,
+                    descending);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the given uri with the parameters of this query appended.
+     */
+    public Uri appendTo(Uri uri) {
+        Uri.Builder builder = uri.buildUpon();
+        for (int gender : mGenders) {
+            builder.appendQueryParameter(PetsContract.QUERY_PARAM_GENDER, String.valueOf(gender));
+        }
+        if (mMinWeight != null) {
+            builder.appendQueryParameter(PetsContract.QUERY_PARAM_MIN_WEIGHT,
+                    String.valueOf(mMinWeight));
+        }
+        if (mMaxWeight != null) {
+            builder.appendQueryParameter(PetsContract.QUERY_PARAM_MAX_WEIGHT,
+                    String.valueOf(mMaxWeight));
+        }
+        if (mBreed != null) {
+            builder.appendQueryParameter(PetsContract.QUERY_PARAM_BREED, mBreed);
+        }
+        if (!isSortedById() || mDescending) {
+            builder.appendQueryParameter(PetsContract.QUERY_PARAM_SORT,
+                    (mDescending ? DESCENDING_PREFIX : "") + mSortColumn);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the genders kept by the query, empty if pets of every gender are kept.
+     */
+    public int[] getGenders() {
+        return mGenders.clone();
+    }
+
+    public Integer getMinWeight() {
+        return mMinWeight;
+    }
+
+    public Integer getMaxWeight() {
+        return mMaxWeight;
+    }
+
+    public String getBreed() {
+        return mBreed;
+    }
+
+    public String getSortColumn() {
+        return mSortColumn;
+    }
+
+    public boolean isDescending() {
+        return mDescending;
+    }
+
+    /**
+     * Returns whether the query keeps only some of the pets.
+     */
+    public boolean hasFilters() {
+        return mGenders.length > 0 || mMinWeight != null || mMaxWeight != null || mBreed != null;
+    }
+
+    /**
+     * Returns whether the pets are sorted by _ID only.
+     */
+    public boolean isSortedById() {
+        return PetsContract.PetEntry._ID.equals(mSortColumn);
+    }
+
+    /**
+     * Returns the selection of the filters, or null if the query keeps every pet. Its values
+     * are given by {@link #getSelectionArgs()}.
+     */
+    String getSelection() {
+        StringBuilder selection = new StringBuilder();
+        if (mGenders.length == 1) {
+            // A single gender is a range of the gender index already in _ID order
+            appendTerm(selection, qualify(PetsContract.PetEntry.COLUMN_GENDER) + " = ?");
+        } else if (mGenders.length > 1) {
+            StringBuilder in = new StringBuilder(qualify(PetsContract.PetEntry.COLUMN_GENDER))
+                    .append(" IN (?");
+            for (int i = 1; i < mGenders.length; i++) {
+                in.append(", ?");
+            }
+            appendTerm(selection, in.append(')').toString());
+        }
+        if (mMinWeight != null) {
+            appendTerm(selection, qualify(PetsContract.PetEntry.COLUMN_WEIGHT) + " >= ?");
+        }
+        if (mMaxWeight != null) {
+            appendTerm(selection, qualify(PetsContract.PetEntry.COLUMN_WEIGHT) + " <= ?");
+        }
+        if (mBreed != null) {
+            appendTerm(selection, qualify(PetsContract.PetEntry.COLUMN_BREED) + " = ?");
+        }
+        return selection.length() == 0 ? null : selection.toString();
+    }
+
+    /**
+     * Returns the values of {@link #getSelection()}, an empty array if there is no selection.
+     */
+    String[] getSelectionArgs() {
+        String[] args = new String[mGenders.length + (mMinWeight != null ? 1 : 0) +
+                (mMaxWeight != null ? 1 : 0) + (mBreed != null ? 1 : 0)];
+        int i = 0;
+        for (int gender : mGenders) {
+            args[i++] = String.valueOf(gender);
+        }
+        if (mMinWeight != null) {
+            args[i++] = String.valueOf(mMinWeight);
+        }
+        if (mMaxWeight != null) {
+            args[i++] = String.valueOf(mMaxWeight);
+        }
+        if (mBreed != null) {
+            args[i] = mBreed;
+        }
+        return args;
+    }
+
+    /**
+     * Returns the ORDER BY clause of the query, which ends with the _ID in the same direction.
+     */
+    String getOrderBy() {
+        String direction = mDescending ? " DESC" : " ASC";
+        if (isSortedById()) {
+            return ID + direction;
+        }
+        return qualify(mSortColumn) + direction + ", " + ID + direction;
+    }
+
+    /**
+     * Returns the selection of the rows after the row with the given sort value and _ID, in the
+     * order of {@link #getOrderBy()}. SQLite sorts NULL before any value, so the rows without a
+     * value are the first ones in ascending order and the last ones in descending order. Its
+     * values are given by {@link #getKeysetSelectionArgs(String, long)}.
+     */
+    String getKeysetSelection(String afterValue) {
+        String operator = mDescending ? " < ?" : " > ?";
+        if (isSortedById()) {
+            return ID + operator;
+        }
+
+        String column = qualify(mSortColumn);
+        if (afterValue == null) {
+            return mDescending
+                    ? "(" + column + " IS NULL AND " + ID + operator + ")"
+                    : "(" + column + " IS NOT NULL OR " + ID + operator + ")";
+        }
+        return "(" + column + operator + " OR (" + column + " = ? AND " + ID + operator + ")" +
+                (mDescending ? " OR " + column + " IS NULL)" : ")");
+    }
+
+    /**
+     * Returns the values of {@link #getKeysetSelection(String)}.
+     */
+    String[] getKeysetSelectionArgs(String afterValue, long afterId) {
+        String id = String.valueOf(afterId);
+        if (isSortedById() || afterValue == null) {
+            return new String[]{id};
+        }
+        return new String[]{afterValue, afterValue, id};
+    }
+
+    private static void appendTerm(StringBuilder selection, String term) {
+        if (selection.length() > 0) {
+            selection.append(" AND ");
+        }
+        selection.append(term);
+    }
+
+    private static String qualify(String column) {
+        return PetDbHelper.VISIBLE_PETS_VIEW + "." + column;
+    }
+
+    /**
+     * Returns the value of the given integer parameter of the uri, or null if it has none.
+     */
+    private static Integer getIntParameter(Uri uri, String key) {
+        String value = uri.getQueryParameter(key);
+        return value == null ? null : parseInt(uri, key, value);
+    }
+
+    private static int parseInt(Uri uri, String key, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + key + " parameter in " + uri);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.android.pets.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Writes pets through {@link PetProvider} on a background thread, so the UI thread never waits
+ * for the database, and reports the result of every write on the main thread. Writes are
+ * committed in the order they were made, through a {@link PetWriteQueue} that commits the
+ * writes made within a few milliseconds of each other in one applyBatch transaction. An update
+ * of a pet that is still waiting to run is replaced by a newer update of the same pet, so
+ * rapid repeated saves end up as one write.
+ */
+public class PetRepository {
+
+    /**
+     * Receives the result of a write on the main thread.
+     */
+    public interface Callback {
+
+        /**
+         * Called when the write succeeded. {@code uri} is the uri of the new pet for an insert
+         * and the written uri otherwise, {@code rows} is the number of rows written.
+         */
+        void onSuccess(Uri uri, int rows);
+
+        /**
+         * Called when the provider rejected or failed the write.
+         */
+        void onFailure(Exception e);
+    }
+
+    private static PetRepository sInstance;
+
+    private final ContentResolver mContentResolver;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final PetWriteQueue<ContentProviderOperation, ContentProviderResult> mWriteQueue;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Updates waiting to run, by the uri of the pet they update */
+    private final Map<Uri, PendingUpdate> mPendingUpdates = new HashMap<>();
+
+    private PetRepository(final ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+        mWriteQueue = new PetWriteQueue<>(
+                new PetWriteQueue.Committer<ContentProviderOperation, ContentProviderResult>() {
+                    @Override
+                    public List<ContentProviderResult> commit(
+                            List<ContentProviderOperation> operations)
+                            throws RemoteException, OperationApplicationException {
+                        return Arrays.asList(contentResolver.applyBatch(
+                                PetsContract.CONTENT_AUTHORITY, new ArrayList<>(operations)));
+                    }
+                }, Executors.newSingleThreadScheduledExecutor());
+    }
+
+    public static synchronized PetRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PetRepository(context.getApplicationContext().getContentResolver());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Inserts a new pet with the given values.
+     */
+    public void insert(ContentValues values, Callback callback) {
+        write(ContentProviderOperation.newInsert(PetsContract.PetEntry.CONTENT_URI)
+                .withValues(values)
+                .build(), callback);
+    }
+
+    /**
+     * Inserts the given pet.
+     */
+    public void insert(Pet pet, Callback callback) {
+        insert(pet.toContentValues(), callback);
+    }
+
+    /**
+     * Updates the pet at the given uri with the attributes of {@code pet}.
+     */
+    public void update(Uri uri, Pet pet, Callback callback) {
+        update(uri, pet.toContentValues(), callback);
+    }
+
+    /**
+     * Updates the pet at the given uri with the given values. If an update of the same pet is
+     * still waiting to run it is replaced by this one, and both callbacks receive the result.
+     */
+    public void update(Uri uri, ContentValues values, Callback callback) {
+        PendingUpdate update;
+        synchronized (mPendingUpdates) {
+            update = mPendingUpdates.get(uri);
+            if (update != null) {
+                update.mValues = values;
+                update.mCallbacks.add(callback);
+                return;
+            }
+            update = new PendingUpdate(uri, values, callback);
+            mPendingUpdates.put(uri, update);
+        }
+        mExecutor.execute(update);
+    }
+
+    /**
+     * Deletes the pets at the given uri.
+     */
+    public void delete(Uri uri, Callback callback) {
+        write(ContentProviderOperation.newDelete(uri).build(), callback);
+    }
+
+    /**
+     * Copies the image at {@code imageUri}, such as one picked from the gallery, to the photo
+     * of the pet at the given uri. The provider makes the thumbnail once the copy is done and
+     * notifies the pet when its photo is in place. The copy doesn't wait for the writes still in
+     * the write queue.
+     */
+    public void savePhoto(final Uri petUri, final Uri imageUri, final Callback callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Uri photoUri = PetsContract.PetEntry.buildPhotoUri(ContentUris.parseId(petUri));
+                    copy(imageUri, photoUri);
+                    postSuccess(callback, photoUri, 1);
+                } catch (IOException | RuntimeException e) {
+                    postFailure(callback, e);
+                }
+            }
+        });
+    }
+
+    private void copy(Uri from, Uri to) throws IOException {
+        InputStream in = mContentResolver.openInputStream(from);
+        if (in == null) {
+            throw new FileNotFoundException("Failed to open " + from);
+        }
+        try {
+            OutputStream out = mContentResolver.openOutputStream(to);
+            if (out == null) {
+                throw new FileNotFoundException("Failed to open " + to);
+            }
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Adds the write to the write queue from the executor, behind the writes made before it.
+     */
+    private void write(final ContentProviderOperation operation, final Callback callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                enqueue(operation, Collections.singletonList(callback));
+            }
+        });
+    }
+
+    /**
+     * Adds the write to the write queue, which reports its result to every callback. The
+     * uri of an insert is the uri of the new pet.
+     */
+    private void enqueue(final ContentProviderOperation operation,
+                         final List<Callback> callbacks) {
+        mWriteQueue.enqueue(operation, new PetWriteQueue.Listener<ContentProviderResult>() {
+            @Override
+            public void onSuccess(ContentProviderResult result) {
+                Uri uri = result.uri != null ? result.uri : operation.getUri();
+                int rows = result.uri != null ? 1 : result.count;
+                for (Callback callback : callbacks) {
+                    postSuccess(callback, uri, rows);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                for (Callback callback : callbacks) {
+                    postFailure(callback, e);
+                }
+            }
+        });
+    }
+
+    private void postSuccess(final Callback callback, final Uri uri, final int rows) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onSuccess(uri, rows);
+            }
+        });
+    }
+
+    private void postFailure(final Callback callback, final Exception e) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onFailure(e);
+            }
+        });
+    }
+
+    /**
+     * An update waiting in the executor. Until it starts running newer updates of the same pet
+     * replace its values and add their callbacks, then it joins the write queue.
+     */
+    private class PendingUpdate implements Runnable {
+
+        private final Uri mUri;
+        private ContentValues mValues;
+        private final List<Callback> mCallbacks = new ArrayList<>();
+
+        PendingUpdate(Uri uri, ContentValues values, Callback callback) {
+            mUri = uri;
+            mValues = values;
+            mCallbacks.add(callback);
+        }
+
+        @Override
+        public void run() {
+            ContentValues values;
+            synchronized (mPendingUpdates) {
+                // From here on a new update of this pet needs a write of its own
+                mPendingUpdates.remove(mUri);
+                values = mValues;
+            }
+
+            enqueue(ContentProviderOperation.newUpdate(mUri).withValues(values).build(),
+                    mCallbacks);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.android.pets.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.LruCache;
+
+/**
+ * Bounded LRU cache of single pet rows keyed by _ID, used by {@link PetProvider} to answer
+ * PET_ID queries without going to SQLite.
+ */
+class PetRowCache {
+
+    /** Columns kept for every cached pet, in the order of the cached values */
+    static final String[] COLUMNS = new String[]{
+            PetsContract.PetEntry._ID,
+            PetsContract.PetEntry.COLUMN_NAME,
+            PetsContract.PetEntry.COLUMN_BREED,
+            PetsContract.PetEntry.COLUMN_GENDER,
+            PetsContract.PetEntry.COLUMN_WEIGHT,
+            PetsContract.PetEntry.COLUMN_HAS_PHOTO};
+
+    private final LruCache<Long, Object[]> mRows;
+
+    /**
+     * Increased by every invalidation. A row read before an invalidation may be stale, so it
+     * is only cached if the generation didn't change while it was being read.
+     */
+    private long mGeneration;
+
+    PetRowCache(int maxSize) {
+        mRows = new LruCache<>(maxSize);
+    }
+
+    /**
+     * Returns true if every column of the projection can be answered from the cache.
+     */
+    static boolean supports(String[] projection) {
+        if (projection == null) {
+            return true;
+        }
+        for (String column : projection) {
+            if (indexOf(column) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Returns a cursor with the cached pet for the projection, or null if the pet isn't cached.
+     */
+    Cursor get(long id, String[] projection) {
+        Object[] values = mRows.get(id);
+        return values == null ? null : toCursor(values, projection);
+    }
+
+    /**
+     * Reads the current row of the cursor, which must have the columns of {@link #COLUMNS} in
+     * the same order, and caches it unless the cache was invalidated after {@code generation}.
+     * Returns the values read.
+     */
+    Object[] put(long id, Cursor row, long generation) {
+        Object[] values = new Object[]{
+                row.getLong(0),
+                row.getString(1),
+                row.getString(2),
+                row.isNull(3) ? null : row.getLong(3),
+                row.isNull(4) ? null : row.getLong(4),
+                row.getLong(5)};
+
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mRows.put(id, values);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Removes the pet with the given _ID after it has been changed.
+     */
+    synchronized void remove(long id) {
+        mGeneration++;
+        mRows.remove(id);
+    }
+
+    /**
+     * Removes every pet after a change that may have touched any of them.
+     */
+    synchronized void clear() {
+        mGeneration++;
+        mRows.evictAll();
+    }
+
+    int hitCount() {
+        return mRows.hitCount();
+    }
+
+    int missCount() {
+        return mRows.missCount();
+    }
+
+    int size() {
+        return mRows.size();
+    }
+
+    /**
+     * Builds a single row cursor with the given values for the projection, or an empty cursor
+     * if the values are null.
+     */
+    static Cursor toCursor(Object[] values, String[] projection) {
+        String[] columns = projection == null ? COLUMNS : projection;
+        MatrixCursor cursor = new MatrixCursor(columns, 1);
+        if (values != null) {
+            Object[] row = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                row[i] = values[indexOf(columns[i])];
+            }
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    private static int indexOf(String column) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
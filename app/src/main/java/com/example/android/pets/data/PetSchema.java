@@ -0,0 +1,260 @@
+package com.example.android.pets.data;
+
+/**
+ * The schema of the pets database: the table of version 1 and the migrations that take it to
+ * the current version, run by {@link PetDbHelper}.
+ * <p>
+ * It has no Android dependencies, so the benchmark module compiles it as it is and builds its
+ * databases with the same statements as the app. The columns of the pets are repeated here, as
+ * PetsContract can't be loaded outside Android.
+ */
+public final class PetSchema {
+
+    //The pets table, the same as PetsContract.PetEntry
+    public static final String TABLE_NAME = "pets";
+    public static final String _ID = "_id";
+    public static final String COLUMN_NAME = "name";
+    public static final String COLUMN_BREED = "breed";
+    public static final String COLUMN_GENDER = "gender";
+    public static final String COLUMN_WEIGHT = "weight";
+    public static final String COLUMN_HAS_PHOTO = "has_photo";
+
+    //Full-text index over the name and breed of the pets, its docid is the _ID of the pet
+    public static final String FTS_TABLE_NAME = "pets_fts";
+
+    //Set to 1 when a pet is deleted, the row stays in the table until it is compacted
+    public static final String COLUMN_DELETED = "deleted";
+
+    //Single row table holding the _ID up to which every pet has been deleted at once
+    public static final String PURGE_TABLE_NAME = "pets_purge";
+    public static final String COLUMN_DELETED_THROUGH_ID = "deleted_through_id";
+
+    /**
+     * Selection of the pets that haven't been deleted. AUTOINCREMENT never gives an _ID twice,
+     * so deleting every pet only has to move the purge watermark past the last _ID.
+     */
+    public static final String SELECTION_NOT_DELETED = COLUMN_DELETED + " = 0 AND " + _ID +
+            " > (SELECT " + COLUMN_DELETED_THROUGH_ID + " FROM " + PURGE_TABLE_NAME + ")";
+
+    //View of the pets that haven't been deleted, every query of the provider reads from it
+    public static final String VISIBLE_PETS_VIEW = "visible_pets";
+
+    //The sync tables and columns, see PetSyncProtocol
+    private static final String COLUMN_SYNC_ID = PetSyncProtocol.COLUMN_SYNC_ID;
+    private static final String OUTBOX_TABLE_NAME = PetSyncProtocol.OUTBOX_TABLE_NAME;
+    private static final String COLUMN_PET_ID = PetSyncProtocol.COLUMN_PET_ID;
+    private static final String COLUMN_OPERATION = PetSyncProtocol.COLUMN_OPERATION;
+    private static final String SYNC_TABLE_NAME = PetSyncProtocol.SYNC_TABLE_NAME;
+    private static final String COLUMN_DEVICE_ID = PetSyncProtocol.COLUMN_DEVICE_ID;
+    private static final String COLUMN_REMOTE_VERSION = PetSyncProtocol.COLUMN_REMOTE_VERSION;
+    private static final String COLUMN_APPLYING = PetSyncProtocol.COLUMN_APPLYING;
+    private static final String COLUMN_OUTBOX_ENABLED = PetSyncProtocol.COLUMN_OUTBOX_ENABLED;
+
+    private static final String TEXT_TYPE = " TEXT";
+    private static final String NOT_NULL = " NOT NULL";
+    private static final String COMMA_SEP = ",";
+
+    /** Creates the pets table of version 1, which the migrations take to the current version */
+    public static final String SQL_CREATE_ENTRIES =
+            "CREATE TABLE " + TABLE_NAME + " (" +
+                    _ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    COLUMN_NAME + TEXT_TYPE + NOT_NULL + COMMA_SEP +
+                    COLUMN_BREED + TEXT_TYPE + COMMA_SEP +
+                    COLUMN_GENDER + " INTEGER" + COMMA_SEP +
+                    COLUMN_WEIGHT + " INTEGER" + " )";
+
+    /**
+     * Turns on incremental auto vacuum, so the free pages of removed rows are given back in
+     * small steps, see PetCompactor. It only works before any table is created, so it has to be
+     * followed by {@link #SQL_VACUUM} when the database isn't empty.
+     */
+    public static final String SQL_AUTO_VACUUM_INCREMENTAL = "PRAGMA auto_vacuum = INCREMENTAL";
+    public static final String SQL_VACUUM = "VACUUM";
+
+    /** Run on every connection in write-ahead logging mode, see PetDbHelper.onOpen */
+    public static final String SQL_SYNCHRONOUS_NORMAL = "PRAGMA synchronous = NORMAL";
+
+    //A new random sync id
+    private static final String SQL_RANDOM_ID = "lower(hex(randomblob(16)))";
+
+    //Condition of the outbox triggers: a sync was asked for and pulled changes aren't being
+    //applied, which aren't pushed back
+    private static final String SQL_OUTBOX_ENABLED = "(SELECT " + COLUMN_APPLYING + " = 0 AND " +
+            COLUMN_OUTBOX_ENABLED + " = 1 FROM " + SYNC_TABLE_NAME + ")";
+
+    //Removes the change of a pet waiting in the outbox, replaced by a newer one
+    private static final String SQL_REPLACE_OUTBOX_ROW = "DELETE FROM " + OUTBOX_TABLE_NAME +
+            " WHERE " + COLUMN_SYNC_ID + " = new." + COLUMN_SYNC_ID + "; ";
+
+    /**
+     * Schema changes made after version 1, one entry per version. MIGRATIONS[i] holds the
+     * statements that take a database from version i + 1 to version i + 2. A migration must
+     * change the schema in place so the pets already stored survive the upgrade, and new
+     * schema changes are added as a new entry at the end, never by editing an existing one.
+     */
+    private static final String[][] MIGRATIONS = {
+            // Version 2: indexes for the common catalog filters
+            {
+                    "CREATE INDEX pets_name_index ON " + TABLE_NAME +
+                            " (" + COLUMN_NAME + ")",
+                    "CREATE INDEX pets_breed_index ON " + TABLE_NAME +
+                            " (" + COLUMN_BREED + ")",
+                    "CREATE INDEX pets_gender_weight_index ON " + TABLE_NAME +
+                            " (" + COLUMN_GENDER + COMMA_SEP +
+                            COLUMN_WEIGHT + ")"
+            },
+            // Version 3: full-text search over name and breed, kept in sync by triggers
+            {
+                    "CREATE VIRTUAL TABLE " + FTS_TABLE_NAME + " USING fts4(" +
+                            COLUMN_NAME + COMMA_SEP +
+                            COLUMN_BREED + ")",
+                    "INSERT INTO " + FTS_TABLE_NAME + " (docid, " +
+                            COLUMN_NAME + COMMA_SEP +
+                            COLUMN_BREED + ") SELECT " +
+                            _ID + COMMA_SEP +
+                            COLUMN_NAME + COMMA_SEP +
+                            COLUMN_BREED + " FROM " +
+                            TABLE_NAME,
+                    "CREATE TRIGGER pets_fts_insert AFTER INSERT ON " +
+                            TABLE_NAME + " BEGIN " +
+                            "INSERT INTO " + FTS_TABLE_NAME + " (docid, " +
+                            COLUMN_NAME + COMMA_SEP +
+                            COLUMN_BREED + ") VALUES (new." +
+                            _ID + ", new." +
+                            COLUMN_NAME + ", new." +
+                            COLUMN_BREED + "); END",
+                    "CREATE TRIGGER pets_fts_update AFTER UPDATE OF " +
+                            COLUMN_NAME + COMMA_SEP +
+                            COLUMN_BREED + " ON " +
+                            TABLE_NAME + " BEGIN " +
+                            "UPDATE " + FTS_TABLE_NAME + " SET " +
+                            COLUMN_NAME + " = new." +
+                            COLUMN_NAME + COMMA_SEP +
+                            COLUMN_BREED + " = new." +
+                            COLUMN_BREED +
+                            " WHERE docid = old." + _ID + "; END",
+                    "CREATE TRIGGER pets_fts_delete AFTER DELETE ON " +
+                            TABLE_NAME + " BEGIN " +
+                            "DELETE FROM " + FTS_TABLE_NAME +
+                            " WHERE docid = old." + _ID + "; END"
+            },
+            // Version 4: soft delete, deleted pets are hidden by the view until they are compacted
+            {
+                    "ALTER TABLE " + TABLE_NAME + " ADD COLUMN " +
+                            COLUMN_DELETED + " INTEGER NOT NULL DEFAULT 0",
+                    "CREATE TABLE " + PURGE_TABLE_NAME + " (" +
+                            COLUMN_DELETED_THROUGH_ID + " INTEGER NOT NULL)",
+                    "INSERT INTO " + PURGE_TABLE_NAME + " (" + COLUMN_DELETED_THROUGH_ID +
+                            ") VALUES (0)",
+                    "CREATE VIEW " + VISIBLE_PETS_VIEW + " AS SELECT " +
+                            _ID + COMMA_SEP +
+                            COLUMN_NAME + COMMA_SEP +
+                            COLUMN_BREED + COMMA_SEP +
+                            COLUMN_GENDER + COMMA_SEP +
+                            COLUMN_WEIGHT + " FROM " +
+                            TABLE_NAME + " WHERE " + SELECTION_NOT_DELETED,
+                    // The grouping indexes also hold the flag, so the stats still read no rows
+                    "DROP INDEX pets_breed_index",
+                    "CREATE INDEX pets_breed_index ON " + TABLE_NAME +
+                            " (" + COLUMN_BREED + COMMA_SEP +
+                            COLUMN_DELETED + ")",
+                    "DROP INDEX pets_gender_weight_index",
+                    "CREATE INDEX pets_gender_weight_index ON " + TABLE_NAME +
+                            " (" + COLUMN_GENDER + COMMA_SEP +
+                            COLUMN_WEIGHT + COMMA_SEP +
+                            COLUMN_DELETED + ")"
+            },
+            // Version 5: whether the pet has a photo, the photos themselves are files
+            {
+                    "ALTER TABLE " + TABLE_NAME + " ADD COLUMN " +
+                            COLUMN_HAS_PHOTO + " INTEGER NOT NULL DEFAULT 0",
+                    "DROP VIEW " + VISIBLE_PETS_VIEW,
+                    "CREATE VIEW " + VISIBLE_PETS_VIEW + " AS SELECT " +
+                            _ID + COMMA_SEP +
+                            COLUMN_NAME + COMMA_SEP +
+                            COLUMN_BREED + COMMA_SEP +
+                            COLUMN_GENDER + COMMA_SEP +
+                            COLUMN_WEIGHT + COMMA_SEP +
+                            COLUMN_HAS_PHOTO + " FROM " +
+                            TABLE_NAME + " WHERE " + SELECTION_NOT_DELETED
+            },
+            // Version 6: the catalog filtered by a gender reads its pets in _ID order
+            {
+                    "CREATE INDEX pets_gender_index ON " + TABLE_NAME +
+                            " (" + COLUMN_GENDER + COMMA_SEP +
+                            COLUMN_DELETED + ")"
+            },
+            // Version 7: outbox of the changes to sync. The triggers only write it once a sync
+            // was asked for, and it holds the last change of each pet, so it never grows past
+            // the pets. The pets get their sync ids with the first sync, see PetSyncEngine
+            {
+                    "ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_SYNC_ID + TEXT_TYPE,
+                    "CREATE UNIQUE INDEX pets_sync_id_index ON " + TABLE_NAME + " (" +
+                            COLUMN_SYNC_ID + ")",
+                    "CREATE TABLE " + SYNC_TABLE_NAME + " (" +
+                            COLUMN_DEVICE_ID + TEXT_TYPE + NOT_NULL + COMMA_SEP +
+                            COLUMN_REMOTE_VERSION + " INTEGER" + NOT_NULL + COMMA_SEP +
+                            COLUMN_APPLYING + " INTEGER" + NOT_NULL + COMMA_SEP +
+                            COLUMN_OUTBOX_ENABLED + " INTEGER" + NOT_NULL + ")",
+                    "INSERT INTO " + SYNC_TABLE_NAME + " VALUES (" + SQL_RANDOM_ID + ", 0, 0, 0)",
+                    "CREATE TABLE " + OUTBOX_TABLE_NAME + " (" +
+                            _ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            COLUMN_SYNC_ID + TEXT_TYPE + NOT_NULL + COMMA_SEP +
+                            COLUMN_PET_ID + " INTEGER" + NOT_NULL + COMMA_SEP +
+                            COLUMN_OPERATION + TEXT_TYPE + NOT_NULL + ")",
+                    "CREATE INDEX pets_outbox_sync_id_index ON " + OUTBOX_TABLE_NAME + " (" +
+                            COLUMN_SYNC_ID + ")",
+                    // A new pet gets its sync id here, unless it was pulled with one
+                    "CREATE TRIGGER pets_outbox_insert AFTER INSERT ON " + TABLE_NAME +
+                            " WHEN " + SQL_OUTBOX_ENABLED + " BEGIN UPDATE " + TABLE_NAME +
+                            " SET " + COLUMN_SYNC_ID + " = " + SQL_RANDOM_ID + " WHERE " + _ID +
+                            " = new." + _ID + " AND " + COLUMN_SYNC_ID + " IS NULL; " +
+                            "INSERT INTO " + OUTBOX_TABLE_NAME + " (" + COLUMN_SYNC_ID +
+                            COMMA_SEP + COLUMN_PET_ID + COMMA_SEP + COLUMN_OPERATION +
+                            ") SELECT " + COLUMN_SYNC_ID + COMMA_SEP + _ID + ", 'upsert' FROM " +
+                            TABLE_NAME + " WHERE " + _ID + " = new." + _ID + "; END",
+                    "CREATE TRIGGER pets_outbox_update AFTER UPDATE OF " +
+                            COLUMN_NAME + COMMA_SEP + COLUMN_BREED + COMMA_SEP +
+                            COLUMN_GENDER + COMMA_SEP + COLUMN_WEIGHT + " ON " + TABLE_NAME +
+                            " WHEN new." + COLUMN_DELETED + " = 0 AND " + SQL_OUTBOX_ENABLED +
+                            " BEGIN " + SQL_REPLACE_OUTBOX_ROW + "INSERT INTO " +
+                            OUTBOX_TABLE_NAME + " (" + COLUMN_SYNC_ID + COMMA_SEP +
+                            COLUMN_PET_ID + COMMA_SEP + COLUMN_OPERATION + ") VALUES (new." +
+                            COLUMN_SYNC_ID + ", new." + _ID + ", 'upsert'); END",
+                    "CREATE TRIGGER pets_outbox_delete AFTER UPDATE OF " + COLUMN_DELETED +
+                            " ON " + TABLE_NAME + " WHEN new." + COLUMN_DELETED + " = 1 AND old." +
+                            COLUMN_DELETED + " = 0 AND " + SQL_OUTBOX_ENABLED + " BEGIN " +
+                            SQL_REPLACE_OUTBOX_ROW + "INSERT INTO " + OUTBOX_TABLE_NAME + " (" +
+                            COLUMN_SYNC_ID + COMMA_SEP + COLUMN_PET_ID + COMMA_SEP +
+                            COLUMN_OPERATION + ") VALUES (new." + COLUMN_SYNC_ID + ", new." +
+                            _ID + ", 'delete'); END",
+                    // Deleting every pet moves the watermark, each pet it passed is deleted
+                    "CREATE TRIGGER pets_outbox_delete_all AFTER UPDATE OF " +
+                            COLUMN_DELETED_THROUGH_ID + " ON " + PURGE_TABLE_NAME + " WHEN " +
+                            SQL_OUTBOX_ENABLED + " BEGIN DELETE FROM " + OUTBOX_TABLE_NAME +
+                            " WHERE " + COLUMN_SYNC_ID + " IN (SELECT " + COLUMN_SYNC_ID +
+                            " FROM " + TABLE_NAME + " WHERE " + _ID + " > old." +
+                            COLUMN_DELETED_THROUGH_ID + " AND " + _ID + " <= new." +
+                            COLUMN_DELETED_THROUGH_ID + " AND " + COLUMN_DELETED + " = 0); " +
+                            "INSERT INTO " + OUTBOX_TABLE_NAME + " (" + COLUMN_SYNC_ID +
+                            COMMA_SEP + COLUMN_PET_ID + COMMA_SEP + COLUMN_OPERATION +
+                            ") SELECT " + COLUMN_SYNC_ID + COMMA_SEP + _ID + ", 'delete' FROM " +
+                            TABLE_NAME + " WHERE " + _ID + " > old." + COLUMN_DELETED_THROUGH_ID +
+                            " AND " + _ID + " <= new." + COLUMN_DELETED_THROUGH_ID + " AND " +
+                            COLUMN_DELETED + " = 0; END"
+            }
+    };
+
+    /** Version of a database that went through every migration */
+    public static final int DATABASE_VERSION = 1 + MIGRATIONS.length;
+
+    private PetSchema() {
+    }
+
+    /**
+     * Returns the statements that take a database from {@code version} to the next version.
+     */
+    public static String[] getMigration(int version) {
+        return MIGRATIONS[version - 1].clone();
+    }
+}
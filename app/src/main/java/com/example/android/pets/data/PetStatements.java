@@ -0,0 +1,266 @@
+package com.example.android.pets.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+/**
+ * Compiled statements for the operations {@link PetProvider} makes most: insert, update and
+ * delete of a pet by _ID, deleting every pet, and counting the pets. An operation binds the
+ * fields of a {@link Pet} as strings and longs to a statement compiled once instead of
+ * building, compiling and binding new SQL through SQLiteDatabase every time.
+ * <p>
+ * Deletes only mark the pets as deleted, {@link PetCompactor} removes their rows later. The
+ * updates and the count leave the deleted pets out.
+ * <p>
+ * A statement holds the values bound to it, so it is only used by one thread at a time. Every
+ * write takes the database's write connection by starting a transaction before it takes the
+ * lock of the statements, so a thread waiting for the lock never holds the connection the
+ * thread holding the lock needs. The count, a read, has a lock of its own. The statements are
+ * compiled when first used and released by {@link #close()}.
+ */
+class PetStatements {
+
+    private static final String LOG_TAG = PetStatements.class.getSimpleName();
+
+    /** Columns bound by the statements, in the order of their parameters */
+    private static final String[] COLUMNS = new String[]{
+            PetsContract.PetEntry.COLUMN_NAME,
+            PetsContract.PetEntry.COLUMN_BREED,
+            PetsContract.PetEntry.COLUMN_GENDER,
+            PetsContract.PetEntry.COLUMN_WEIGHT};
+
+    static final String SQL_INSERT = "INSERT INTO " + PetsContract.PetEntry.TABLE_NAME + " (" +
+            PetsContract.PetEntry.COLUMN_NAME + ", " +
+            PetsContract.PetEntry.COLUMN_BREED + ", " +
+            PetsContract.PetEntry.COLUMN_GENDER + ", " +
+            PetsContract.PetEntry.COLUMN_WEIGHT + ") VALUES (?, ?, ?, ?)";
+
+    private static final String SQL_UPDATE_BY_ID = "UPDATE " + PetsContract.PetEntry.TABLE_NAME +
+            " SET " + PetsContract.PetEntry.COLUMN_NAME + " = ?, " +
+            PetsContract.PetEntry.COLUMN_BREED + " = ?, " +
+            PetsContract.PetEntry.COLUMN_GENDER + " = ?, " +
+            PetsContract.PetEntry.COLUMN_WEIGHT + " = ? WHERE " +
+            PetsContract.PetEntry._ID + " = ? AND " + PetDbHelper.SELECTION_NOT_DELETED;
+
+    private static final String SQL_DELETE_BY_ID = "UPDATE " + PetsContract.PetEntry.TABLE_NAME +
+            " SET " + PetDbHelper.COLUMN_DELETED + " = 1 WHERE " +
+            PetsContract.PetEntry._ID + " = ? AND " + PetDbHelper.SELECTION_NOT_DELETED;
+
+    // Moves the watermark past the last pet, however many pets there are
+    private static final String SQL_DELETE_ALL = "UPDATE " + PetDbHelper.PURGE_TABLE_NAME +
+            " SET " + PetDbHelper.COLUMN_DELETED_THROUGH_ID + " = (SELECT IFNULL(MAX(" +
+            PetsContract.PetEntry._ID + "), 0) FROM " + PetsContract.PetEntry.TABLE_NAME + ")";
+
+    private static final String SQL_COUNT = "SELECT COUNT(*) FROM " + PetDbHelper.VISIBLE_PETS_VIEW;
+
+    private final SQLiteOpenHelper mDbHelper;
+
+    /** Database the statements were compiled for, they are compiled again if it changes */
+    private SQLiteDatabase mDatabase;
+    private SQLiteStatement mInsert;
+    private SQLiteStatement mUpdateById;
+    private SQLiteStatement mDeleteById;
+    private SQLiteStatement mDeleteAll;
+
+    /** Guards the count statement, which is compiled apart from the write statements */
+    private final Object mCountLock = new Object();
+    private SQLiteDatabase mCountDatabase;
+    private SQLiteStatement mCount;
+
+    PetStatements(SQLiteOpenHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    /**
+     * Binds the pet to the first parameters of a statement compiled from {@link #SQL_INSERT}
+     * or the update.
+     */
+    static void bindPet(SQLiteStatement statement, Pet pet) {
+        bindString(statement, 1, pet.getName());
+        bindString(statement, 2, pet.getBreed());
+        statement.bindLong(3, pet.getGender());
+        statement.bindLong(4, pet.getWeight());
+    }
+
+    /**
+     * Binds the values read by an import to the first parameters of a statement compiled from
+     * {@link #SQL_INSERT}, binding null for the columns missing from the values.
+     */
+    static void bindValues(SQLiteStatement statement, ContentValues values) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            Object value = values.get(COLUMNS[i]);
+            if (value instanceof Number) {
+                statement.bindLong(i + 1, ((Number) value).longValue());
+            } else {
+                bindString(statement, i + 1, value == null ? null : value.toString());
+            }
+        }
+    }
+
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * Inserts the pet. Returns the _ID of the new pet, or -1 if the insert failed.
+     */
+    long insert(Pet pet) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        database.beginTransactionNonExclusive();
+        try {
+            long id;
+            synchronized (this) {
+                compileStatements(database);
+                bindPet(mInsert, pet);
+                try {
+                    id = mInsert.executeInsert();
+                } catch (SQLException e) {
+                    // The same as SQLiteDatabase.insert, which logs and returns -1
+                    Log.e(LOG_TAG, "Error inserting " + pet.getName(), e);
+                    id = -1;
+                }
+                mInsert.clearBindings();
+            }
+            database.setTransactionSuccessful();
+            return id;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Updates the pet with the given _ID with the attributes of {@code pet}. Returns the number
+     * of rows updated.
+     */
+    int updateById(long id, Pet pet) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        database.beginTransactionNonExclusive();
+        try {
+            int rows;
+            synchronized (this) {
+                compileStatements(database);
+                bindPet(mUpdateById, pet);
+                mUpdateById.bindLong(COLUMNS.length + 1, id);
+                rows = mUpdateById.executeUpdateDelete();
+                mUpdateById.clearBindings();
+            }
+            database.setTransactionSuccessful();
+            return rows;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Marks the pet with the given _ID as deleted. Returns the number of pets deleted.
+     */
+    int deleteById(long id) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        database.beginTransactionNonExclusive();
+        try {
+            int rows;
+            synchronized (this) {
+                compileStatements(database);
+                mDeleteById.bindLong(1, id);
+                rows = mDeleteById.executeUpdateDelete();
+                mDeleteById.clearBindings();
+            }
+            database.setTransactionSuccessful();
+            return rows;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Deletes every pet by moving the purge watermark, without touching their rows. Returns
+     * the number of pets deleted.
+     */
+    int deleteAll() {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        database.beginTransactionNonExclusive();
+        try {
+            // Counted inside the transaction, so no pet can be inserted in between
+            int rows = (int) count();
+            synchronized (this) {
+                compileStatements(database);
+                mDeleteAll.executeUpdateDelete();
+            }
+            database.setTransactionSuccessful();
+            return rows;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Returns the number of pets that haven't been deleted.
+     */
+    long count() {
+        SQLiteDatabase database = mDbHelper.getReadableDatabase();
+        if (database.inTransaction()) {
+            // This thread holds the connection, waiting for the lock could deadlock with a
+            // thread holding the lock and waiting for the connection
+            return DatabaseUtils.longForQuery(database, SQL_COUNT, null);
+        }
+        synchronized (mCountLock) {
+            if (database != mCountDatabase) {
+                if (mCount != null) {
+                    mCount.close();
+                }
+                mCount = database.compileStatement(SQL_COUNT);
+                mCountDatabase = database;
+            }
+            return mCount.simpleQueryForLong();
+        }
+    }
+
+    /**
+     * Releases the compiled statements. They are compiled again if used afterwards.
+     */
+    void close() {
+        synchronized (this) {
+            if (mDatabase != null) {
+                closeStatements();
+                mDatabase = null;
+            }
+        }
+        synchronized (mCountLock) {
+            if (mCount != null) {
+                mCount.close();
+                mCount = null;
+                mCountDatabase = null;
+            }
+        }
+    }
+
+    private void compileStatements(SQLiteDatabase database) {
+        if (database == mDatabase) {
+            return;
+        }
+        if (mDatabase != null) {
+            closeStatements();
+        }
+        mInsert = database.compileStatement(SQL_INSERT);
+        mUpdateById = database.compileStatement(SQL_UPDATE_BY_ID);
+        mDeleteById = database.compileStatement(SQL_DELETE_BY_ID);
+        mDeleteAll = database.compileStatement(SQL_DELETE_ALL);
+        mDatabase = database;
+    }
+
+    private void closeStatements() {
+        mInsert.close();
+        mUpdateById.close();
+        mDeleteById.close();
+        mDeleteAll.close();
+    }
+}
@@ -0,0 +1,387 @@
+package com.example.android.pets.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import com.example.android.pets.data.PetSyncProtocol.Change;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the pets of this device in sync with a server shared by the devices of a shelter,
+ * sending only what changed. Once the first sync is asked for, triggers of
+ * {@link PetDbHelper} write the last local change of every pet to the outbox table; a push
+ * sends the changes waiting in the outbox and removes them once the server has taken them.
+ * A pull asks the server for the changes of the other devices after the last version it
+ * returned, the high-water mark, and applies them with the outbox triggers turned off so they
+ * aren't sent back.
+ * <p>
+ * Pets are known to the server by their sync id, as every device numbers its rows itself.
+ * Both directions use gzipped JSON on the changes path of the server:
+ * <ul>
+ * <li>POST changes with {"device": id, "changes": [change, ...]}</li>
+ * <li>GET changes?since=version&amp;device=id returning {"version": version, "more": boolean,
+ * "changes": [change, ...]}</li>
+ * </ul>
+ * where a change is {"sync_id": id, "op": "upsert", "name": ..., "breed": ..., "gender": ...,
+ * "weight": ...} or {"sync_id": id, "op": "delete"}. The last change a server took wins. The
+ * SQL and the JSON are in {@link PetSyncProtocol}, which the benchmark module runs against a
+ * local server.
+ */
+class PetSyncEngine implements Runnable {
+
+    private static final String LOG_TAG = PetSyncEngine.class.getSimpleName();
+
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String GZIP = "gzip";
+
+    private final SQLiteOpenHelper mDbHelper;
+    private final PetProviderStats mStats;
+
+    /** Run after pulled changes have been committed */
+    private final Runnable mOnRemoteChange;
+
+    /** Server of the last sync asked for, nothing is pushed before the first one */
+    private volatile String mServerUrl;
+
+    /** Set while a sync is waiting to run, and when that sync also has to pull */
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+    private final AtomicBoolean mPullRequested = new AtomicBoolean();
+
+    PetSyncEngine(SQLiteOpenHelper dbHelper, PetProviderStats stats, Runnable onRemoteChange) {
+        mDbHelper = dbHelper;
+        mStats = stats;
+        mOnRemoteChange = onRemoteChange;
+    }
+
+    /**
+     * Schedules a push of the local changes and a pull of the remote ones with the given
+     * server. Local changes made afterwards are pushed to it as they are written.
+     */
+    void requestSync(String serverUrl) {
+        mServerUrl = serverUrl;
+        mPullRequested.set(true);
+        schedule();
+    }
+
+    /**
+     * Schedules a push of the local changes, unless no sync was asked for yet.
+     */
+    void schedulePush() {
+        if (mServerUrl != null) {
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        if (mScheduled.compareAndSet(false, true)) {
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        // Changes written from now on need another push
+        mScheduled.set(false);
+        try {
+            sync(mServerUrl, mPullRequested.getAndSet(false));
+        } catch (IOException | RuntimeException e) {
+            // The outbox keeps what wasn't pushed and the high-water mark what wasn't pulled,
+            // so the next sync carries on from there
+            Log.e(LOG_TAG, "Failed to sync with " + mServerUrl, e);
+        }
+    }
+
+    /**
+     * Pushes the changes waiting in the outbox and, if asked to, pulls the remote changes.
+     * Only one sync runs at a time.
+     */
+    synchronized void sync(String serverUrl, boolean pull) throws IOException {
+        long start = System.nanoTime();
+        Uri changesUri = Uri.parse(serverUrl).buildUpon()
+                .appendPath(PetSyncProtocol.PATH_CHANGES).build();
+        String deviceId = DatabaseUtils.stringForQuery(mDbHelper.getReadableDatabase(),
+                PetSyncProtocol.SQL_READ_DEVICE_ID, null);
+
+        enableOutbox();
+        int rows = push(changesUri, deviceId);
+        if (pull) {
+            rows += pull(changesUri, deviceId);
+        }
+        mStats.record(PetProviderStats.OPERATION_SYNC, PetsContract.PATH_PETS,
+                System.nanoTime() - start, rows, -1);
+    }
+
+    /**
+     * Turns on the outbox triggers the first time a sync runs, giving every pet its sync id
+     * and filling the outbox with them. Until then no change is written to it, so a device
+     * that never syncs keeps it empty and its inserts run no trigger.
+     */
+    private void enableOutbox() {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        database.beginTransactionNonExclusive();
+        SQLiteStatement enable = database.compileStatement(PetSyncProtocol.SQL_ENABLE_OUTBOX);
+        try {
+            if (enable.executeUpdateDelete() > 0) {
+                database.execSQL(PetSyncProtocol.SQL_ASSIGN_SYNC_IDS);
+                database.execSQL(PetSyncProtocol.SQL_FILL_OUTBOX);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            enable.close();
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Sends the outbox a batch at a time, removing every batch the server took. Several
+     * changes to a pet in a batch are sent as its state now. Returns the changes sent.
+     */
+    private int push(Uri changesUri, String deviceId) throws IOException {
+        int pushed = 0;
+        while (true) {
+            Map<String, Change> changes = new LinkedHashMap<>();
+            long lastOutboxId = readOutbox(changes);
+            if (changes.isEmpty()) {
+                return pushed;
+            }
+
+            byte[] body = gzip(PetSyncProtocol.writePush(deviceId, changes.values()));
+            HttpURLConnection connection = openConnection(changesUri);
+            try {
+                connection.setRequestMethod("POST");
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(body.length);
+                connection.setRequestProperty("Content-Type", "application/json");
+                connection.setRequestProperty("Content-Encoding", GZIP);
+                OutputStream out = connection.getOutputStream();
+                try {
+                    out.write(body);
+                } finally {
+                    out.close();
+                }
+                checkResponse(connection);
+            } finally {
+                connection.disconnect();
+            }
+
+            mDbHelper.getWritableDatabase().execSQL(PetSyncProtocol.SQL_DELETE_OUTBOX,
+                    new Object[]{lastOutboxId});
+            pushed += changes.size();
+        }
+    }
+
+    /**
+     * Reads the oldest batch of the outbox into the given map, by sync id, and returns the _ID
+     * of the last outbox row read.
+     */
+    private long readOutbox(Map<String, Change> changes) {
+        Cursor cursor = mDbHelper.getReadableDatabase().rawQuery(
+                PetSyncProtocol.SQL_READ_OUTBOX, null);
+        try {
+            long lastOutboxId = 0;
+            while (cursor.moveToNext()) {
+                lastOutboxId = cursor.getLong(0);
+                // A pet deleted since it was changed is sent as deleted
+                Change change = cursor.isNull(3) ? Change.delete(cursor.getString(1))
+                        : Change.upsert(cursor.getString(1), cursor.getString(4),
+                        cursor.getString(5), cursor.isNull(6) ? null : cursor.getInt(6),
+                        cursor.isNull(7) ? null : cursor.getInt(7));
+                // Only the last change of a pet counts, sent where it was last changed
+                changes.remove(change.syncId);
+                changes.put(change.syncId, change);
+            }
+            return lastOutboxId;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Asks the server for the changes after the high-water mark until it has no more, and
+     * applies every response in a transaction with the new high-water mark. Returns the
+     * changes applied.
+     */
+    private int pull(Uri changesUri, String deviceId) throws IOException {
+        int pulled = 0;
+        boolean more = true;
+        while (more) {
+            long since = DatabaseUtils.longForQuery(mDbHelper.getReadableDatabase(),
+                    PetSyncProtocol.SQL_READ_REMOTE_VERSION, null);
+            Uri uri = changesUri.buildUpon()
+                    .appendQueryParameter(PetSyncProtocol.PARAM_SINCE, String.valueOf(since))
+                    .appendQueryParameter(PetSyncProtocol.PARAM_DEVICE, deviceId)
+                    .build();
+
+            PetSyncProtocol.Pull response;
+            HttpURLConnection connection = openConnection(uri);
+            try {
+                connection.setRequestProperty("Accept-Encoding", GZIP);
+                checkResponse(connection);
+
+                InputStream in = connection.getInputStream();
+                if (GZIP.equalsIgnoreCase(connection.getContentEncoding())) {
+                    in = new GZIPInputStream(in);
+                }
+                try {
+                    response = PetSyncProtocol.readPull(new String(readFully(in), UTF_8), since);
+                } finally {
+                    in.close();
+                }
+            } finally {
+                connection.disconnect();
+            }
+
+            more = response.more;
+            long version = response.version;
+            if (version <= since && more) {
+                throw new IOException("Sync server returned no progress after " + since);
+            }
+            pulled += apply(response.changes, version);
+        }
+
+        if (pulled > 0) {
+            mOnRemoteChange.run();
+        }
+        return pulled;
+    }
+
+    /**
+     * Applies the remote changes and moves the high-water mark to the given version in a
+     * single transaction, with the outbox triggers turned off. Invalid changes are skipped.
+     * Returns the changes applied.
+     */
+    private int apply(List<Change> changes, long version) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        int applied = 0;
+        database.beginTransactionNonExclusive();
+        SQLiteStatement update = database.compileStatement(PetSyncProtocol.SQL_UPDATE_REMOTE);
+        SQLiteStatement insert = database.compileStatement(PetSyncProtocol.SQL_INSERT_REMOTE);
+        SQLiteStatement delete = database.compileStatement(PetSyncProtocol.SQL_DELETE_REMOTE);
+        try {
+            database.execSQL(PetSyncProtocol.SQL_START_APPLYING);
+            for (Change change : changes) {
+                if (change.syncId == null) {
+                    Log.e(LOG_TAG, "Skipped a remote change without a sync id");
+                    continue;
+                }
+                if (change.isDelete()) {
+                    delete.bindString(1, change.syncId);
+                    applied += delete.executeUpdateDelete();
+                    continue;
+                }
+                try {
+                    PetValidator.validate(toContentValues(change), true);
+                } catch (IllegalArgumentException e) {
+                    Log.e(LOG_TAG, "Skipped invalid remote pet " + change.syncId, e);
+                    continue;
+                }
+
+                bind(update, change);
+                update.bindString(5, change.syncId);
+                int rows = update.executeUpdateDelete();
+                if (rows == 0) {
+                    // A pet this device hasn't seen yet. One it deleted stays deleted
+                    bind(insert, change);
+                    insert.bindString(5, change.syncId);
+                    insert.bindString(6, change.syncId);
+                    rows = insert.executeUpdateDelete();
+                }
+                applied += rows;
+            }
+            database.execSQL(PetSyncProtocol.SQL_FINISH_APPLYING, new Object[]{version});
+            database.setTransactionSuccessful();
+        } finally {
+            update.close();
+            insert.close();
+            delete.close();
+            database.endTransaction();
+        }
+        return applied;
+    }
+
+    private static HttpURLConnection openConnection(Uri uri) throws IOException {
+        HttpURLConnection connection =
+                (HttpURLConnection) new URL(uri.toString()).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        return connection;
+    }
+
+    private static void checkResponse(HttpURLConnection connection) throws IOException {
+        int code = connection.getResponseCode();
+        if (code < 200 || code >= 300) {
+            throw new IOException("Sync server returned " + code + " for " + connection.getURL());
+        }
+    }
+
+    private static byte[] gzip(String json) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = new GZIPOutputStream(bytes);
+        try {
+            out.write(json.getBytes(UTF_8));
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ContentValues toContentValues(Change change) {
+        ContentValues values = new ContentValues();
+        values.put(PetsContract.PetEntry.COLUMN_NAME, change.name);
+        values.put(PetsContract.PetEntry.COLUMN_BREED, change.breed);
+        values.put(PetsContract.PetEntry.COLUMN_GENDER, change.gender);
+        values.put(PetsContract.PetEntry.COLUMN_WEIGHT, change.weight);
+        return values;
+    }
+
+    /**
+     * Binds the name, breed, gender and weight of the change to the first four parameters.
+     */
+    private static void bind(SQLiteStatement statement, Change change) {
+        statement.bindString(1, change.name);
+        statement.bindString(2, change.breed);
+        if (change.gender == null) {
+            statement.bindNull(3);
+        } else {
+            statement.bindLong(3, change.gender);
+        }
+        if (change.weight == null) {
+            statement.bindNull(4);
+        } else {
+            statement.bindLong(4, change.weight);
+        }
+    }
+}
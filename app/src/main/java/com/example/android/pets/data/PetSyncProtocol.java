@@ -0,0 +1,277 @@
+package com.example.android.pets.data;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The SQL and the wire format of {@link PetSyncEngine}: the sync tables, the statements that
+ * read the outbox and apply pulled changes, and the JSON sent to and read from the server.
+ * <p>
+ * It has no Android dependencies, the JSON is written and read with org.json, so the benchmark
+ * module compiles it as it is and runs it against a local server standing in for the sync
+ * server. The columns of the pets are repeated here, as PetsContract can't be loaded outside
+ * Android.
+ */
+public final class PetSyncProtocol {
+
+    //Changes of the pets waiting to be pushed, written by the triggers of PetDbHelper
+    public static final String OUTBOX_TABLE_NAME = "pets_outbox";
+    public static final String COLUMN_SYNC_ID = "sync_id";
+    public static final String COLUMN_PET_ID = "pet_id";
+    public static final String COLUMN_OPERATION = "operation";
+
+    //Single row table with the sync id of this device, the version of the last changes pulled,
+    //whether pulled changes are being applied and whether the triggers write the outbox, which
+    //they only do once a sync was asked for
+    public static final String SYNC_TABLE_NAME = "pets_sync";
+    public static final String COLUMN_DEVICE_ID = "device_id";
+    public static final String COLUMN_REMOTE_VERSION = "remote_version";
+    public static final String COLUMN_APPLYING = "applying";
+    public static final String COLUMN_OUTBOX_ENABLED = "outbox_enabled";
+
+    public static final String OPERATION_UPSERT = "upsert";
+    public static final String OPERATION_DELETE = "delete";
+
+    //Path of the changes on the server and the query parameters of a pull
+    public static final String PATH_CHANGES = "changes";
+    public static final String PARAM_SINCE = "since";
+    public static final String PARAM_DEVICE = "device";
+
+    /** Outbox rows read by each push request */
+    public static final int BATCH_SIZE = 500;
+
+    //The columns of the pets, the same as PetsContract.PetEntry and PetDbHelper
+    private static final String TABLE_NAME = "pets";
+    private static final String VISIBLE_PETS_VIEW = "visible_pets";
+    private static final String _ID = "_id";
+    private static final String COLUMN_NAME = "name";
+    private static final String COLUMN_BREED = "breed";
+    private static final String COLUMN_GENDER = "gender";
+    private static final String COLUMN_WEIGHT = "weight";
+    private static final String COLUMN_DELETED = "deleted";
+
+    private static final String KEY_DEVICE = "device";
+    private static final String KEY_CHANGES = "changes";
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_MORE = "more";
+    private static final String KEY_OPERATION = "op";
+
+    public static final String SQL_READ_DEVICE_ID = "SELECT " + COLUMN_DEVICE_ID + " FROM " +
+            SYNC_TABLE_NAME;
+
+    /** The high-water mark, the version of the last changes pulled */
+    public static final String SQL_READ_REMOTE_VERSION = "SELECT " + COLUMN_REMOTE_VERSION +
+            " FROM " + SYNC_TABLE_NAME;
+
+    /**
+     * Turns on the outbox triggers. Changes one row only the first time, when the caller gives
+     * the pets their sync ids with {@link #SQL_ASSIGN_SYNC_IDS} and fills the outbox with
+     * {@link #SQL_FILL_OUTBOX} in the same transaction.
+     */
+    public static final String SQL_ENABLE_OUTBOX = "UPDATE " + SYNC_TABLE_NAME + " SET " +
+            COLUMN_OUTBOX_ENABLED + " = 1 WHERE " + COLUMN_OUTBOX_ENABLED + " = 0";
+
+    /** Gives a random sync id to the pets stored before the first sync, which have none */
+    public static final String SQL_ASSIGN_SYNC_IDS = "UPDATE " + TABLE_NAME + " SET " +
+            COLUMN_SYNC_ID + " = lower(hex(randomblob(16))) WHERE " + COLUMN_SYNC_ID + " IS NULL";
+
+    /** Every pet is pushed once by the first sync */
+    public static final String SQL_FILL_OUTBOX = "INSERT INTO " + OUTBOX_TABLE_NAME + " (" +
+            COLUMN_SYNC_ID + ", " + COLUMN_PET_ID + ", " + COLUMN_OPERATION + ") SELECT p." +
+            COLUMN_SYNC_ID + ", v." + _ID + ", '" + OPERATION_UPSERT + "' FROM " +
+            VISIBLE_PETS_VIEW + " v JOIN " + TABLE_NAME + " p ON p." + _ID + " = v." + _ID;
+
+    /**
+     * Oldest outbox rows with the pet as it is now, or without it if it was deleted since:
+     * the _ID of the row, the sync id, the operation, then the _ID, name, breed, gender and
+     * weight of the pet.
+     */
+    public static final String SQL_READ_OUTBOX = "SELECT o." + _ID + ", o." + COLUMN_SYNC_ID +
+            ", o." + COLUMN_OPERATION + ", v." + _ID + ", v." + COLUMN_NAME + ", v." +
+            COLUMN_BREED + ", v." + COLUMN_GENDER + ", v." + COLUMN_WEIGHT + " FROM " +
+            OUTBOX_TABLE_NAME + " o LEFT JOIN " + VISIBLE_PETS_VIEW + " v ON v." + _ID +
+            " = o." + COLUMN_PET_ID + " ORDER BY o." + _ID + " LIMIT " + BATCH_SIZE;
+
+    /** Removes the outbox rows up to the last one the server took */
+    public static final String SQL_DELETE_OUTBOX = "DELETE FROM " + OUTBOX_TABLE_NAME +
+            " WHERE " + _ID + " <= ?";
+
+    /** Turns the outbox triggers off while pulled changes are applied */
+    public static final String SQL_START_APPLYING = "UPDATE " + SYNC_TABLE_NAME + " SET " +
+            COLUMN_APPLYING + " = 1";
+
+    /** Turns the outbox triggers on again and moves the high-water mark */
+    public static final String SQL_FINISH_APPLYING = "UPDATE " + SYNC_TABLE_NAME + " SET " +
+            COLUMN_APPLYING + " = 0, " + COLUMN_REMOTE_VERSION + " = ?";
+
+    /** Binds the name, breed, gender and weight, then the sync id */
+    public static final String SQL_UPDATE_REMOTE = "UPDATE " + TABLE_NAME + " SET " +
+            COLUMN_NAME + " = ?, " + COLUMN_BREED + " = ?, " + COLUMN_GENDER + " = ?, " +
+            COLUMN_WEIGHT + " = ? WHERE " + COLUMN_SYNC_ID + " = ? AND " + COLUMN_DELETED +
+            " = 0";
+
+    /**
+     * Inserts a remote pet unless this device already has it, deleted or not. Binds the name,
+     * breed, gender and weight, then the sync id twice.
+     */
+    public static final String SQL_INSERT_REMOTE = "INSERT INTO " + TABLE_NAME + " (" +
+            COLUMN_NAME + ", " + COLUMN_BREED + ", " + COLUMN_GENDER + ", " + COLUMN_WEIGHT +
+            ", " + COLUMN_SYNC_ID + ") SELECT ?, ?, ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM " +
+            TABLE_NAME + " WHERE " + COLUMN_SYNC_ID + " = ?)";
+
+    /** Binds the sync id */
+    public static final String SQL_DELETE_REMOTE = "UPDATE " + TABLE_NAME + " SET " +
+            COLUMN_DELETED + " = 1 WHERE " + COLUMN_SYNC_ID + " = ? AND " + COLUMN_DELETED +
+            " = 0";
+
+    private PetSyncProtocol() {
+    }
+
+    /**
+     * Returns the body of a push: {"device": id, "changes": [change, ...]}.
+     */
+    public static String writePush(String deviceId, Collection<Change> changes) {
+        try {
+            JSONStringer writer = new JSONStringer();
+            writer.object();
+            writer.key(KEY_DEVICE).value(deviceId);
+            writer.key(KEY_CHANGES);
+            writeChanges(writer, changes);
+            writer.endObject();
+            return writer.toString();
+        } catch (JSONException e) {
+            // Only thrown for a misplaced key or value, which the code above never writes
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the body of the response to a pull: {"version": version, "more": boolean,
+     * "changes": [change, ...]}. The server writes it, the engine only reads it.
+     */
+    public static String writePull(long version, boolean more, Collection<Change> changes) {
+        try {
+            JSONStringer writer = new JSONStringer();
+            writer.object();
+            writer.key(KEY_VERSION).value(version);
+            writer.key(KEY_MORE).value(more);
+            writer.key(KEY_CHANGES);
+            writeChanges(writer, changes);
+            writer.endObject();
+            return writer.toString();
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the response to a pull. A missing version is the given one, the one asked for.
+     */
+    public static Pull readPull(String json, long since) throws IOException {
+        try {
+            JSONObject response = new JSONObject(json);
+            JSONArray array = response.optJSONArray(KEY_CHANGES);
+            List<Change> changes = new ArrayList<>(array == null ? 0 : array.length());
+            for (int i = 0; array != null && i < array.length(); i++) {
+                changes.add(readChange(array.getJSONObject(i)));
+            }
+            return new Pull(response.optLong(KEY_VERSION, since),
+                    response.optBoolean(KEY_MORE, false), changes);
+        } catch (JSONException e) {
+            throw new IOException("Invalid response of the sync server", e);
+        }
+    }
+
+    private static void writeChanges(JSONStringer writer, Collection<Change> changes)
+            throws JSONException {
+        writer.array();
+        for (Change change : changes) {
+            writer.object();
+            writer.key(COLUMN_SYNC_ID).value(change.syncId);
+            writer.key(KEY_OPERATION).value(change.operation);
+            if (OPERATION_UPSERT.equals(change.operation)) {
+                writer.key(COLUMN_NAME).value(change.name);
+                writer.key(COLUMN_BREED).value(change.breed);
+                writer.key(COLUMN_GENDER).value(change.gender);
+                writer.key(COLUMN_WEIGHT).value(change.weight);
+            }
+            writer.endObject();
+        }
+        writer.endArray();
+    }
+
+    private static Change readChange(JSONObject object) throws JSONException {
+        return new Change(getString(object, COLUMN_SYNC_ID), getString(object, KEY_OPERATION),
+                getString(object, COLUMN_NAME), getString(object, COLUMN_BREED),
+                getInteger(object, COLUMN_GENDER), getInteger(object, COLUMN_WEIGHT));
+    }
+
+    private static String getString(JSONObject object, String key) throws JSONException {
+        return object.isNull(key) ? null : object.getString(key);
+    }
+
+    private static Integer getInteger(JSONObject object, String key) throws JSONException {
+        return object.isNull(key) ? null : object.getInt(key);
+    }
+
+    /**
+     * A change of a pet as it travels to and from the server. An upsert carries the pet, a
+     * delete only its sync id.
+     */
+    public static final class Change {
+
+        public final String syncId;
+        public final String operation;
+        public final String name;
+        public final String breed;
+        public final Integer gender;
+        public final Integer weight;
+
+        public Change(String syncId, String operation, String name, String breed,
+                      Integer gender, Integer weight) {
+            this.syncId = syncId;
+            this.operation = operation;
+            this.name = name;
+            this.breed = breed;
+            this.gender = gender;
+            this.weight = weight;
+        }
+
+        public static Change upsert(String syncId, String name, String breed, Integer gender,
+                                    Integer weight) {
+            return new Change(syncId, OPERATION_UPSERT, name, breed, gender, weight);
+        }
+
+        public static Change delete(String syncId) {
+            return new Change(syncId, OPERATION_DELETE, null, null, null, null);
+        }
+
+        public boolean isDelete() {
+            return OPERATION_DELETE.equals(operation);
+        }
+    }
+
+    /**
+     * A response to a pull: the changes, the version to pull the next ones after and whether
+     * the server has more.
+     */
+    public static final class Pull {
+
+        public final long version;
+        public final boolean more;
+        public final List<Change> changes;
+
+        Pull(long version, boolean more, List<Change> changes) {
+            this.version = version;
+            this.more = more;
+            this.changes = changes;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.android.pets.data;
+
+import android.support.v4.util.LongSparseArray;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The thumbnails of every pet in a single file, read through a memory map so loading a
+ * thumbnail is a copy out of the page cache instead of opening and reading a file per pet.
+ * <p>
+ * The file is a log of records, each one the _ID of a pet, the length of its thumbnail and the
+ * thumbnail itself. A new thumbnail of a pet is appended and replaces the older one, and a
+ * record of length 0 removes it. The _ID of every live record and where it starts are kept in
+ * memory, read once when the pack is opened. Once the replaced and removed records take more
+ * space than the live ones the file is rewritten with the live records only.
+ */
+class PetThumbnailPack {
+
+    /** Bytes of the header of a record: the _ID of the pet and the length of the thumbnail */
+    private static final int HEADER_SIZE = 8 + 4;
+
+    /** The file is never rewritten while it is smaller than this */
+    private static final long MIN_REWRITE_SIZE = 1024 * 1024;
+
+    private final File mFile;
+    private RandomAccessFile mRandomAccessFile;
+    private FileChannel mChannel;
+
+    /** Map of the whole file, mapped again when it is read past its end after an append */
+    private MappedByteBuffer mMap;
+
+    /** Offset of the live record of every pet with a thumbnail, by _ID */
+    private final LongSparseArray<Integer> mOffsets = new LongSparseArray<>();
+
+    /** Bytes taken by replaced and removed records */
+    private long mDeadBytes;
+
+    PetThumbnailPack(File file) throws IOException {
+        mFile = file;
+        open();
+    }
+
+    /**
+     * Returns the thumbnail of the pet with the given _ID, or null if it has none.
+     */
+    byte[] read(long id) throws IOException {
+        ByteBuffer map;
+        int offset;
+        synchronized (this) {
+            Integer recordOffset = mOffsets.get(id);
+            if (recordOffset == null) {
+                return null;
+            }
+            offset = recordOffset;
+            if (mMap == null || offset + HEADER_SIZE > mMap.limit()
+                    || offset + HEADER_SIZE + mMap.getInt(offset + 8) > mMap.limit()) {
+                mMap = mChannel.map(FileChannel.MapMode.READ_ONLY, 0, mChannel.size());
+            }
+            // A duplicate has a position of its own, so the copy can be made without the lock
+            map = mMap.duplicate();
+        }
+        byte[] thumbnail = new byte[map.getInt(offset + 8)];
+        map.position(offset + HEADER_SIZE);
+        map.get(thumbnail);
+        return thumbnail;
+    }
+
+    /**
+     * Stores the thumbnail of the pet with the given _ID, replacing the one it had.
+     */
+    synchronized void write(long id, byte[] thumbnail) throws IOException {
+        int offset = append(id, thumbnail);
+        removeOffset(id);
+        mOffsets.put(id, offset);
+        rewriteIfWasteful();
+    }
+
+    /**
+     * Removes the thumbnail of the pet with the given _ID, if it has one.
+     */
+    synchronized void remove(long id) throws IOException {
+        if (mOffsets.get(id) == null) {
+            return;
+        }
+        append(id, new byte[0]);
+        mDeadBytes += HEADER_SIZE;
+        removeOffset(id);
+        rewriteIfWasteful();
+    }
+
+    synchronized void close() throws IOException {
+        mMap = null;
+        mRandomAccessFile.close();
+    }
+
+    /**
+     * Opens the file and reads the offsets of its records. A record cut short by a crash while
+     * it was being appended is dropped.
+     */
+    private void open() throws IOException {
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        mChannel = mRandomAccessFile.getChannel();
+        mOffsets.clear();
+        mDeadBytes = 0;
+
+        long size = mChannel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Thumbnail pack too large: " + size);
+        }
+        MappedByteBuffer map = mChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        int offset = 0;
+        while (offset + HEADER_SIZE <= size) {
+            long id = map.getLong(offset);
+            int length = map.getInt(offset + 8);
+            if (length < 0 || offset + HEADER_SIZE + length > size) {
+                break;
+            }
+            removeOffset(id);
+            if (length > 0) {
+                mOffsets.put(id, offset);
+            } else {
+                mDeadBytes += HEADER_SIZE;
+            }
+            offset += HEADER_SIZE + length;
+        }
+        if (offset < size) {
+            mChannel.truncate(offset);
+            map = null;
+        }
+        mMap = map;
+    }
+
+    /**
+     * Appends a record at the end of the file and returns its offset.
+     */
+    private int append(long id, byte[] thumbnail) throws IOException {
+        long offset = mChannel.size();
+        if (offset + HEADER_SIZE + thumbnail.length > Integer.MAX_VALUE) {
+            throw new IOException("Thumbnail pack full");
+        }
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + thumbnail.length);
+        record.putLong(id).putInt(thumbnail.length).put(thumbnail);
+        record.flip();
+        while (record.hasRemaining()) {
+            mChannel.write(record, offset + record.position());
+        }
+        return (int) offset;
+    }
+
+    /**
+     * Forgets the live record of a pet, counting its bytes as dead.
+     */
+    private void removeOffset(long id) throws IOException {
+        Integer offset = mOffsets.get(id);
+        if (offset == null) {
+            return;
+        }
+        ByteBuffer length = ByteBuffer.allocate(4);
+        mChannel.read(length, offset + 8);
+        mDeadBytes += HEADER_SIZE + length.getInt(0);
+        mOffsets.remove(id);
+    }
+
+    /**
+     * Rewrites the file with its live records only once the dead records take most of it.
+     * The new file replaces the old one by a rename, so a crash leaves one or the other.
+     */
+    private void rewriteIfWasteful() throws IOException {
+        long size = mChannel.size();
+        if (size < MIN_REWRITE_SIZE || mDeadBytes * 2 < size) {
+            return;
+        }
+
+        File rewritten = new File(mFile.getPath() + ".tmp");
+        RandomAccessFile output = new RandomAccessFile(rewritten, "rw");
+        try {
+            FileChannel outputChannel = output.getChannel();
+            outputChannel.truncate(0);
+            for (int i = 0; i < mOffsets.size(); i++) {
+                long offset = mOffsets.valueAt(i);
+                ByteBuffer length = ByteBuffer.allocate(4);
+                mChannel.read(length, offset + 8);
+                mChannel.transferTo(offset, HEADER_SIZE + length.getInt(0), outputChannel);
+            }
+            outputChannel.force(false);
+        } finally {
+            output.close();
+        }
+
+        mRandomAccessFile.close();
+        boolean renamed = rewritten.renameTo(mFile);
+        // Open whichever file is in place, the old one is still whole if the rename failed
+        open();
+        if (!renamed) {
+            throw new IOException("Failed to replace " + mFile);
+        }
+    }
+}
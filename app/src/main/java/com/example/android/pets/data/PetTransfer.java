@@ -0,0 +1,349 @@
+package com.example.android.pets.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams the pets table out to and in from CSV or JSON lines, used by {@link PetProvider} to
+ * serve its export and import uris. Both directions work in chunks of a fixed number of rows,
+ * so memory use doesn't depend on the size of the table or of the file.
+ * <p>
+ * CSV files start with a header naming the columns. JSON lines files hold one object per line
+ * with the columns as keys. The _ID of the exported pets is written out, but imported pets
+ * always get a new _ID so they can't overwrite the pets already stored.
+ */
+final class PetTransfer {
+
+    /** Pets read by every query of an export */
+    private static final int EXPORT_CHUNK_SIZE = 1000;
+
+    /** Pets written by every transaction of an import */
+    private static final int IMPORT_CHUNK_SIZE = 1000;
+
+    private static final String[] COLUMNS = new String[]{
+            PetsContract.PetEntry._ID,
+            PetsContract.PetEntry.COLUMN_NAME,
+            PetsContract.PetEntry.COLUMN_BREED,
+            PetsContract.PetEntry.COLUMN_GENDER,
+            PetsContract.PetEntry.COLUMN_WEIGHT};
+
+    private PetTransfer() {
+    }
+
+    /**
+     * Returns true if the format is one of the formats of the contract.
+     */
+    static boolean isSupportedFormat(String format) {
+        return PetsContract.FORMAT_CSV.equals(format) || PetsContract.FORMAT_JSON_LINES.equals(format);
+    }
+
+    /**
+     * Writes every pet to {@code out} in the given format, in _ID order. The pets are read in
+     * keyset chunks, each one a short read of its own, so a long export never keeps a read
+     * transaction open and pets changed while it runs may or may not be included.
+     * Returns the number of pets written.
+     */
+    static int exportPets(SQLiteDatabase database, String format, Writer out) throws IOException {
+        RowWriter writer = PetsContract.FORMAT_CSV.equals(format)
+                ? new CsvRowWriter(out) : new JsonRowWriter(out);
+        writer.writeHeader();
+
+        int rows = 0;
+        long afterId = 0;
+        boolean endReached = false;
+        while (!endReached) {
+            Cursor cursor = database.query(PetDbHelper.VISIBLE_PETS_VIEW, COLUMNS,
+                    PetsContract.PetEntry._ID + ">?", new String[]{String.valueOf(afterId)},
+                    null, null, PetsContract.PetEntry._ID + " ASC",
+                    String.valueOf(EXPORT_CHUNK_SIZE));
+            try {
+                while (cursor.moveToNext()) {
+                    writer.writeRow(cursor);
+                    afterId = cursor.getLong(0);
+                    rows++;
+                }
+                endReached = cursor.getCount() < EXPORT_CHUNK_SIZE;
+            } finally {
+                cursor.close();
+            }
+        }
+        writer.flush();
+        return rows;
+    }
+
+    /**
+     * Reads pets from {@code in} in the given format and inserts them. The input is parsed one
+     * chunk at a time, and every chunk is checked and inserted in a transaction of its own, so
+     * the write lock is never held while waiting for more input. If a pet is invalid the import
+     * stops with an exception and the chunks before its own stay imported.
+     * Returns the number of pets inserted.
+     */
+    static int importPets(SQLiteDatabase database, String format, Reader in) throws IOException {
+        RowReader reader = PetsContract.FORMAT_CSV.equals(format)
+                ? new CsvRowReader(in) : new JsonRowReader(in);
+
+        // The readers only return the columns of the insert statement, and the import runs
+        // on a single thread, so one statement serves every pet
+        SQLiteStatement insert = database.compileStatement(PetStatements.SQL_INSERT);
+        try {
+            int rows = 0;
+            List<ContentValues> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+            while (true) {
+                chunk.clear();
+                ContentValues values;
+                while (chunk.size() < IMPORT_CHUNK_SIZE && (values = reader.read()) != null) {
+                    PetValidator.validate(values, true);
+                    chunk.add(values);
+                }
+                if (chunk.isEmpty()) {
+                    return rows;
+                }
+
+                database.beginTransactionNonExclusive();
+                try {
+                    for (ContentValues pet : chunk) {
+                        PetStatements.bindValues(insert, pet);
+                        insert.executeInsert();
+                    }
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+                rows += chunk.size();
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    private interface RowWriter {
+        void writeHeader() throws IOException;
+
+        /** Writes the current row of a cursor with the columns of {@link #COLUMNS} */
+        void writeRow(Cursor cursor) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    private interface RowReader {
+        /** Returns the values of the next pet, or null at the end of the input */
+        ContentValues read() throws IOException;
+    }
+
+    /**
+     * Writes CSV with {@link PetCsv}. Null values are written as empty fields.
+     */
+    private static class CsvRowWriter implements RowWriter {
+
+        private final Writer mOut;
+
+        CsvRowWriter(Writer out) {
+            mOut = out;
+        }
+
+        @Override
+        public void writeHeader() throws IOException {
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (i > 0) {
+                    mOut.write(',');
+                }
+                mOut.write(COLUMNS[i]);
+            }
+            mOut.write(PetCsv.LINE_END);
+        }
+
+        @Override
+        public void writeRow(Cursor cursor) throws IOException {
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (i > 0) {
+                    mOut.write(',');
+                }
+                if (!cursor.isNull(i)) {
+                    PetCsv.writeField(mOut, cursor.getString(i));
+                }
+            }
+            mOut.write(PetCsv.LINE_END);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            mOut.flush();
+        }
+    }
+
+    /**
+     * Reads the CSV written by {@link CsvRowWriter}. The header decides which field holds
+     * each column, unknown columns and the _ID are skipped, and empty fields are read as null
+     * except for the breed, which is required and read as an empty breed.
+     */
+    private static class CsvRowReader implements RowReader {
+
+        private final PetCsv.RecordReader mRecords;
+        private Map<String, Integer> mColumnIndexes;
+
+        CsvRowReader(Reader in) {
+            mRecords = new PetCsv.RecordReader(in);
+        }
+
+        @Override
+        public ContentValues read() throws IOException {
+            if (mColumnIndexes == null) {
+                List<String> header = mRecords.readRecord();
+                if (header == null) {
+                    return null;
+                }
+                mColumnIndexes = new HashMap<>();
+                for (int i = 0; i < header.size(); i++) {
+                    mColumnIndexes.put(header.get(i).trim(), i);
+                }
+            }
+
+            List<String> record = mRecords.readRecord();
+            if (record == null) {
+                return null;
+            }
+
+            ContentValues values = new ContentValues();
+            String name = getField(record, PetsContract.PetEntry.COLUMN_NAME);
+            if (name != null) {
+                values.put(PetsContract.PetEntry.COLUMN_NAME, name);
+            }
+            String breed = getField(record, PetsContract.PetEntry.COLUMN_BREED);
+            values.put(PetsContract.PetEntry.COLUMN_BREED, breed == null ? "" : breed);
+            putInteger(values, record, PetsContract.PetEntry.COLUMN_GENDER);
+            putInteger(values, record, PetsContract.PetEntry.COLUMN_WEIGHT);
+            return values;
+        }
+
+        private String getField(List<String> record, String column) {
+            Integer index = mColumnIndexes.get(column);
+            if (index == null || index >= record.size() || record.get(index).isEmpty()) {
+                return null;
+            }
+            return record.get(index);
+        }
+
+        private void putInteger(ContentValues values, List<String> record, String column) {
+            String value = getField(record, column);
+            if (value == null) {
+                return;
+            }
+            try {
+                values.put(column, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid " + column + " in record " +
+                        mRecords.getRecordNumber());
+            }
+        }
+    }
+
+    /**
+     * Writes one JSON object per line, with a key for every column and null for null values.
+     */
+    private static class JsonRowWriter implements RowWriter {
+
+        private final Writer mOut;
+        private final JsonWriter mWriter;
+
+        JsonRowWriter(Writer out) {
+            mOut = out;
+            mWriter = new JsonWriter(out);
+            // Lenient allows a top-level value per line instead of a single array
+            mWriter.setLenient(true);
+        }
+
+        @Override
+        public void writeHeader() {
+        }
+
+        @Override
+        public void writeRow(Cursor cursor) throws IOException {
+            mWriter.beginObject();
+            mWriter.name(PetsContract.PetEntry._ID).value(cursor.getLong(0));
+            mWriter.name(PetsContract.PetEntry.COLUMN_NAME).value(cursor.getString(1));
+            mWriter.name(PetsContract.PetEntry.COLUMN_BREED).value(cursor.getString(2));
+            writeInteger(cursor, 3, PetsContract.PetEntry.COLUMN_GENDER);
+            writeInteger(cursor, 4, PetsContract.PetEntry.COLUMN_WEIGHT);
+            mWriter.endObject();
+            mOut.write('\n');
+        }
+
+        private void writeInteger(Cursor cursor, int index, String column) throws IOException {
+            mWriter.name(column);
+            if (cursor.isNull(index)) {
+                mWriter.nullValue();
+            } else {
+                mWriter.value(cursor.getLong(index));
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            mWriter.flush();
+        }
+    }
+
+    /**
+     * Reads the JSON lines written by {@link JsonRowWriter}. Unknown keys and the _ID are
+     * skipped, and null values are read as missing.
+     */
+    private static class JsonRowReader implements RowReader {
+
+        private final JsonReader mReader;
+
+        JsonRowReader(Reader in) {
+            mReader = new JsonReader(in);
+            mReader.setLenient(true);
+        }
+
+        @Override
+        public ContentValues read() throws IOException {
+            if (mReader.peek() == JsonToken.END_DOCUMENT) {
+                return null;
+            }
+
+            ContentValues values = new ContentValues();
+            mReader.beginObject();
+            while (mReader.hasNext()) {
+                String name = mReader.nextName();
+                if (mReader.peek() == JsonToken.NULL) {
+                    mReader.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case PetsContract.PetEntry.COLUMN_NAME:
+                    case PetsContract.PetEntry.COLUMN_BREED:
+                        values.put(name, mReader.nextString());
+                        break;
+                    case PetsContract.PetEntry.COLUMN_GENDER:
+                    case PetsContract.PetEntry.COLUMN_WEIGHT:
+                        values.put(name, mReader.nextInt());
+                        break;
+                    default:
+                        mReader.skipValue();
+                        break;
+                }
+            }
+            mReader.endObject();
+
+            // The same as an empty CSV field, the breed is required but may be empty
+            if (values.getAsString(PetsContract.PetEntry.COLUMN_BREED) == null) {
+                values.put(PetsContract.PetEntry.COLUMN_BREED, "");
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.android.pets.data;
+
+import android.content.ContentValues;
+
+/**
+ * The rules a pet has to follow to be stored, shared by every path that writes pets. Each check
+ * throws an IllegalArgumentException describing the first attribute that is not valid.
+ */
+public final class PetValidator {
+
+    private PetValidator() {
+    }
+
+    /**
+     * Checks the pet attributes in the given values. For a new pet the name and breed are
+     * required, for an update only the attributes present in the values are checked.
+     */
+    public static void validate(ContentValues values, boolean isNewPet) {
+        if (isNewPet || values.containsKey(PetsContract.PetEntry.COLUMN_NAME)) {
+            checkName(values.getAsString(PetsContract.PetEntry.COLUMN_NAME));
+        }
+
+        if (isNewPet || values.containsKey(PetsContract.PetEntry.COLUMN_BREED)) {
+            checkBreed(values.getAsString(PetsContract.PetEntry.COLUMN_BREED));
+        }
+
+        //A pet may be stored without gender or weight
+        Integer gender = values.getAsInteger(PetsContract.PetEntry.COLUMN_GENDER);
+        if (gender != null) {
+            checkGender(gender);
+        }
+
+        Integer weight = values.getAsInteger(PetsContract.PetEntry.COLUMN_WEIGHT);
+        if (weight != null) {
+            checkWeight(weight);
+        }
+    }
+
+    private static void checkName(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Pet requires a name");
+        }
+    }
+
+    private static void checkBreed(String breed) {
+        if (breed == null) {
+            throw new IllegalArgumentException("Pet requires a breed");
+        }
+    }
+
+    static void checkGender(int gender) {
+        if (gender != PetsContract.PetEntry.GENDER_UNKNOWN
+                && gender != PetsContract.PetEntry.GENDER_MALE
+                && gender != PetsContract.PetEntry.GENDER_FEMALE) {
+            throw new IllegalArgumentException("Pet requires valid gender");
+        }
+    }
+
+    static void checkWeight(int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Pet requires a positive weight");
+        }
+    }
+}
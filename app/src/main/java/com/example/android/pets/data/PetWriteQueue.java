@@ -0,0 +1,225 @@
+package com.example.android.pets.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Collects the writes of concurrent callers and commits them together, in a single
+ * transaction of its {@link Committer}. A burst of small writes then pays for one commit
+ * instead of one per write. A batch is committed {@link #MAX_DELAY_MILLIS} after its first
+ * write, or as soon as it holds {@link #MAX_BATCH_SIZE} writes, and batches are committed one
+ * at a time in the order their writes were made.
+ * <p>
+ * Every write gets a future of its own result, and a listener if it was given one. If a write
+ * of a batch fails the batch is rolled back and its writes are committed one at a time, so
+ * only the failing write gets the exception.
+ * <p>
+ * It has no Android dependencies, so the benchmark module compiles it as it is.
+ * {@link PetRepository} commits its writes through it with PetProvider.applyBatch.
+ */
+public class PetWriteQueue<W, R> {
+
+    /** Longest time a write waits for others to join its batch */
+    public static final long MAX_DELAY_MILLIS = 5;
+
+    /** Writes that are committed at once without waiting for the delay */
+    public static final int MAX_BATCH_SIZE = 100;
+
+    /**
+     * Commits the writes of a batch.
+     */
+    public interface Committer<W, R> {
+
+        /**
+         * Commits the given writes in one transaction, all of them or none, and returns their
+         * results in the same order.
+         */
+        List<R> commit(List<W> writes) throws Exception;
+    }
+
+    /**
+     * Receives the result of a write on the thread of the queue.
+     */
+    public interface Listener<R> {
+
+        void onSuccess(R result);
+
+        void onFailure(Exception e);
+    }
+
+    private final Committer<W, R> mCommitter;
+    private final ScheduledExecutorService mExecutor;
+
+    /** Writes of the batch being collected, guarded by mLock */
+    private final Object mLock = new Object();
+    private List<PendingWrite<W, R>> mPending = new ArrayList<>();
+
+    private final Runnable mCommit = new Runnable() {
+        @Override
+        public void run() {
+            commitPending();
+        }
+    };
+
+    /**
+     * Creates a queue committing through {@code committer} on {@code executor}, which must run
+     * one task at a time.
+     */
+    public PetWriteQueue(Committer<W, R> committer, ScheduledExecutorService executor) {
+        mCommitter = committer;
+        mExecutor = executor;
+    }
+
+    /**
+     * Adds the write to the batch being collected.
+     */
+    public Future<R> enqueue(W write) {
+        return enqueue(write, null);
+    }
+
+    /**
+     * Adds the write to the batch being collected, and gives its result to {@code listener}
+     * once it is committed, or its exception if it failed.
+     */
+    public Future<R> enqueue(W write, Listener<R> listener) {
+        PendingWrite<W, R> pending = new PendingWrite<>(write, listener);
+        synchronized (mLock) {
+            mPending.add(pending);
+            if (mPending.size() == MAX_BATCH_SIZE) {
+                mExecutor.execute(mCommit);
+            } else if (mPending.size() == 1) {
+                mExecutor.schedule(mCommit, MAX_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Commits the writes collected so far, on the executor. A commit scheduled for a batch that
+     * was already committed because it was full commits the next batch early.
+     */
+    private void commitPending() {
+        List<PendingWrite<W, R>> batch;
+        synchronized (mLock) {
+            if (mPending.isEmpty()) {
+                return;
+            }
+            batch = mPending;
+            mPending = new ArrayList<>();
+        }
+
+        List<W> writes = new ArrayList<>(batch.size());
+        for (PendingWrite<W, R> pending : batch) {
+            writes.add(pending.mWrite);
+        }
+        List<R> results;
+        try {
+            results = mCommitter.commit(writes);
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                batch.get(0).fail(e);
+                return;
+            }
+            // The batch was rolled back, find out which writes fail by committing each alone
+            for (PendingWrite<W, R> pending : batch) {
+                commitAlone(pending);
+            }
+            return;
+        }
+        for (int i = 0; i < results.size(); i++) {
+            batch.get(i).succeed(results.get(i));
+        }
+    }
+
+    private void commitAlone(PendingWrite<W, R> pending) {
+        List<W> writes = new ArrayList<>(1);
+        writes.add(pending.mWrite);
+        R result;
+        try {
+            result = mCommitter.commit(writes).get(0);
+        } catch (Exception e) {
+            pending.fail(e);
+            return;
+        }
+        pending.succeed(result);
+    }
+
+    /**
+     * A write waiting for its batch, done once the queue sets its result or its exception. It
+     * can't be cancelled, as it may already be part of a transaction.
+     */
+    private static class PendingWrite<W, R> implements Future<R> {
+
+        final W mWrite;
+
+        private final Listener<R> mListener;
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        private R mResult;
+        private Exception mException;
+
+        PendingWrite(W write, Listener<R> listener) {
+            mWrite = write;
+            mListener = listener;
+        }
+
+        //the latch publishes the result to the threads waiting in get
+        void succeed(R result) {
+            mResult = result;
+            mDone.countDown();
+            if (mListener != null) {
+                mListener.onSuccess(result);
+            }
+        }
+
+        void fail(Exception e) {
+            mException = e;
+            mDone.countDown();
+            if (mListener != null) {
+                mListener.onFailure(e);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return mDone.getCount() == 0;
+        }
+
+        @Override
+        public R get() throws InterruptedException, ExecutionException {
+            mDone.await();
+            return getResult();
+        }
+
+        @Override
+        public R get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (!mDone.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return getResult();
+        }
+
+        private R getResult() throws ExecutionException {
+            if (mException != null) {
+                throw new ExecutionException(mException);
+            }
+            return mResult;
+        }
+    }
+}
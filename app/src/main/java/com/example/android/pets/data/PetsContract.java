@@ -16,6 +16,58 @@ public final class PetsContract {
     public static final String CONTENT_AUTHORITY = "com.example.android.pets";
     public static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
     public static final String PATH_PETS = "pets";
+    public static final String PATH_PAGE = "page";
+    public static final String PATH_SEARCH = "search";
+    public static final String PATH_PROVIDER_STATS = "_stats";
+    public static final String PATH_STATS = "stats";
+    public static final String PATH_BREED = "breed";
+    public static final String PATH_GENDER = "gender";
+    public static final String PATH_EXPORT = "export";
+    public static final String PATH_IMPORT = "import";
+    public static final String PATH_PHOTO = "photo";
+
+    //Query parameters of the paged and search content URIs
+    public static final String QUERY_PARAM_AFTER_ID = "after_id";
+    public static final String QUERY_PARAM_LIMIT = "limit";
+    public static final String QUERY_PARAM_FORMAT = "format";
+
+    //Query parameters of the filters and sort order of the pets and page content URIs, see
+    //PetQuery. The after value is the sort column value of the last row of the previous page
+    public static final String QUERY_PARAM_GENDER = "gender";
+    public static final String QUERY_PARAM_MIN_WEIGHT = "min_weight";
+    public static final String QUERY_PARAM_MAX_WEIGHT = "max_weight";
+    public static final String QUERY_PARAM_BREED = "breed";
+    public static final String QUERY_PARAM_SORT = "sort";
+    public static final String QUERY_PARAM_AFTER_VALUE = "after_value";
+
+    //Formats of the export and import URIs
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_JSON_LINES = "jsonl";
+
+    //The MIME types of the export and import formats
+    public static final String CSV_TYPE = "text/csv";
+    public static final String JSON_LINES_TYPE = "application/x-ndjson";
+
+    //Method of ContentResolver.call() returning the counters of the provider's row cache
+    public static final String METHOD_GET_CACHE_STATS = "get_cache_stats";
+
+    //Keys of the Bundle returned by METHOD_GET_CACHE_STATS
+    public static final String KEY_CACHE_HITS = "cache_hits";
+    public static final String KEY_CACHE_MISSES = "cache_misses";
+    public static final String KEY_CACHE_SIZE = "cache_size";
+
+    //Method of ContentResolver.call() returning the number of pets in KEY_COUNT
+    public static final String METHOD_COUNT_PETS = "count_pets";
+    public static final String KEY_COUNT = "count";
+
+    //Method of ContentResolver.call() setting the time in milliseconds, passed as the arg, after
+    //which a provider operation is written to the slow query log
+    public static final String METHOD_SET_SLOW_QUERY_THRESHOLD = "set_slow_query_threshold";
+
+    //Method of ContentResolver.call() pushing the local changes to the sync server whose url is
+    //the arg and pulling the changes of the other devices, in the background. Changes written
+    //afterwards are pushed to the same server as they are written
+    public static final String METHOD_SYNC = "sync";
 
 
         public static class PetEntry implements BaseColumns{
@@ -27,9 +79,27 @@ public final class PetsContract {
             public static final String COLUMN_GENDER = "gender";
             public static final String COLUMN_WEIGHT = "weight";
 
+            //1 if the pet has a photo, 0 otherwise. Set by the provider when a photo is written
+            //to or deleted from the photo URI of the pet, never by the clients
+            public static final String COLUMN_HAS_PHOTO = "has_photo";
+
             //Constant to access the content URI for the table pets
             public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PETS);
 
+            //Content URI for one page of pets, ordered by _ID and starting after a given _ID
+            public static final Uri CONTENT_PAGE_URI = Uri.withAppendedPath(CONTENT_URI, PATH_PAGE);
+
+            //Content URI for the pets whose name or breed match the text in the last path segment
+            public static final Uri CONTENT_SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
+            //Content URIs opened with ContentResolver.openFileDescriptor to read every pet in a
+            //format, or to write pets in a format that are added to the table
+            public static final Uri CONTENT_EXPORT_URI = Uri.withAppendedPath(CONTENT_URI, PATH_EXPORT);
+            public static final Uri CONTENT_IMPORT_URI = Uri.withAppendedPath(CONTENT_URI, PATH_IMPORT);
+
+            //Number of pets returned by a page when the URI doesn't ask for a limit
+            public static final int DEFAULT_PAGE_SIZE = 50;
+
             //The MIME type of the {@link #CONTENT_URI} for a list of pets.
             public static final String CONTENT_LIST_TYPE =
                     ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PETS;
@@ -38,12 +108,147 @@ public final class PetsContract {
             public static final String CONTENT_ITEM_TYPE =
                     ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PETS;
 
+            //The MIME type of the photo URI of a pet
+            public static final String PHOTO_TYPE = "image/jpeg";
+
             //Possible genders of the pets
             public static final int GENDER_UNKNOWN = 0;
             public static final int GENDER_MALE = 1;
             public static final int GENDER_FEMALE = 2;
 
+            /**
+             * Builds the URI of the page holding at most {@code limit} pets whose _ID is
+             * greater than {@code afterId}. Use 0 as {@code afterId} for the first page.
+             */
+            public static Uri buildPageUri(long afterId, int limit) {
+                return CONTENT_PAGE_URI.buildUpon()
+                        .appendQueryParameter(QUERY_PARAM_AFTER_ID, String.valueOf(afterId))
+                        .appendQueryParameter(QUERY_PARAM_LIMIT, String.valueOf(limit))
+                        .build();
+            }
+
+            /**
+             * Builds the URI of the page holding at most {@code limit} pets of {@code query},
+             * following the pet with the given _ID and value of the sort column in the sort
+             * order of the query. Use 0 as {@code afterId} for the first page, and null as
+             * {@code afterValue} for a pet without a value or a query sorted by _ID.
+             */
+            public static Uri buildPageUri(PetQuery query, String afterValue, long afterId,
+                                           int limit) {
+                Uri.Builder builder = query.appendTo(buildPageUri(afterId, limit)).buildUpon();
+                if (afterValue != null) {
+                    builder.appendQueryParameter(QUERY_PARAM_AFTER_VALUE, afterValue);
+                }
+                return builder.build();
+            }
+
+            /**
+             * Builds the URI to open in read mode to export every pet in {@code format}, either
+             * {@link #FORMAT_CSV} or {@link #FORMAT_JSON_LINES}.
+             */
+            public static Uri buildExportUri(String format) {
+                return CONTENT_EXPORT_URI.buildUpon()
+                        .appendQueryParameter(QUERY_PARAM_FORMAT, format)
+                        .build();
+            }
+
+            /**
+             * Builds the URI to open in write mode to import pets written in {@code format}.
+             * The pets are inserted as they are written and get new _IDs, and the import ends
+             * when the file descriptor is closed.
+             */
+            public static Uri buildImportUri(String format) {
+                return CONTENT_IMPORT_URI.buildUpon()
+                        .appendQueryParameter(QUERY_PARAM_FORMAT, format)
+                        .build();
+            }
+
+            /**
+             * Builds the URI of the photo of the pet with the given _ID. Open it in read mode to
+             * read the original photo, or in write mode to replace it with the image written
+             * until the file descriptor is closed. Deleting the URI removes the photo.
+             */
+            public static Uri buildPhotoUri(long id) {
+                return CONTENT_URI.buildUpon()
+                        .appendPath(String.valueOf(id))
+                        .appendPath(PATH_PHOTO)
+                        .build();
+            }
+
+            /**
+             * Builds the URI searching for the pets whose name or breed contain words starting
+             * with the words of {@code query}, returning at most {@code limit} pets.
+             */
+            public static Uri buildSearchUri(String query, int limit) {
+                return CONTENT_SEARCH_URI.buildUpon()
+                        .appendPath(query)
+                        .appendQueryParameter(QUERY_PARAM_LIMIT, String.valueOf(limit))
+                        .build();
+            }
+
+        }
+
+        /**
+         * Counts and weight statistics of the pets grouped by breed or by gender, computed by
+         * SQLite so a report reads one row per group instead of every pet. Each row has the
+         * grouping column, {@link PetEntry#COLUMN_BREED} or {@link PetEntry#COLUMN_GENDER}, and
+         * the columns below. The weight columns ignore the pets without a weight.
+         */
+        public static class PetStatsEntry {
+            //Content URI of the statistics of the pets, one row per breed
+            public static final Uri CONTENT_BREED_URI = Uri.withAppendedPath(
+                    Uri.withAppendedPath(PetEntry.CONTENT_URI, PATH_STATS), PATH_BREED);
+
+            //Content URI of the statistics of the pets, one row per gender
+            public static final Uri CONTENT_GENDER_URI = Uri.withAppendedPath(
+                    Uri.withAppendedPath(PetEntry.CONTENT_URI, PATH_STATS), PATH_GENDER);
+
+            //The MIME type of the statistics URIs
+            public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE +
+                    "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+
+            public static final String COLUMN_COUNT = "count";
+            public static final String COLUMN_AVG_WEIGHT = "avg_weight";
+            public static final String COLUMN_MIN_WEIGHT = "min_weight";
+            public static final String COLUMN_MAX_WEIGHT = "max_weight";
+        }
+
+        /**
+         * Debug counters of the provider, one row per operation and uri pattern. Query
+         * {@link #CONTENT_URI} to read them, they are kept in memory since the provider started.
+         */
+        public static class ProviderStatsEntry {
+            //Content URI of the provider counters
+            public static final Uri CONTENT_URI = Uri.withAppendedPath(
+                    Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PETS), PATH_PROVIDER_STATS);
+
+            //The MIME type of the {@link #CONTENT_URI}
+            public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE +
+                    "/" + CONTENT_AUTHORITY + "/" + PATH_PROVIDER_STATS;
+
+            //query, insert, bulk_insert, update, delete, export, import, compact or sync
+            public static final String COLUMN_OPERATION = "operation";
+            //The pattern of the uris the operation was made on, such as "pets/#"
+            public static final String COLUMN_URI_PATTERN = "uri_pattern";
+            public static final String COLUMN_COUNT = "count";
+            //Rows affected by the writes or returned by the slow queries, in total
+            public static final String COLUMN_ROWS = "rows";
+            //Most rows a slow query held in its first cursor window
+            public static final String COLUMN_MAX_WINDOW_ROWS = "max_window_rows";
+            public static final String COLUMN_TOTAL_MILLIS = "total_millis";
+            public static final String COLUMN_MAX_MILLIS = "max_millis";
+            //Operations slower than the slow query threshold
+            public static final String COLUMN_SLOW_COUNT = "slow_count";
 
+            //Latency histogram, the number of operations that took less than each time
+            //and more than the time of the previous column
+            public static final String COLUMN_UNDER_1_MS = "under_1_ms";
+            public static final String COLUMN_UNDER_4_MS = "under_4_ms";
+            public static final String COLUMN_UNDER_16_MS = "under_16_ms";
+            public static final String COLUMN_UNDER_64_MS = "under_64_ms";
+            public static final String COLUMN_UNDER_256_MS = "under_256_ms";
+            public static final String COLUMN_UNDER_1024_MS = "under_1024_ms";
+            public static final String COLUMN_OVER_1024_MS = "over_1024_ms";
         }
 
 }
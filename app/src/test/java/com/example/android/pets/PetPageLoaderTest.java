@@ -0,0 +1,155 @@
+package com.example.android.pets;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.support.v4.content.Loader;
+
+import com.example.android.pets.data.PetCursor;
+import com.example.android.pets.data.PetProvider;
+import com.example.android.pets.data.PetQuery;
+import com.example.android.pets.data.PetsContract;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Single pets inserted, updated and deleted through the provider while a
+ * {@link PetPageLoader} holds three pages of the catalog. Each change must make the loader
+ * query the page of the pet again, and only that page: the one full reload is the one of the
+ * bulk insert of the first pets.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PetPageLoaderTest {
+
+    private static final int PAGE_SIZE = 10;
+
+    /** Pets of the first two full pages and of the last page, which has room for more */
+    private static final int PETS = 25;
+
+    /** Pets changed by every kind of change */
+    private static final int EDITS = 5;
+
+    /** Number of times the delivered cursors are polled for before the test gives up */
+    private static final int MAX_POLLS = 1000;
+
+    private ContentResolver mResolver;
+    private PetPageLoader mLoader;
+    private final BlockingQueue<Cursor> mCursors = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws InterruptedException {
+        Robolectric.buildContentProvider(PetProvider.class)
+                .create(PetsContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+
+        mLoader = new PetPageLoader(RuntimeEnvironment.application,
+                PetCursor.CATALOG_PROJECTION, PetQuery.ALL, PAGE_SIZE);
+        mLoader.registerListener(0, new Loader.OnLoadCompleteListener<Cursor>() {
+            @Override
+            public void onLoadComplete(Loader<Cursor> loader, Cursor cursor) {
+                mCursors.add(cursor);
+            }
+        });
+        mLoader.startLoading();
+        assertEquals(0, nextCursor().getCount());
+
+        // Changes the whole table, so every loaded page is queried again
+        ContentValues[] pets = new ContentValues[PETS];
+        for (int i = 0; i < PETS; i++) {
+            pets[i] = newPet(i);
+        }
+        mResolver.bulkInsert(PetsContract.PetEntry.CONTENT_URI, pets);
+        assertEquals(PAGE_SIZE, nextCursor().getCount());
+
+        mLoader.loadNextPage();
+        assertEquals(2 * PAGE_SIZE, nextCursor().getCount());
+        mLoader.loadNextPage();
+        assertEquals(PETS, nextCursor().getCount());
+
+        assertEquals(1, mLoader.getFullReloadCount());
+        assertEquals(0, mLoader.getPageReloadCount());
+    }
+
+    @After
+    public void tearDown() {
+        mLoader.reset();
+    }
+
+    @Test
+    public void singlePetChangesOnlyReloadTheirPage() throws InterruptedException {
+        int edits = 0;
+
+        // Pets of the first page
+        for (long id = 1; id <= EDITS; id++) {
+            ContentValues values = new ContentValues();
+            values.put(PetsContract.PetEntry.COLUMN_WEIGHT, 50);
+            assertEquals(1, mResolver.update(
+                    ContentUris.withAppendedId(PetsContract.PetEntry.CONTENT_URI, id),
+                    values, null, null));
+            assertEquals(PETS, nextCursor().getCount());
+            assertReloads(++edits);
+        }
+
+        // New pets, which the last page takes as the end of the table has been reached
+        for (int i = 0; i < EDITS; i++) {
+            mResolver.insert(PetsContract.PetEntry.CONTENT_URI, newPet(PETS + i));
+            assertEquals(PETS + i + 1, nextCursor().getCount());
+            assertReloads(++edits);
+        }
+
+        // Pets of the second page
+        for (long id = PAGE_SIZE + 1; id <= PAGE_SIZE + EDITS; id++) {
+            assertEquals(1, mResolver.delete(
+                    ContentUris.withAppendedId(PetsContract.PetEntry.CONTENT_URI, id),
+                    null, null));
+            assertEquals(PETS + EDITS - (id - PAGE_SIZE), nextCursor().getCount());
+            assertReloads(++edits);
+        }
+    }
+
+    private void assertReloads(int pageReloads) {
+        assertEquals(1, mLoader.getFullReloadCount());
+        assertEquals(pageReloads, mLoader.getPageReloadCount());
+    }
+
+    /**
+     * Waits for the next cursor delivered by the loader. The loads run on background threads
+     * and deliver their cursor through the main looper, which is run here until they do.
+     */
+    private Cursor nextCursor() throws InterruptedException {
+        for (int i = 0; i < MAX_POLLS; i++) {
+            Robolectric.flushForegroundThreadScheduler();
+            Cursor cursor = mCursors.poll(10, TimeUnit.MILLISECONDS);
+            if (cursor != null) {
+                return cursor;
+            }
+        }
+        fail("The loader delivered no cursor");
+        return null;
+    }
+
+    private static ContentValues newPet(int i) {
+        ContentValues values = new ContentValues();
+        values.put(PetsContract.PetEntry.COLUMN_NAME, "Pet " + i);
+        values.put(PetsContract.PetEntry.COLUMN_BREED, "Terrier");
+        values.put(PetsContract.PetEntry.COLUMN_GENDER, PetsContract.PetEntry.GENDER_MALE);
+        values.put(PetsContract.PetEntry.COLUMN_WEIGHT, 1 + i % 40);
+        return values;
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.android.pets.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.os.RemoteException;
+
+import com.example.android.pets.BuildConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Batches of pets written through {@link PetProvider#bulkInsert} and
+ * {@link PetProvider#applyBatch}: every pet is written, the batch is all or nothing and the
+ * ContentResolver is notified once, after the transaction.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PetProviderBatchTest {
+
+    private static final int PETS = 10000;
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(PetProvider.class)
+                .create(PetsContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void bulkInsertWritesEveryPetWithOneNotification() {
+        ContentValues[] values = new ContentValues[PETS];
+        for (int i = 0; i < PETS; i++) {
+            values[i] = newPet(i);
+        }
+
+        assertEquals(PETS, mResolver.bulkInsert(PetsContract.PetEntry.CONTENT_URI, values));
+
+        assertEquals(PETS, countPets());
+        assertNotifiedOnce();
+    }
+
+    @Test
+    public void bulkInsertWritesNothingWhenAPetIsInvalid() {
+        ContentValues[] values = new ContentValues[PETS];
+        for (int i = 0; i < PETS; i++) {
+            values[i] = newPet(i);
+        }
+        values[PETS - 1].remove(PetsContract.PetEntry.COLUMN_NAME);
+
+        try {
+            mResolver.bulkInsert(PetsContract.PetEntry.CONTENT_URI, values);
+            fail("A pet without a name was inserted");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        assertEquals(0, countPets());
+        assertEquals(0, shadowOf(mResolver).getNotifiedUris().size());
+    }
+
+    @Test
+    public void applyBatchWritesEveryOperationWithOneNotification()
+            throws RemoteException, OperationApplicationException {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (int i = 0; i < PETS; i++) {
+            operations.add(ContentProviderOperation
+                    .newInsert(PetsContract.PetEntry.CONTENT_URI)
+                    .withValues(newPet(i))
+                    .build());
+        }
+
+        assertEquals(PETS, mResolver.applyBatch(PetsContract.CONTENT_AUTHORITY, operations).length);
+
+        assertEquals(PETS, countPets());
+        assertNotifiedOnce();
+    }
+
+    @Test
+    public void applyBatchRollsBackEveryOperationWhenOneFails() throws RemoteException {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (int i = 0; i < PETS; i++) {
+            operations.add(ContentProviderOperation
+                    .newInsert(PetsContract.PetEntry.CONTENT_URI)
+                    .withValues(newPet(i))
+                    .build());
+        }
+        // Fails once every insert has run, inside the same transaction
+        operations.add(ContentProviderOperation
+                .newAssertQuery(PetsContract.PetEntry.CONTENT_URI)
+                .withExpectedCount(0)
+                .build());
+
+        try {
+            mResolver.applyBatch(PetsContract.CONTENT_AUTHORITY, operations);
+            fail("The batch didn't fail");
+        } catch (OperationApplicationException expected) {
+        }
+
+        assertEquals(0, countPets());
+        assertEquals(0, shadowOf(mResolver).getNotifiedUris().size());
+    }
+
+    private static ContentValues newPet(int i) {
+        ContentValues values = new ContentValues();
+        values.put(PetsContract.PetEntry.COLUMN_NAME, "Pet " + i);
+        values.put(PetsContract.PetEntry.COLUMN_BREED, "Terrier");
+        values.put(PetsContract.PetEntry.COLUMN_GENDER, PetsContract.PetEntry.GENDER_MALE);
+        values.put(PetsContract.PetEntry.COLUMN_WEIGHT, 1 + i % 40);
+        return values;
+    }
+
+    private int countPets() {
+        Cursor cursor = mResolver.query(PetsContract.PetEntry.CONTENT_URI,
+                new String[]{PetsContract.PetEntry._ID}, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void assertNotifiedOnce() {
+        List<ShadowContentResolver.NotifiedUri> notifiedUris =
+                shadowOf(mResolver).getNotifiedUris();
+        assertEquals(1, notifiedUris.size());
+        assertEquals(PetsContract.PetEntry.CONTENT_URI, notifiedUris.get(0).uri);
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.android.pets.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.pets.BuildConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Exports of 500,000 pets to a file imported into an empty database with {@link PetTransfer},
+ * in both formats. The test JVM has a 256 MB heap, set in the build file, which the pets don't
+ * fit in once Robolectric is loaded, so a round trip fails with an OutOfMemoryError if either
+ * direction holds every pet instead of a chunk.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PetTransferTest {
+
+    private static final int PETS = 500000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Name of the first pet, which CSV has to quote */
+    private static final String QUOTED_NAME = "Rex, \"the\"\nterrier";
+
+    private SQLiteDatabase mSource;
+    private SQLiteDatabase mTarget;
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mSource = createDatabase();
+        mTarget = createDatabase();
+        mFile = File.createTempFile("pets-export", ".txt");
+        insertPets(mSource);
+    }
+
+    @After
+    public void tearDown() {
+        mSource.close();
+        mTarget.close();
+        assertTrue(mFile.delete());
+    }
+
+    @Test
+    public void csvRoundTripKeepsEveryPet() throws IOException {
+        roundTrip(PetsContract.FORMAT_CSV);
+    }
+
+    @Test
+    public void jsonLinesRoundTripKeepsEveryPet() throws IOException {
+        roundTrip(PetsContract.FORMAT_JSON_LINES);
+    }
+
+    private void roundTrip(String format) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mFile),
+                UTF_8));
+        try {
+            assertEquals(PETS, PetTransfer.exportPets(mSource, format, out));
+        } finally {
+            out.close();
+        }
+
+        Reader in = new BufferedReader(new InputStreamReader(new FileInputStream(mFile), UTF_8));
+        try {
+            assertEquals(PETS, PetTransfer.importPets(mTarget, format, in));
+        } finally {
+            in.close();
+        }
+
+        assertEquals(PETS, DatabaseUtils.queryNumEntries(mTarget, PetDbHelper.VISIBLE_PETS_VIEW));
+        assertPet(1, QUOTED_NAME, null, null);
+        assertPet(PETS, "Pet " + (PETS - 1), (PETS - 1) % 3, 1 + (PETS - 1) % 40);
+    }
+
+    /**
+     * Checks the name, gender and weight of the imported pet with the given _ID, a null gender
+     * or weight meaning the pet has none.
+     */
+    private void assertPet(long id, String name, Integer gender, Integer weight) {
+        Cursor cursor = mTarget.query(PetDbHelper.VISIBLE_PETS_VIEW, new String[]{
+                        PetsContract.PetEntry.COLUMN_NAME,
+                        PetsContract.PetEntry.COLUMN_GENDER,
+                        PetsContract.PetEntry.COLUMN_WEIGHT},
+                PetsContract.PetEntry._ID + "=?", new String[]{String.valueOf(id)},
+                null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(name, cursor.getString(0));
+            assertEquals(gender, cursor.isNull(1) ? null : cursor.getInt(1));
+            assertEquals(weight, cursor.isNull(2) ? null : cursor.getInt(2));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Creates an empty database in memory with the schema PetDbHelper creates.
+     */
+    private static SQLiteDatabase createDatabase() {
+        SQLiteDatabase database = SQLiteDatabase.create(null);
+        database.execSQL(PetSchema.SQL_CREATE_ENTRIES);
+        for (int version = 1; version < PetSchema.DATABASE_VERSION; version++) {
+            for (String statement : PetSchema.getMigration(version)) {
+                database.execSQL(statement);
+            }
+        }
+        return database;
+    }
+
+    /**
+     * Inserts {@link #PETS} pets, whose _IDs go from 1 to PETS. The first one has no gender or
+     * weight.
+     */
+    private static void insertPets(SQLiteDatabase database) {
+        SQLiteStatement insert = database.compileStatement(PetStatements.SQL_INSERT);
+        database.beginTransaction();
+        try {
+            for (int i = 0; i < PETS; i++) {
+                insert.bindString(1, i == 0 ? QUOTED_NAME : "Pet " + i);
+                insert.bindString(2, "Terrier");
+                if (i == 0) {
+                    insert.bindNull(3);
+                    insert.bindNull(4);
+                } else {
+                    insert.bindLong(3, i % 3);
+                    insert.bindLong(4, 1 + i % 40);
+                }
+                insert.executeInsert();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            insert.close();
+        }
+    }
+}
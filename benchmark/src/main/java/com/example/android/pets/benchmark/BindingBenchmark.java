@@ -0,0 +1,115 @@
+package com.example.android.pets.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binding a page of rows the way PetCursorAdapter.onBindViewHolder does, with the column
+ * indices resolved once per cursor, against looking them up by name for every row like the
+ * old CursorAdapter.bindView did. The rows are read into memory first so only the binding
+ * is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BindingBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    private static final String[] COLUMNS = {
+            PetDatabase._ID, PetDatabase.COLUMN_NAME, PetDatabase.COLUMN_BREED};
+
+    /** The rows of one catalog page, as a CursorWindow holds them */
+    private Object[][] mRows;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        PetDatabase database = PetDatabase.create();
+        try {
+            database.insertPets(PAGE_SIZE);
+            mRows = new Object[PAGE_SIZE][];
+            Statement statement = database.getConnection().createStatement();
+            try {
+                ResultSet resultSet = statement.executeQuery("SELECT " +
+                        PetDatabase.CATALOG_COLUMNS + " FROM " + PetDatabase.TABLE_NAME);
+                for (int row = 0; resultSet.next(); row++) {
+                    mRows[row] = new Object[]{
+                            resultSet.getLong(1), resultSet.getString(2), resultSet.getString(3)};
+                }
+                resultSet.close();
+            } finally {
+                statement.close();
+            }
+        } finally {
+            database.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mRows = null;
+    }
+
+    @Benchmark
+    public void indicesResolvedOnce(Blackhole blackhole) {
+        int idIndex = getColumnIndexOrThrow(PetDatabase._ID);
+        int nameIndex = getColumnIndexOrThrow(PetDatabase.COLUMN_NAME);
+        int breedIndex = getColumnIndexOrThrow(PetDatabase.COLUMN_BREED);
+        for (Object[] row : mRows) {
+            bind(row, idIndex, nameIndex, breedIndex, blackhole);
+        }
+    }
+
+    @Benchmark
+    public void indicesResolvedPerRow(Blackhole blackhole) {
+        for (Object[] row : mRows) {
+            bind(row, getColumnIndexOrThrow(PetDatabase._ID),
+                    getColumnIndexOrThrow(PetDatabase.COLUMN_NAME),
+                    getColumnIndexOrThrow(PetDatabase.COLUMN_BREED), blackhole);
+        }
+    }
+
+    /**
+     * Reads the values shown by a row of the list, falling back to a placeholder for an
+     * unknown breed like the adapter does.
+     */
+    private static void bind(Object[] row, int idIndex, int nameIndex, int breedIndex,
+                             Blackhole blackhole) {
+        blackhole.consume(((Long) row[idIndex]).longValue());
+        blackhole.consume((String) row[nameIndex]);
+        String breed = (String) row[breedIndex];
+        blackhole.consume(breed == null || breed.isEmpty() ? "Unknown breed" : breed);
+    }
+
+    /**
+     * Finds a column by name with a linear search, as AbstractCursor.getColumnIndex does.
+     */
+    private static int getColumnIndexOrThrow(String columnName) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equalsIgnoreCase(columnName)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("column '" + columnName + "' does not exist");
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.android.pets.benchmark;
+
+import com.example.android.pets.data.PetColumns;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counting the female pets of 5 to 10 kg of one breed. SQLite counts them with the breed index,
+ * the scan reads every pet into objects the way a report reading a cursor does, and
+ * PetColumns, the code of PetColumnSnapshot, counts them from its sorted indexes. The update
+ * benchmark changes one pet of the columns, as a notification of the provider does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ColumnarBenchmark {
+
+    private static final String BREED = "Tabby";
+    private static final int GENDER = 2;
+    private static final int MIN_WEIGHT = 5;
+    private static final int MAX_WEIGHT = 10;
+
+    private static final String SQL_COUNT = "SELECT COUNT(*) FROM " +
+            PetDatabase.VISIBLE_PETS_VIEW + " WHERE " + PetDatabase.COLUMN_GENDER + " = ? AND " +
+            PetDatabase.COLUMN_WEIGHT + " BETWEEN ? AND ? AND " + PetDatabase.COLUMN_BREED +
+            " = ?";
+
+    private static final String SQL_READ_ALL = "SELECT " + PetDatabase._ID + ", " +
+            PetDatabase.COLUMN_NAME + ", " + PetDatabase.COLUMN_BREED + ", " +
+            PetDatabase.COLUMN_GENDER + ", " + PetDatabase.COLUMN_WEIGHT + " FROM " +
+            PetDatabase.VISIBLE_PETS_VIEW;
+
+    @Param({"1000000"})
+    public int pets;
+
+    private PetDatabase mDatabase;
+    private PreparedStatement mCount;
+    private PreparedStatement mReadAll;
+    private PetColumns mColumns;
+    private int mNext;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mDatabase = PetDatabase.create();
+        mDatabase.insertPets(pets);
+        mCount = mDatabase.getConnection().prepareStatement(SQL_COUNT);
+        mReadAll = mDatabase.getConnection().prepareStatement(SQL_READ_ALL);
+
+        // Loaded the way PetColumnSnapshot loads the pets from the provider
+        mColumns = new PetColumns();
+        ResultSet resultSet = mReadAll.executeQuery();
+        try {
+            while (resultSet.next()) {
+                mColumns.put(resultSet.getLong(1), resultSet.getString(2),
+                        resultSet.getString(3), resultSet.getInt(4), resultSet.getInt(5));
+            }
+        } finally {
+            resultSet.close();
+        }
+        mColumns.count(0, PetColumns.NO_VALUE, PetColumns.NO_VALUE, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mCount.close();
+        mReadAll.close();
+        mDatabase.close();
+    }
+
+    @Benchmark
+    public int sqliteCount() throws SQLException {
+        mCount.setInt(1, GENDER);
+        mCount.setInt(2, MIN_WEIGHT);
+        mCount.setInt(3, MAX_WEIGHT);
+        mCount.setString(4, BREED);
+        ResultSet resultSet = mCount.executeQuery();
+        try {
+            resultSet.next();
+            return resultSet.getInt(1);
+        } finally {
+            resultSet.close();
+        }
+    }
+
+    @Benchmark
+    public int cursorScan() throws SQLException {
+        int count = 0;
+        ResultSet resultSet = mReadAll.executeQuery();
+        try {
+            while (resultSet.next()) {
+                // A report reading a cursor gets the values of every row as objects
+                String breed = resultSet.getString(3);
+                Integer gender = resultSet.getInt(4);
+                Integer weight = resultSet.getInt(5);
+                if (gender == GENDER && weight >= MIN_WEIGHT && weight <= MAX_WEIGHT &&
+                        BREED.equals(breed)) {
+                    count++;
+                }
+            }
+        } finally {
+            resultSet.close();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int columnarCount() {
+        return mColumns.count(1 << GENDER, MIN_WEIGHT, MAX_WEIGHT, BREED);
+    }
+
+    @Benchmark
+    public long[] columnarFindIds() {
+        return mColumns.findIds(1 << GENDER, MIN_WEIGHT, MAX_WEIGHT, BREED);
+    }
+
+    @Benchmark
+    public boolean columnarUpdate() {
+        int pet = mNext++;
+        return mColumns.put(1 + pet % pets, "Pet " + pet, BREED, pet % 3, 1 + pet % 40);
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.android.pets.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Catalog pages read by 4 threads, each with a connection of its own like the pool of read
+ * connections of SQLiteDatabase, while another connection keeps updating 10,000 pets per
+ * transaction like a bulk import. With {@code WAL} the database is opened the way PetDbHelper
+ * opens it, in write-ahead logging mode, and the readers keep reading the last commit. With
+ * {@code DELETE} it is switched back to the rollback journal SQLiteOpenHelper uses by default,
+ * and the readers wait for every write transaction to end. JMH reports the percentiles of the
+ * read latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(4)
+@Fork(1)
+public class ConcurrentReadBenchmark {
+
+    /** Pets updated by every write transaction */
+    private static final int WRITE_BATCH_SIZE = 10000;
+
+    /** The same as PetsContract.PetEntry.DEFAULT_PAGE_SIZE */
+    private static final int PAGE_SIZE = 50;
+
+    private static final String SQL_READ_PAGE = "SELECT " + PetDatabase.CATALOG_COLUMNS +
+            " FROM " + PetDatabase.VISIBLE_PETS_VIEW + " WHERE " + PetDatabase._ID +
+            " > ? ORDER BY " + PetDatabase._ID + " LIMIT " + PAGE_SIZE;
+
+    private static final String SQL_WRITE = "UPDATE " + PetDatabase.TABLE_NAME + " SET " +
+            PetDatabase.COLUMN_WEIGHT + " = " + PetDatabase.COLUMN_WEIGHT + " % 40 + 1 WHERE " +
+            PetDatabase._ID + " > ? AND " + PetDatabase._ID + " <= ?";
+
+    @Param({"WAL", "DELETE"})
+    public String journalMode;
+
+    @Param({"100000"})
+    public int pets;
+
+    private PetDatabase mDatabase;
+    private Thread mWriter;
+    private volatile boolean mWriting;
+    private volatile SQLException mWriteError;
+
+    /**
+     * The read connection of a thread and the page it reads next.
+     */
+    @State(Scope.Thread)
+    public static class Reader {
+        private Connection mConnection;
+        private PreparedStatement mReadPage;
+        private long mAfterId;
+
+        @Setup(Level.Trial)
+        public void open(ConcurrentReadBenchmark benchmark) throws SQLException {
+            mConnection = benchmark.mDatabase.openConnection();
+            mReadPage = mConnection.prepareStatement(SQL_READ_PAGE);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws SQLException {
+            mReadPage.close();
+            mConnection.close();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mDatabase = PetDatabase.create();
+        mDatabase.insertPets(pets);
+        if (!"WAL".equals(journalMode)) {
+            // The framework defaults, without the settings of PetDbHelper
+            mDatabase.execute("PRAGMA journal_mode = " + journalMode);
+            mDatabase.execute("PRAGMA synchronous = FULL");
+        }
+
+        mWriting = true;
+        mWriter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write();
+                } catch (SQLException e) {
+                    mWriteError = e;
+                }
+            }
+        }, "pets-writer");
+        mWriter.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException, SQLException {
+        mWriting = false;
+        mWriter.join();
+        mDatabase.close();
+        if (mWriteError != null) {
+            throw mWriteError;
+        }
+    }
+
+    @Benchmark
+    public int readPage(Reader reader) throws SQLException {
+        reader.mReadPage.setLong(1, reader.mAfterId);
+        int rows = 0;
+        ResultSet resultSet = reader.mReadPage.executeQuery();
+        try {
+            while (resultSet.next()) {
+                reader.mAfterId = resultSet.getLong(1);
+                rows++;
+            }
+        } finally {
+            resultSet.close();
+        }
+        if (rows < PAGE_SIZE) {
+            reader.mAfterId = 0;
+        }
+        return rows;
+    }
+
+    /**
+     * Updates the pets in transactions of {@link #WRITE_BATCH_SIZE} pets until the trial ends.
+     */
+    private void write() throws SQLException {
+        Connection connection = mDatabase.getConnection();
+        PreparedStatement statement = connection.prepareStatement(SQL_WRITE);
+        try {
+            long afterId = 0;
+            while (mWriting) {
+                connection.setAutoCommit(false);
+                try {
+                    statement.setLong(1, afterId);
+                    statement.setLong(2, afterId + WRITE_BATCH_SIZE);
+                    statement.executeUpdate();
+                    connection.commit();
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+                afterId = (afterId + WRITE_BATCH_SIZE) % pets;
+            }
+        } finally {
+            statement.close();
+        }
+    }
+}
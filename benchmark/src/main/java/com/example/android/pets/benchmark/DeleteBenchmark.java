@@ -0,0 +1,70 @@
+package com.example.android.pets.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deleting every pet with DELETE, which removes every row and its full-text entry while it
+ * holds the write lock, against the soft delete of PetProvider, which only moves the purge
+ * watermark and leaves the rows to the compactor. Every invocation starts from a full table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class DeleteBenchmark {
+
+    private static final String SQL_DELETE_ALL = "UPDATE " + PetDatabase.PURGE_TABLE_NAME +
+            " SET " + PetDatabase.COLUMN_DELETED_THROUGH_ID + " = (SELECT IFNULL(MAX(" +
+            PetDatabase._ID + "), 0) FROM " + PetDatabase.TABLE_NAME + ")";
+
+    @Param({"1000", "10000"})
+    public int pets;
+
+    private PetDatabase mDatabase;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mDatabase = PetDatabase.create();
+    }
+
+    @Setup(Level.Invocation)
+    public void fillTable() throws SQLException {
+        mDatabase.execute("DELETE FROM " + PetDatabase.TABLE_NAME);
+        mDatabase.execute("UPDATE " + PetDatabase.PURGE_TABLE_NAME + " SET " +
+                PetDatabase.COLUMN_DELETED_THROUGH_ID + " = 0");
+        mDatabase.insertPets(pets);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mDatabase.close();
+    }
+
+    @Benchmark
+    public void deleteAll() throws SQLException {
+        mDatabase.execute("DELETE FROM " + PetDatabase.TABLE_NAME);
+    }
+
+    @Benchmark
+    public void softDeleteAll() throws SQLException {
+        mDatabase.execute(SQL_DELETE_ALL);
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.android.pets.benchmark;
+
+import com.example.android.pets.data.PetWriteQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Inserts from 8 threads at once, each committed in a transaction of its own, like writes made
+ * through the ContentResolver, against the group commit of PetWriteQueue, which collects the
+ * writes of every thread for up to 5 ms or 100 writes and commits them in one transaction.
+ * The queue is the app's own, committing through JDBC instead of PetProvider.applyBatch. Both
+ * write through a single connection, as SQLiteDatabase has a single connection for writes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Threads(8)
+@Fork(1)
+public class GroupCommitBenchmark {
+
+    private PetDatabase mDatabase;
+    private PreparedStatement mInsert;
+    private ScheduledExecutorService mExecutor;
+    private PetWriteQueue<Integer, Integer> mWriteQueue;
+    private final AtomicInteger mNext = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mDatabase = PetDatabase.create();
+        mInsert = mDatabase.getConnection().prepareStatement(PetDatabase.SQL_INSERT);
+        mExecutor = Executors.newSingleThreadScheduledExecutor();
+        mWriteQueue = new PetWriteQueue<>(new PetWriteQueue.Committer<Integer, Integer>() {
+            @Override
+            public List<Integer> commit(List<Integer> pets) throws SQLException {
+                return insertPets(pets);
+            }
+        }, mExecutor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mExecutor.shutdown();
+        mInsert.close();
+        mDatabase.close();
+    }
+
+    @Benchmark
+    public int commitEachWrite() throws SQLException {
+        synchronized (mInsert) {
+            PetDatabase.bindPet(mInsert, mNext.getAndIncrement());
+            return mInsert.executeUpdate();
+        }
+    }
+
+    @Benchmark
+    public int groupCommit() throws InterruptedException, ExecutionException {
+        return mWriteQueue.enqueue(mNext.getAndIncrement()).get();
+    }
+
+    /**
+     * Inserts the pets in one transaction, the way PetProvider.applyBatch commits the batches
+     * of the queue in the app, and returns the rows inserted by each.
+     */
+    private List<Integer> insertPets(List<Integer> pets) throws SQLException {
+        Connection connection = mDatabase.getConnection();
+        synchronized (mInsert) {
+            connection.setAutoCommit(false);
+            try {
+                List<Integer> rows = new ArrayList<>(pets.size());
+                for (int pet : pets) {
+                    PetDatabase.bindPet(mInsert, pet);
+                    rows.add(mInsert.executeUpdate());
+                }
+                connection.commit();
+                return rows;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.android.pets.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserting a number of pets one at a time, each in its own transaction like repeated calls
+ * to PetProvider.insert, against inserting them in one transaction like PetProvider.bulkInsert,
+ * which binds every pet to the same compiled statement. The 10,000 pets are a shelter intake
+ * imported at once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class InsertBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int pets;
+
+    private PetDatabase mDatabase;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException, SQLException {
+        mDatabase = PetDatabase.create();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws SQLException {
+        mDatabase.close();
+    }
+
+    @Benchmark
+    public int singleInserts() throws SQLException {
+        Connection connection = mDatabase.getConnection();
+        int rows = 0;
+        for (int i = 0; i < pets; i++) {
+            // SQLiteDatabase.insert prepares the statement every time
+            PreparedStatement statement = connection.prepareStatement(PetDatabase.SQL_INSERT);
+            try {
+                PetDatabase.bindPet(statement, i);
+                rows += statement.executeUpdate();
+            } finally {
+                statement.close();
+            }
+        }
+        return rows;
+    }
+
+    @Benchmark
+    public int batchInsert() throws SQLException {
+        Connection connection = mDatabase.getConnection();
+        int rows = 0;
+        connection.setAutoCommit(false);
+        // PetStatements compiles the insert once
+        PreparedStatement statement = connection.prepareStatement(PetDatabase.SQL_INSERT);
+        try {
+            for (int i = 0; i < pets; i++) {
+                PetDatabase.bindPet(statement, i);
+                rows += statement.executeUpdate();
+            }
+            connection.commit();
+        } finally {
+            statement.close();
+            connection.setAutoCommit(true);
+        }
+        return rows;
+    }
+}
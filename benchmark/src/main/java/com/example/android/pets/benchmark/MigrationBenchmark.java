@@ -0,0 +1,123 @@
+package com.example.android.pets.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upgrading a database of the first version of the app, holding {@code pets} pets, to the
+ * current schema. After every upgrade the pets are checked to have survived it and the queries
+ * of the common filters of the provider to use the indexes of the migrations, and the benchmark
+ * fails if they don't.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MigrationBenchmark {
+
+    private static final String SQL_COUNT = "SELECT (SELECT COUNT(*) FROM " +
+            PetDatabase.VISIBLE_PETS_VIEW + "), (SELECT COUNT(*) FROM " +
+            PetDatabase.OUTBOX_TABLE_NAME + ")";
+
+    private static final String SQL_CATALOG_PAGE = "SELECT " + PetDatabase.CATALOG_COLUMNS +
+            " FROM " + PetDatabase.VISIBLE_PETS_VIEW;
+
+    /**
+     * The catalog page of a filter, the way PetQuery builds it, and the index it should use. The
+     * page sorted by name is left out: older SQLite versions, the 3.20 of the benchmarks among
+     * them, read it through the _ID range of the view and sort it instead of using
+     * pets_name_index.
+     */
+    private static final String[][] FILTERS = {
+            {SQL_CATALOG_PAGE + " WHERE " + PetDatabase.COLUMN_BREED + " = 'Tabby' ORDER BY " +
+                    PetDatabase._ID + " ASC LIMIT 50", "pets_breed_index"},
+            {SQL_CATALOG_PAGE + " WHERE " + PetDatabase.COLUMN_GENDER + " = 1 ORDER BY " +
+                    PetDatabase._ID + " ASC LIMIT 50", "pets_gender_index"},
+            {SQL_CATALOG_PAGE + " WHERE " + PetDatabase.COLUMN_GENDER + " IN (1, 2) AND " +
+                    PetDatabase.COLUMN_WEIGHT + " >= 5 AND " + PetDatabase.COLUMN_WEIGHT +
+                    " <= 10 ORDER BY " + PetDatabase._ID + " ASC LIMIT 50",
+                    "pets_gender_weight_index"}
+    };
+
+    @Param({"1000", "100000"})
+    public int pets;
+
+    private PetDatabase mDatabase;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException, SQLException {
+        mDatabase = PetDatabase.create(1);
+        mDatabase.insertPets(pets);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws SQLException {
+        try {
+            checkPets();
+            for (String[] filter : FILTERS) {
+                checkPlan(filter[0], filter[1]);
+            }
+        } finally {
+            mDatabase.close();
+        }
+    }
+
+    @Benchmark
+    public int upgrade() throws SQLException {
+        return mDatabase.upgrade();
+    }
+
+    /**
+     * Checks every pet is still visible and the outbox is empty, as it is only written once a
+     * sync was asked for.
+     */
+    private void checkPets() throws SQLException {
+        Statement statement = mDatabase.getConnection().createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery(SQL_COUNT);
+            resultSet.next();
+            if (resultSet.getInt(1) != pets || resultSet.getInt(2) != 0) {
+                throw new IllegalStateException("Upgrade kept " + resultSet.getInt(1) +
+                        " pets of " + pets + " and wrote " + resultSet.getInt(2) +
+                        " outbox rows");
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void checkPlan(String sql, String index) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        Statement statement = mDatabase.getConnection().createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery("EXPLAIN QUERY PLAN " + sql);
+            while (resultSet.next()) {
+                plan.append(resultSet.getString("detail")).append('\n');
+            }
+        } finally {
+            statement.close();
+        }
+        if (!plan.toString().contains("INDEX " + index)) {
+            throw new IllegalStateException(sql + " doesn't use " + index + ":\n" + plan);
+        }
+    }
+}
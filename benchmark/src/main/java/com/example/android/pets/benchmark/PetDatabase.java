@@ -0,0 +1,189 @@
+package com.example.android.pets.benchmark;
+
+import com.example.android.pets.data.PetSchema;
+import com.example.android.pets.data.PetSyncProtocol;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A pets database opened through JDBC, standing in for PetDbHelper on the JVM. It is created
+ * with the statements of {@link PetSchema}, the ones PetDbHelper runs, including the indexes
+ * and the full-text table with its triggers, and is opened in write-ahead logging mode like the
+ * app does.
+ */
+final class PetDatabase {
+
+    static final String TABLE_NAME = PetSchema.TABLE_NAME;
+    static final String _ID = PetSchema._ID;
+    static final String COLUMN_NAME = PetSchema.COLUMN_NAME;
+    static final String COLUMN_BREED = PetSchema.COLUMN_BREED;
+    static final String COLUMN_GENDER = PetSchema.COLUMN_GENDER;
+    static final String COLUMN_WEIGHT = PetSchema.COLUMN_WEIGHT;
+    static final String COLUMN_HAS_PHOTO = PetSchema.COLUMN_HAS_PHOTO;
+    static final String PURGE_TABLE_NAME = PetSchema.PURGE_TABLE_NAME;
+    static final String COLUMN_DELETED_THROUGH_ID = PetSchema.COLUMN_DELETED_THROUGH_ID;
+    static final String VISIBLE_PETS_VIEW = PetSchema.VISIBLE_PETS_VIEW;
+    static final String COLUMN_SYNC_ID = PetSyncProtocol.COLUMN_SYNC_ID;
+    static final String OUTBOX_TABLE_NAME = PetSyncProtocol.OUTBOX_TABLE_NAME;
+
+    /** Columns read by the catalog list, the same as PetCursor.CATALOG_PROJECTION */
+    static final String CATALOG_COLUMNS = _ID + ", " + COLUMN_NAME + ", " + COLUMN_BREED + ", " +
+            COLUMN_HAS_PHOTO;
+
+    /** Version of the databases made by {@link #create()} */
+    static final int DATABASE_VERSION = PetSchema.DATABASE_VERSION;
+
+    static final String SQL_INSERT = "INSERT INTO " + TABLE_NAME + " (" + COLUMN_NAME + ", " +
+            COLUMN_BREED + ", " + COLUMN_GENDER + ", " + COLUMN_WEIGHT + ") VALUES (?, ?, ?, ?)";
+
+    private static final String[] BREEDS = {
+            "Terrier", "Tabby", "Labrador", "Persian", "Beagle", "Siamese", "Poodle", null};
+
+    private final File mFile;
+    private final Connection mConnection;
+
+    private PetDatabase(File file, Connection connection) {
+        mFile = file;
+        mConnection = connection;
+    }
+
+    /**
+     * Creates an empty pets database in a temporary file.
+     */
+    static PetDatabase create() throws IOException, SQLException {
+        return create(DATABASE_VERSION);
+    }
+
+    /**
+     * Creates an empty pets database in a temporary file with the schema of the given version,
+     * as an older version of the app left it.
+     */
+    static PetDatabase create(int version) throws IOException, SQLException {
+        File file = File.createTempFile("pets-benchmark", ".db");
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+        Statement statement = connection.createStatement();
+        try {
+            // The same settings PetDbHelper.onConfigure and onOpen apply. The database is still
+            // empty, so auto vacuum needs no VACUUM
+            statement.execute(PetSchema.SQL_AUTO_VACUUM_INCREMENTAL);
+            statement.execute("PRAGMA journal_mode = WAL");
+            statement.execute(PetSchema.SQL_SYNCHRONOUS_NORMAL);
+            statement.execute(PetSchema.SQL_CREATE_ENTRIES);
+            migrate(statement, 1, version);
+        } finally {
+            statement.close();
+        }
+        return new PetDatabase(file, connection);
+    }
+
+    /**
+     * Takes the database to {@link #DATABASE_VERSION} in a single transaction, keeping the pets,
+     * the way PetDbHelper.onUpgrade does. Returns the version it was upgraded from.
+     */
+    int upgrade() throws SQLException {
+        mConnection.setAutoCommit(false);
+        Statement statement = mConnection.createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery("PRAGMA user_version");
+            resultSet.next();
+            int version = resultSet.getInt(1);
+            resultSet.close();
+            migrate(statement, version, DATABASE_VERSION);
+            mConnection.commit();
+            return version;
+        } finally {
+            statement.close();
+            mConnection.setAutoCommit(true);
+        }
+    }
+
+    private static void migrate(Statement statement, int fromVersion, int toVersion)
+            throws SQLException {
+        for (int version = fromVersion; version < toVersion; version++) {
+            for (String sql : PetSchema.getMigration(version)) {
+                statement.execute(sql);
+            }
+        }
+        statement.execute("PRAGMA user_version = " + toVersion);
+    }
+
+    Connection getConnection() {
+        return mConnection;
+    }
+
+    /**
+     * Opens another connection to the same database, the way PetDbHelper opens it when the
+     * process starts.
+     */
+    Connection openConnection() throws SQLException {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + mFile.getPath());
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute(PetSchema.SQL_SYNCHRONOUS_NORMAL);
+        } finally {
+            statement.close();
+        }
+        return connection;
+    }
+
+    /**
+     * Inserts {@code count} pets in a single transaction. Their _IDs go from 1 to {@code count}
+     * when the table was empty.
+     */
+    void insertPets(int count) throws SQLException {
+        mConnection.setAutoCommit(false);
+        PreparedStatement statement = mConnection.prepareStatement(SQL_INSERT);
+        try {
+            for (int i = 0; i < count; i++) {
+                bindPet(statement, i);
+                statement.executeUpdate();
+            }
+            mConnection.commit();
+        } finally {
+            statement.close();
+            mConnection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Binds the values of the i-th generated pet to the parameters of {@link #SQL_INSERT}.
+     */
+    static void bindPet(PreparedStatement statement, int i) throws SQLException {
+        statement.setString(1, "Pet " + i);
+        statement.setString(2, BREEDS[i % BREEDS.length]);
+        statement.setInt(3, i % 3);
+        statement.setInt(4, 1 + i % 40);
+    }
+
+    void execute(String sql) throws SQLException {
+        Statement statement = mConnection.createStatement();
+        try {
+            statement.execute(sql);
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Closes the connection and deletes the database files.
+     */
+    void close() throws SQLException {
+        mConnection.close();
+        delete(mFile);
+        delete(new File(mFile.getPath() + "-wal"));
+        delete(new File(mFile.getPath() + "-shm"));
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
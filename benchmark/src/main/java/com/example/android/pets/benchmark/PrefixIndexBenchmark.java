@@ -0,0 +1,166 @@
+package com.example.android.pets.benchmark;
+
+import com.example.android.pets.data.PetPrefixIndex;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Suggestions for a name typed in the editor, over 100,000 pets with distinct names. SQLite
+ * finds them with a LIKE query, which ignores case and so can't use the name index, and
+ * PetPrefixIndex, the code of the suggestions of PetColumnSnapshot, with a binary search. The
+ * build and add benchmarks cost a full load and a change of one pet. The memory the index
+ * holds for the names is reported by indexFootprint as secondary results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PrefixIndexBenchmark {
+
+    /** The same limit as PetSuggestionAdapter */
+    private static final int MAX_SUGGESTIONS = 8;
+
+    /** Typed in lower case, the suggestions ignore case */
+    private static final String PREFIX = "pet 4321";
+
+    private static final String SQL_SUGGEST = "SELECT DISTINCT " + PetDatabase.COLUMN_NAME +
+            " FROM " + PetDatabase.VISIBLE_PETS_VIEW + " WHERE " + PetDatabase.COLUMN_NAME +
+            " LIKE ? ORDER BY " + PetDatabase.COLUMN_NAME + " LIMIT " + MAX_SUGGESTIONS;
+
+    private static final String SQL_READ_NAMES = "SELECT " + PetDatabase.COLUMN_NAME +
+            " FROM " + PetDatabase.VISIBLE_PETS_VIEW;
+
+    @Param({"100000"})
+    public int pets;
+
+    private PetDatabase mDatabase;
+    private PreparedStatement mSuggest;
+    private List<String> mNames;
+    private PetPrefixIndex mIndex;
+    private long mIndexBytes;
+    private long mNameBytes;
+    private int mNext;
+
+    /**
+     * Bytes held by the index and, about, by the names themselves. Set, not added, by every
+     * call, so with a single measured iteration JMH reports them as they are.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long indexBytes;
+        public long nameBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mDatabase = PetDatabase.create();
+        mDatabase.insertPets(pets);
+        mSuggest = mDatabase.getConnection().prepareStatement(SQL_SUGGEST);
+
+        // Read the way PetColumnSnapshot reads the names from the provider
+        mNames = new ArrayList<>(pets);
+        PreparedStatement readNames = mDatabase.getConnection().prepareStatement(SQL_READ_NAMES);
+        try {
+            ResultSet resultSet = readNames.executeQuery();
+            while (resultSet.next()) {
+                mNames.add(resultSet.getString(1));
+            }
+            resultSet.close();
+        } finally {
+            readNames.close();
+        }
+
+        // The names are held by mNames too, so this is the memory of the index itself
+        long before = getUsedBytes();
+        mIndex = PetPrefixIndex.build(mNames);
+        mIndexBytes = getUsedBytes() - before;
+        for (String name : mNames) {
+            // The object header, the hash and the reference to a char array with its header
+            mNameBytes += 24 + 16 + 2 * name.length();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mSuggest.close();
+        mDatabase.close();
+    }
+
+    @Benchmark
+    public List<String> sqliteLike() throws SQLException {
+        List<String> suggestions = new ArrayList<>(MAX_SUGGESTIONS);
+        mSuggest.setString(1, PREFIX + "%");
+        ResultSet resultSet = mSuggest.executeQuery();
+        try {
+            while (resultSet.next()) {
+                suggestions.add(resultSet.getString(1));
+            }
+        } finally {
+            resultSet.close();
+        }
+        return suggestions;
+    }
+
+    @Benchmark
+    public List<String> indexFind() {
+        return mIndex.find(PREFIX, MAX_SUGGESTIONS);
+    }
+
+    @Benchmark
+    public PetPrefixIndex indexBuild() {
+        return PetPrefixIndex.build(mNames);
+    }
+
+    @Benchmark
+    public int indexAddRemove() {
+        // Renames a pet, as a notification of the provider does
+        String name = "Renamed " + mNext++;
+        mIndex.add(name);
+        mIndex.remove(name);
+        return mIndex.size();
+    }
+
+    /**
+     * Only reports the memory measured when the index was built, its time is of no interest.
+     */
+    @Benchmark
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    public PetPrefixIndex indexFootprint(Footprint footprint) {
+        footprint.indexBytes = mIndexBytes;
+        footprint.nameBytes = mNameBytes;
+        return mIndex;
+    }
+
+    private static long getUsedBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.android.pets.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the catalog with a query of the whole table, like the catalog did before it was
+ * paged, against reading one page with the keyset query of PetProvider's PETS_PAGE uri, and
+ * the PET_ID lookup the editor makes. Every row read is consumed, the same as filling a
+ * CursorWindow does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class QueryBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"1000", "10000"})
+    public int pets;
+
+    private PetDatabase mDatabase;
+    private PreparedStatement mFullTableQuery;
+    private PreparedStatement mPageQuery;
+    private PreparedStatement mPetQuery;
+    private final Random mRandom = new Random(42);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mDatabase = PetDatabase.create();
+        mDatabase.insertPets(pets);
+        mDatabase.execute("ANALYZE");
+
+        mFullTableQuery = mDatabase.getConnection().prepareStatement(
+                "SELECT " + PetDatabase.CATALOG_COLUMNS + " FROM " + PetDatabase.TABLE_NAME);
+        mPageQuery = mDatabase.getConnection().prepareStatement(
+                "SELECT " + PetDatabase.CATALOG_COLUMNS + " FROM " + PetDatabase.VISIBLE_PETS_VIEW +
+                        " WHERE " + PetDatabase._ID + " > ? ORDER BY " + PetDatabase._ID +
+                        " LIMIT ?");
+        mPetQuery = mDatabase.getConnection().prepareStatement(
+                "SELECT * FROM " + PetDatabase.VISIBLE_PETS_VIEW + " WHERE " + PetDatabase._ID +
+                        " = ?");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mFullTableQuery.close();
+        mPageQuery.close();
+        mPetQuery.close();
+        mDatabase.close();
+    }
+
+    @Benchmark
+    public int fullTable(Blackhole blackhole) throws SQLException {
+        return consume(mFullTableQuery.executeQuery(), blackhole);
+    }
+
+    @Benchmark
+    public int firstPage(Blackhole blackhole) throws SQLException {
+        return queryPage(0, blackhole);
+    }
+
+    @Benchmark
+    public int lastPage(Blackhole blackhole) throws SQLException {
+        // Keyset pagination costs the same wherever the page starts
+        return queryPage(pets - PAGE_SIZE, blackhole);
+    }
+
+    @Benchmark
+    public int petIdLookup(Blackhole blackhole) throws SQLException {
+        mPetQuery.setLong(1, 1 + mRandom.nextInt(pets));
+        return consume(mPetQuery.executeQuery(), blackhole);
+    }
+
+    private int queryPage(long afterId, Blackhole blackhole) throws SQLException {
+        mPageQuery.setLong(1, afterId);
+        mPageQuery.setInt(2, PAGE_SIZE);
+        return consume(mPageQuery.executeQuery(), blackhole);
+    }
+
+    /**
+     * Reads every column of every row of the result and closes it. Returns the number of rows.
+     */
+    private static int consume(ResultSet resultSet, Blackhole blackhole) throws SQLException {
+        int rows = 0;
+        try {
+            int columns = resultSet.getMetaData().getColumnCount();
+            while (resultSet.next()) {
+                for (int column = 1; column <= columns; column++) {
+                    blackhole.consume(resultSet.getObject(column));
+                }
+                rows++;
+            }
+        } finally {
+            resultSet.close();
+        }
+        return rows;
+    }
+}
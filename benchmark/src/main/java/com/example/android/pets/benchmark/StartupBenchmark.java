@@ -0,0 +1,127 @@
+package com.example.android.pets.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from launch to the first page of the catalog. Every invocation opens a new connection,
+ * like a new process does, and does {@code launchWork} of CPU work standing in for creating the
+ * activity and inflating its layout. The catalog used to open the database and query the first
+ * page only after that work; PetProvider now starts both in the background when it is created,
+ * and the activity waits for them only if they haven't finished yet.
+ * <p>
+ * The database file stays in the page cache between invocations, so this measures the work on
+ * the CPU and not a read from the disk after a reboot.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 50)
+@Fork(1)
+public class StartupBenchmark {
+
+    /** Number of pets in the first page, the same as PetsContract.PetEntry.DEFAULT_PAGE_SIZE */
+    private static final int PAGE_SIZE = 50;
+
+    private static final String SQL_FIRST_PAGE = "SELECT " + PetDatabase.CATALOG_COLUMNS +
+            " FROM " + PetDatabase.VISIBLE_PETS_VIEW + " WHERE " + PetDatabase._ID +
+            " > 0 ORDER BY " + PetDatabase._ID + " ASC LIMIT " + PAGE_SIZE;
+
+    @Param({"10000"})
+    public int pets;
+
+    /** Tokens of Blackhole.consumeCPU spent creating the activity */
+    @Param({"0", "1000000"})
+    public long launchWork;
+
+    private PetDatabase mDatabase;
+    private ExecutorService mExecutor;
+
+    /** Connection opened by the last invocation, closed after it */
+    private Connection mConnection;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mDatabase = PetDatabase.create();
+        mDatabase.insertPets(pets);
+        mExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeConnection() throws SQLException {
+        if (mConnection != null) {
+            mConnection.close();
+            mConnection = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mExecutor.shutdown();
+        mDatabase.close();
+    }
+
+    @Benchmark
+    public List<Object[]> queryAfterLaunch() throws SQLException {
+        Blackhole.consumeCPU(launchWork);
+        return openFirstPage();
+    }
+
+    @Benchmark
+    public List<Object[]> prefetchDuringLaunch() throws InterruptedException, ExecutionException {
+        Future<List<Object[]>> firstPage = mExecutor.submit(new Callable<List<Object[]>>() {
+            @Override
+            public List<Object[]> call() throws SQLException {
+                return openFirstPage();
+            }
+        });
+        Blackhole.consumeCPU(launchWork);
+        return firstPage.get();
+    }
+
+    /**
+     * Opens the database and reads the rows of the first page of the catalog.
+     */
+    private List<Object[]> openFirstPage() throws SQLException {
+        mConnection = mDatabase.openConnection();
+        PreparedStatement statement = mConnection.prepareStatement(SQL_FIRST_PAGE);
+        try {
+            ResultSet resultSet = statement.executeQuery();
+            List<Object[]> rows = new ArrayList<>(PAGE_SIZE);
+            while (resultSet.next()) {
+                rows.add(new Object[]{resultSet.getLong(1), resultSet.getString(2),
+                        resultSet.getString(3), resultSet.getLong(4)});
+            }
+            return rows;
+        } finally {
+            statement.close();
+        }
+    }
+}
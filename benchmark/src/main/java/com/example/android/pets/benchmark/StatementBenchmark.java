@@ -0,0 +1,151 @@
+package com.example.android.pets.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the operations PetProvider keeps compiled statements for: insert a pet, update
+ * it by _ID, delete it by _ID and count the pets. Every invocation loops over the four of them,
+ * compiling new SQL for every operation like SQLiteDatabase does, or binding the statements
+ * compiled once like PetStatements does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StatementBenchmark {
+
+    private static final int PETS = 1000;
+
+    private static final String SQL_UPDATE_BY_ID = "UPDATE " + PetDatabase.TABLE_NAME + " SET " +
+            PetDatabase.COLUMN_NAME + " = ?, " + PetDatabase.COLUMN_BREED + " = ?, " +
+            PetDatabase.COLUMN_GENDER + " = ?, " + PetDatabase.COLUMN_WEIGHT + " = ? WHERE " +
+            PetDatabase._ID + " = ?";
+
+    private static final String SQL_DELETE_BY_ID = "DELETE FROM " + PetDatabase.TABLE_NAME +
+            " WHERE " + PetDatabase._ID + " = ?";
+
+    private static final String SQL_COUNT = "SELECT COUNT(*) FROM " + PetDatabase.TABLE_NAME;
+
+    private PetDatabase mDatabase;
+    private PreparedStatement mInsert;
+    private PreparedStatement mUpdateById;
+    private PreparedStatement mDeleteById;
+    private PreparedStatement mCount;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mDatabase = PetDatabase.create();
+        mDatabase.insertPets(PETS);
+        mInsert = mDatabase.getConnection().prepareStatement(PetDatabase.SQL_INSERT,
+                Statement.RETURN_GENERATED_KEYS);
+        mUpdateById = mDatabase.getConnection().prepareStatement(SQL_UPDATE_BY_ID);
+        mDeleteById = mDatabase.getConnection().prepareStatement(SQL_DELETE_BY_ID);
+        mCount = mDatabase.getConnection().prepareStatement(SQL_COUNT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mInsert.close();
+        mUpdateById.close();
+        mDeleteById.close();
+        mCount.close();
+        mDatabase.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4)
+    public long compiledStatements() throws SQLException {
+        long id = insert(mInsert);
+        update(mUpdateById, id);
+        delete(mDeleteById, id);
+        return count(mCount);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4)
+    public long newStatements() throws SQLException {
+        long id;
+        PreparedStatement insert = mDatabase.getConnection().prepareStatement(
+                PetDatabase.SQL_INSERT, Statement.RETURN_GENERATED_KEYS);
+        try {
+            id = insert(insert);
+        } finally {
+            insert.close();
+        }
+
+        PreparedStatement updateById = mDatabase.getConnection().prepareStatement(SQL_UPDATE_BY_ID);
+        try {
+            update(updateById, id);
+        } finally {
+            updateById.close();
+        }
+
+        PreparedStatement deleteById = mDatabase.getConnection().prepareStatement(SQL_DELETE_BY_ID);
+        try {
+            delete(deleteById, id);
+        } finally {
+            deleteById.close();
+        }
+
+        PreparedStatement count = mDatabase.getConnection().prepareStatement(SQL_COUNT);
+        try {
+            return count(count);
+        } finally {
+            count.close();
+        }
+    }
+
+    private static long insert(PreparedStatement insert) throws SQLException {
+        PetDatabase.bindPet(insert, 0);
+        insert.executeUpdate();
+        ResultSet keys = insert.getGeneratedKeys();
+        try {
+            keys.next();
+            return keys.getLong(1);
+        } finally {
+            keys.close();
+        }
+    }
+
+    private static void update(PreparedStatement updateById, long id) throws SQLException {
+        PetDatabase.bindPet(updateById, 1);
+        updateById.setLong(5, id);
+        updateById.executeUpdate();
+    }
+
+    private static void delete(PreparedStatement deleteById, long id) throws SQLException {
+        deleteById.setLong(1, id);
+        deleteById.executeUpdate();
+    }
+
+    private static long count(PreparedStatement count) throws SQLException {
+        ResultSet resultSet = count.executeQuery();
+        try {
+            resultSet.next();
+            return resultSet.getLong(1);
+        } finally {
+            resultSet.close();
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package com.example.android.pets.benchmark;
+
+import com.example.android.pets.data.PetSyncProtocol;
+import com.example.android.pets.data.PetSyncProtocol.Change;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Time and bytes of syncing the pets with a sync server, after {@code edits} pets were changed
+ * here and {@code edits} pets were changed by another device. A local server stands in for
+ * the sync server. Every benchmark runs the statements and the JSON of PetSyncProtocol, the
+ * ones of PetSyncEngine, in the order the engine runs them: the delta push reads the outbox
+ * filled by the triggers and sends the changed pets, the pull reads the changes after the
+ * high-water mark and applies them with the triggers off. The full push sends every pet as
+ * syncing used to before the outbox. Only the check of the pulled pets by PetValidator, which
+ * needs Android, is left out.
+ * <p>
+ * JMH reports the requests and the gzipped bytes sent and received as secondary results,
+ * added up over the measured iterations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SyncBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String SQL_READ_ALL = "SELECT p." + PetDatabase.COLUMN_SYNC_ID +
+            ", v." + PetDatabase.COLUMN_NAME + ", v." + PetDatabase.COLUMN_BREED + ", v." +
+            PetDatabase.COLUMN_GENDER + ", v." + PetDatabase.COLUMN_WEIGHT + " FROM " +
+            PetDatabase.VISIBLE_PETS_VIEW + " v JOIN " + PetDatabase.TABLE_NAME + " p ON p." +
+            PetDatabase._ID + " = v." + PetDatabase._ID;
+
+    private static final String SQL_READ_SYNC_ID = "SELECT " + PetDatabase.COLUMN_SYNC_ID +
+            " FROM " + PetDatabase.TABLE_NAME + " WHERE " + PetDatabase._ID + " = ?";
+
+    private static final String SQL_EDIT = "UPDATE " + PetDatabase.TABLE_NAME + " SET " +
+            PetDatabase.COLUMN_WEIGHT + " = " + PetDatabase.COLUMN_WEIGHT + " % 40 + 1 WHERE " +
+            PetDatabase._ID + " = ?";
+
+    @Param({"10000"})
+    public int pets;
+
+    @Param({"10", "100"})
+    public int edits;
+
+    private PetDatabase mDatabase;
+    private HttpServer mServer;
+    private URL mChangesUrl;
+    private String mDeviceId;
+
+    /** Sync ids of the pets changed by the other device */
+    private final List<String> mRemoteSyncIds = new ArrayList<>();
+
+    /**
+     * Requests made and gzipped bytes sent and received, reset for every iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Traffic {
+        public long requests;
+        public long bytesSent;
+        public long bytesReceived;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            requests = 0;
+            bytesSent = 0;
+            bytesReceived = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mDatabase = PetDatabase.create();
+        mDatabase.insertPets(pets);
+        // The triggers write the outbox from the first sync on, which gives the pets their
+        // sync ids, as if the pets had been pushed before
+        mDatabase.execute(PetSyncProtocol.SQL_ENABLE_OUTBOX);
+        mDatabase.execute(PetSyncProtocol.SQL_ASSIGN_SYNC_IDS);
+
+        Connection connection = mDatabase.getConnection();
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery(PetSyncProtocol.SQL_READ_DEVICE_ID);
+            resultSet.next();
+            mDeviceId = resultSet.getString(1);
+        } finally {
+            statement.close();
+        }
+        PreparedStatement readSyncId = connection.prepareStatement(SQL_READ_SYNC_ID);
+        try {
+            for (int i = 0; i < edits; i++) {
+                // Other pets than the ones edited here
+                readSyncId.setLong(1, 2 + (long) i * pets / edits);
+                ResultSet resultSet = readSyncId.executeQuery();
+                resultSet.next();
+                mRemoteSyncIds.add(resultSet.getString(1));
+                resultSet.close();
+            }
+        } finally {
+            readSyncId.close();
+        }
+
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/" + PetSyncProtocol.PATH_CHANGES, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if ("POST".equals(exchange.getRequestMethod())) {
+                    readFully(exchange.getRequestBody());
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_NO_CONTENT, -1);
+                } else {
+                    byte[] body = gzip(getRemoteChanges(exchange.getRequestURI().getQuery()));
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+                    exchange.getResponseBody().write(body);
+                }
+                exchange.close();
+            }
+        });
+        mServer.start();
+        mChangesUrl = new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + "/" +
+                PetSyncProtocol.PATH_CHANGES);
+    }
+
+    @Setup(Level.Invocation)
+    public void editPets() throws SQLException {
+        PreparedStatement statement = mDatabase.getConnection().prepareStatement(SQL_EDIT);
+        try {
+            for (int i = 0; i < edits; i++) {
+                statement.setLong(1, 1 + (long) i * pets / edits);
+                statement.executeUpdate();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mServer.stop(0);
+        mDatabase.close();
+    }
+
+    @Benchmark
+    public int pushDelta(Traffic traffic) throws IOException, SQLException {
+        int pushed = 0;
+        while (true) {
+            // The same as PetSyncEngine.readOutbox
+            Map<String, Change> changes = new LinkedHashMap<>();
+            long lastOutboxId = 0;
+            Statement statement = mDatabase.getConnection().createStatement();
+            try {
+                ResultSet resultSet = statement.executeQuery(PetSyncProtocol.SQL_READ_OUTBOX);
+                while (resultSet.next()) {
+                    lastOutboxId = resultSet.getLong(1);
+                    String syncId = resultSet.getString(2);
+                    resultSet.getLong(4);
+                    Change change = resultSet.wasNull() ? Change.delete(syncId)
+                            : Change.upsert(syncId, resultSet.getString(5),
+                            resultSet.getString(6), getInteger(resultSet, 7),
+                            getInteger(resultSet, 8));
+                    changes.remove(syncId);
+                    changes.put(syncId, change);
+                }
+            } finally {
+                statement.close();
+            }
+            if (changes.isEmpty()) {
+                return pushed;
+            }
+
+            post(PetSyncProtocol.writePush(mDeviceId, changes.values()), traffic);
+            PreparedStatement delete = mDatabase.getConnection().prepareStatement(
+                    PetSyncProtocol.SQL_DELETE_OUTBOX);
+            try {
+                delete.setLong(1, lastOutboxId);
+                delete.executeUpdate();
+            } finally {
+                delete.close();
+            }
+            pushed += changes.size();
+        }
+    }
+
+    @Benchmark
+    public int pushFullTable(Traffic traffic) throws IOException, SQLException {
+        List<Change> changes = new ArrayList<>();
+        Statement statement = mDatabase.getConnection().createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery(SQL_READ_ALL);
+            while (resultSet.next()) {
+                changes.add(Change.upsert(resultSet.getString(1), resultSet.getString(2),
+                        resultSet.getString(3), getInteger(resultSet, 4),
+                        getInteger(resultSet, 5)));
+            }
+        } finally {
+            statement.close();
+        }
+        post(PetSyncProtocol.writePush(mDeviceId, changes), traffic);
+        // Leave the outbox as empty as the delta push does
+        mDatabase.execute("DELETE FROM " + PetDatabase.OUTBOX_TABLE_NAME);
+        return changes.size();
+    }
+
+    @Benchmark
+    public int pull(Traffic traffic) throws IOException, SQLException {
+        // The same as PetSyncEngine.pull
+        int pulled = 0;
+        boolean more = true;
+        while (more) {
+            long since;
+            Statement statement = mDatabase.getConnection().createStatement();
+            try {
+                ResultSet resultSet = statement.executeQuery(
+                        PetSyncProtocol.SQL_READ_REMOTE_VERSION);
+                resultSet.next();
+                since = resultSet.getLong(1);
+            } finally {
+                statement.close();
+            }
+
+            URL url = new URL(mChangesUrl + "?" + PetSyncProtocol.PARAM_SINCE + "=" + since +
+                    "&" + PetSyncProtocol.PARAM_DEVICE + "=" + mDeviceId);
+            PetSyncProtocol.Pull response = PetSyncProtocol.readPull(get(url, traffic), since);
+            if (response.version <= since && response.more) {
+                throw new IOException("Sync server returned no progress after " + since);
+            }
+            more = response.more;
+            pulled += apply(response.changes, response.version);
+        }
+        return pulled;
+    }
+
+    /**
+     * Applies the changes and moves the high-water mark in one transaction with the outbox
+     * triggers off, the same as PetSyncEngine.apply.
+     */
+    private int apply(List<Change> changes, long version) throws SQLException {
+        Connection connection = mDatabase.getConnection();
+        connection.setAutoCommit(false);
+        PreparedStatement update = connection.prepareStatement(PetSyncProtocol.SQL_UPDATE_REMOTE);
+        PreparedStatement insert = connection.prepareStatement(PetSyncProtocol.SQL_INSERT_REMOTE);
+        PreparedStatement delete = connection.prepareStatement(PetSyncProtocol.SQL_DELETE_REMOTE);
+        PreparedStatement finish = connection.prepareStatement(
+                PetSyncProtocol.SQL_FINISH_APPLYING);
+        try {
+            int applied = 0;
+            mDatabase.execute(PetSyncProtocol.SQL_START_APPLYING);
+            for (Change change : changes) {
+                if (change.isDelete()) {
+                    delete.setString(1, change.syncId);
+                    applied += delete.executeUpdate();
+                    continue;
+                }
+                bind(update, change);
+                update.setString(5, change.syncId);
+                int rows = update.executeUpdate();
+                if (rows == 0) {
+                    bind(insert, change);
+                    insert.setString(5, change.syncId);
+                    insert.setString(6, change.syncId);
+                    rows = insert.executeUpdate();
+                }
+                applied += rows;
+            }
+            finish.setLong(1, version);
+            finish.executeUpdate();
+            connection.commit();
+            return applied;
+        } finally {
+            update.close();
+            insert.close();
+            delete.close();
+            finish.close();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Returns the response of the server to a pull after the given version: the pets of the
+     * other device, changed again for every version.
+     */
+    private String getRemoteChanges(String query) {
+        long since = 0;
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith(PetSyncProtocol.PARAM_SINCE + "=")) {
+                since = Long.parseLong(parameter.substring(
+                        PetSyncProtocol.PARAM_SINCE.length() + 1));
+            }
+        }
+        List<Change> changes = new ArrayList<>(mRemoteSyncIds.size());
+        for (String syncId : mRemoteSyncIds) {
+            changes.add(Change.upsert(syncId, "Remote pet", "Terrier", 1,
+                    (int) (1 + since % 40)));
+        }
+        return PetSyncProtocol.writePull(since + 1, false, changes);
+    }
+
+    private static void bind(PreparedStatement statement, Change change) throws SQLException {
+        statement.setString(1, change.name);
+        statement.setString(2, change.breed);
+        statement.setObject(3, change.gender);
+        statement.setObject(4, change.weight);
+    }
+
+    private static Integer getInteger(ResultSet resultSet, int column) throws SQLException {
+        int value = resultSet.getInt(column);
+        return resultSet.wasNull() ? null : value;
+    }
+
+    /**
+     * Posts the JSON to the server gzipped, the same as PetSyncEngine.push.
+     */
+    private void post(String json, Traffic traffic) throws IOException {
+        byte[] body = gzip(json);
+        HttpURLConnection connection = (HttpURLConnection) mChangesUrl.openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_NO_CONTENT) {
+                throw new IOException("Unexpected response " + connection.getResponseCode());
+            }
+            traffic.requests++;
+            traffic.bytesSent += body.length;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Returns the JSON of the response to a GET, the same as PetSyncEngine.pull.
+     */
+    private static String get(URL url, Traffic traffic) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected response " + connection.getResponseCode());
+            }
+            InputStream in = connection.getInputStream();
+            byte[] body;
+            try {
+                body = readFully(in);
+            } finally {
+                in.close();
+            }
+            traffic.requests++;
+            traffic.bytesReceived += body.length;
+            return new String(readFully(new GZIPInputStream(new ByteArrayInputStream(body))),
+                    UTF_8);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static byte[] gzip(String json) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = new GZIPOutputStream(bytes);
+        try {
+            out.write(json.getBytes(UTF_8));
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+}
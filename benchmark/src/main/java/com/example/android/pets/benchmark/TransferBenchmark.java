@@ -0,0 +1,264 @@
+package com.example.android.pets.benchmark;
+
+import com.example.android.pets.data.PetCsv;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A CSV export of 500,000 pets to a file and its import into an empty database, the way
+ * PetTransfer streams them: the export reads keyset chunks of 1,000 pets, the import commits
+ * every 1,000 pets, and both write and read the CSV with PetCsv. The forked JVM has a 32 MB
+ * heap, far less than the pets take, so the round trip fails with an OutOfMemoryError if
+ * either direction holds more than a chunk. It also fails if a pet is lost. The JSON lines
+ * format and the checks of PetValidator are left out, they need Android.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx32m")
+public class TransferBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** The same sizes as PetTransfer */
+    private static final int EXPORT_CHUNK_SIZE = 1000;
+    private static final int IMPORT_CHUNK_SIZE = 1000;
+
+    private static final String[] COLUMNS = {
+            PetDatabase._ID,
+            PetDatabase.COLUMN_NAME,
+            PetDatabase.COLUMN_BREED,
+            PetDatabase.COLUMN_GENDER,
+            PetDatabase.COLUMN_WEIGHT};
+
+    private static final String SQL_EXPORT_CHUNK = "SELECT " + PetDatabase._ID + ", " +
+            PetDatabase.COLUMN_NAME + ", " + PetDatabase.COLUMN_BREED + ", " +
+            PetDatabase.COLUMN_GENDER + ", " + PetDatabase.COLUMN_WEIGHT + " FROM " +
+            PetDatabase.VISIBLE_PETS_VIEW + " WHERE " + PetDatabase._ID + " > ? ORDER BY " +
+            PetDatabase._ID + " ASC LIMIT " + EXPORT_CHUNK_SIZE;
+
+    private static final String SQL_COUNT = "SELECT COUNT(*) FROM " +
+            PetDatabase.VISIBLE_PETS_VIEW;
+
+    @Param({"500000"})
+    public int pets;
+
+    private PetDatabase mSource;
+    private PetDatabase mTarget;
+    private File mFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mSource = PetDatabase.create();
+        mSource.insertPets(pets);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mSource.close();
+    }
+
+    @Setup(Level.Iteration)
+    public void createTarget() throws IOException, SQLException {
+        mTarget = PetDatabase.create();
+        mFile = File.createTempFile("pets-export", ".csv");
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteTarget() throws SQLException {
+        try {
+            int count = count(mTarget.getConnection());
+            if (count != pets) {
+                throw new IllegalStateException("Round trip kept " + count + " pets of " + pets);
+            }
+        } finally {
+            mTarget.close();
+            if (!mFile.delete()) {
+                mFile.deleteOnExit();
+            }
+        }
+    }
+
+    @Benchmark
+    public int roundTrip() throws IOException, SQLException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mFile),
+                UTF_8));
+        try {
+            exportPets(mSource.getConnection(), out);
+        } finally {
+            out.close();
+        }
+
+        Reader in = new BufferedReader(new InputStreamReader(new FileInputStream(mFile), UTF_8));
+        try {
+            return importPets(mTarget.getConnection(), in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes every pet in _ID order, a chunk per query, the same as PetTransfer.exportPets.
+     */
+    private static int exportPets(Connection connection, Writer out)
+            throws IOException, SQLException {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(COLUMNS[i]);
+        }
+        out.write(PetCsv.LINE_END);
+
+        int rows = 0;
+        long afterId = 0;
+        boolean endReached = false;
+        PreparedStatement statement = connection.prepareStatement(SQL_EXPORT_CHUNK);
+        try {
+            while (!endReached) {
+                statement.setLong(1, afterId);
+                int chunkRows = 0;
+                ResultSet resultSet = statement.executeQuery();
+                try {
+                    while (resultSet.next()) {
+                        for (int i = 0; i < COLUMNS.length; i++) {
+                            if (i > 0) {
+                                out.write(',');
+                            }
+                            String value = resultSet.getString(i + 1);
+                            if (value != null) {
+                                PetCsv.writeField(out, value);
+                            }
+                        }
+                        out.write(PetCsv.LINE_END);
+                        afterId = resultSet.getLong(1);
+                        chunkRows++;
+                    }
+                } finally {
+                    resultSet.close();
+                }
+                rows += chunkRows;
+                endReached = chunkRows < EXPORT_CHUNK_SIZE;
+            }
+        } finally {
+            statement.close();
+        }
+        out.flush();
+        return rows;
+    }
+
+    /**
+     * Reads the pets and inserts them a chunk per transaction, the same as
+     * PetTransfer.importPets. The _ID of the file is skipped and a missing breed is empty.
+     */
+    private static int importPets(Connection connection, Reader in)
+            throws IOException, SQLException {
+        PetCsv.RecordReader records = new PetCsv.RecordReader(in);
+        List<String> header = records.readRecord();
+        if (header == null) {
+            return 0;
+        }
+        Map<String, Integer> columnIndexes = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columnIndexes.put(header.get(i).trim(), i);
+        }
+
+        PreparedStatement insert = connection.prepareStatement(PetDatabase.SQL_INSERT);
+        try {
+            int rows = 0;
+            List<List<String>> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+            while (true) {
+                chunk.clear();
+                List<String> record;
+                while (chunk.size() < IMPORT_CHUNK_SIZE
+                        && (record = records.readRecord()) != null) {
+                    chunk.add(record);
+                }
+                if (chunk.isEmpty()) {
+                    return rows;
+                }
+
+                connection.setAutoCommit(false);
+                try {
+                    for (List<String> pet : chunk) {
+                        insert.setString(1, getField(pet, columnIndexes, PetDatabase.COLUMN_NAME));
+                        String breed = getField(pet, columnIndexes, PetDatabase.COLUMN_BREED);
+                        insert.setString(2, breed == null ? "" : breed);
+                        insert.setObject(3, getInteger(pet, columnIndexes,
+                                PetDatabase.COLUMN_GENDER));
+                        insert.setObject(4, getInteger(pet, columnIndexes,
+                                PetDatabase.COLUMN_WEIGHT));
+                        insert.executeUpdate();
+                    }
+                    connection.commit();
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+                rows += chunk.size();
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    private static String getField(List<String> record, Map<String, Integer> columnIndexes,
+                                   String column) {
+        Integer index = columnIndexes.get(column);
+        if (index == null || index >= record.size() || record.get(index).isEmpty()) {
+            return null;
+        }
+        return record.get(index);
+    }
+
+    private static Integer getInteger(List<String> record, Map<String, Integer> columnIndexes,
+                                      String column) {
+        String value = getField(record, columnIndexes, column);
+        return value == null ? null : Integer.valueOf(value.trim());
+    }
+
+    private static int count(Connection connection) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(SQL_COUNT);
+        try {
+            ResultSet resultSet = statement.executeQuery();
+            resultSet.next();
+            return resultSet.getInt(1);
+        } finally {
+            statement.close();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.android.pets.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a pet the way SQLiteDatabase.insert and update do with ContentValues, building,
+ * compiling and binding new SQL for every write, against the compiled statements of
+ * PetStatements, which bind the fields of a Pet to statements compiled once. Both start from
+ * a Pet turned into the values the provider receives, boxed in a map as ContentValues holds
+ * them, and the compiled writes convert them back to a Pet as the provider does, so neither
+ * path is free of allocations. The gc profiler the jmh task runs with reports the bytes
+ * allocated by every write.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class WriteBenchmark {
+
+    private static final int PETS = 1000;
+
+    private static final String SQL_UPDATE_BY_ID = "UPDATE " + PetDatabase.TABLE_NAME + " SET " +
+            PetDatabase.COLUMN_NAME + " = ?, " + PetDatabase.COLUMN_BREED + " = ?, " +
+            PetDatabase.COLUMN_GENDER + " = ?, " + PetDatabase.COLUMN_WEIGHT + " = ? WHERE " +
+            PetDatabase._ID + " = ?";
+
+    private PetDatabase mDatabase;
+    private PreparedStatement mInsert;
+    private PreparedStatement mUpdateById;
+    private int mNext;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mDatabase = PetDatabase.create();
+        mDatabase.insertPets(PETS);
+        mInsert = mDatabase.getConnection().prepareStatement(PetDatabase.SQL_INSERT);
+        mUpdateById = mDatabase.getConnection().prepareStatement(SQL_UPDATE_BY_ID);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mInsert.close();
+        mUpdateById.close();
+        mDatabase.close();
+    }
+
+    @Benchmark
+    public int contentValuesInsert() throws SQLException {
+        Map<String, Object> values = newPet(mNext++).toValues();
+
+        // What SQLiteDatabase.insert does with the values
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(PetDatabase.TABLE_NAME).append('(');
+        StringBuilder parameters = new StringBuilder();
+        Object[] bindArgs = new Object[values.size()];
+        int i = 0;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            sql.append(i > 0 ? "," : "").append(entry.getKey());
+            parameters.append(i > 0 ? ",?" : "?");
+            bindArgs[i++] = entry.getValue();
+        }
+        sql.append(") VALUES (").append(parameters).append(')');
+        return execute(sql.toString(), bindArgs);
+    }
+
+    @Benchmark
+    public int compiledInsert() throws SQLException {
+        bindPet(mInsert, Pet.fromValues(newPet(mNext++).toValues()));
+        return mInsert.executeUpdate();
+    }
+
+    @Benchmark
+    public int contentValuesUpdateById() throws SQLException {
+        int pet = mNext++;
+        Map<String, Object> values = newPet(pet).toValues();
+
+        // What SQLiteDatabase.update does with the values and the "_id=?" selection
+        StringBuilder sql = new StringBuilder("UPDATE ").append(PetDatabase.TABLE_NAME).append(" SET ");
+        Object[] bindArgs = new Object[values.size() + 1];
+        int i = 0;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            sql.append(i > 0 ? "," : "").append(entry.getKey()).append("=?");
+            bindArgs[i++] = entry.getValue();
+        }
+        sql.append(" WHERE ").append(PetDatabase._ID).append("=?");
+        bindArgs[i] = String.valueOf(1 + pet % PETS);
+        return execute(sql.toString(), bindArgs);
+    }
+
+    @Benchmark
+    public int compiledUpdateById() throws SQLException {
+        int pet = mNext++;
+        bindPet(mUpdateById, Pet.fromValues(newPet(pet).toValues()));
+        mUpdateById.setLong(5, 1 + pet % PETS);
+        return mUpdateById.executeUpdate();
+    }
+
+    /**
+     * Binds the fields of the pet as strings and longs, the same as PetStatements.bindPet.
+     */
+    private static void bindPet(PreparedStatement statement, Pet pet) throws SQLException {
+        statement.setString(1, pet.mName);
+        statement.setString(2, pet.mBreed);
+        statement.setLong(3, pet.mGender);
+        statement.setLong(4, pet.mWeight);
+    }
+
+    private static Pet newPet(int pet) {
+        return new Pet("Pet " + pet, "Terrier", pet % 3, 1 + pet % 40);
+    }
+
+    /**
+     * The fields of the app's Pet, turned into values and read from them the same way as
+     * Pet.toContentValues and Pet.fromContentValues.
+     */
+    private static class Pet {
+
+        final String mName;
+        final String mBreed;
+        final int mGender;
+        final int mWeight;
+
+        Pet(String name, String breed, int gender, int weight) {
+            mName = name;
+            mBreed = breed;
+            mGender = gender;
+            mWeight = weight;
+        }
+
+        /**
+         * Returns the fields boxed in a map, like ContentValues holds them.
+         */
+        Map<String, Object> toValues() {
+            Map<String, Object> values = new HashMap<>(4);
+            values.put(PetDatabase.COLUMN_NAME, mName);
+            values.put(PetDatabase.COLUMN_BREED, mBreed);
+            values.put(PetDatabase.COLUMN_GENDER, mGender);
+            values.put(PetDatabase.COLUMN_WEIGHT, mWeight);
+            return values;
+        }
+
+        static Pet fromValues(Map<String, Object> values) {
+            Object gender = values.get(PetDatabase.COLUMN_GENDER);
+            Object weight = values.get(PetDatabase.COLUMN_WEIGHT);
+            if (values.size() != 4 || !(gender instanceof Number) || !(weight instanceof Number)) {
+                throw new IllegalArgumentException("Not a whole pet: " + values);
+            }
+            return new Pet((String) values.get(PetDatabase.COLUMN_NAME),
+                    (String) values.get(PetDatabase.COLUMN_BREED),
+                    ((Number) gender).intValue(), ((Number) weight).intValue());
+        }
+    }
+
+    private int execute(String sql, Object[] bindArgs) throws SQLException {
+        Connection connection = mDatabase.getConnection();
+        PreparedStatement statement = connection.prepareStatement(sql);
+        try {
+            for (int i = 0; i < bindArgs.length; i++) {
+                statement.setObject(i + 1, bindArgs[i]);
+            }
+            return statement.executeUpdate();
+        } finally {
+            statement.close();
+        }
+    }
+}